@@ -0,0 +1,111 @@
+package com.example.pocketledger;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 日记列表滚动帧耗时基准（需在真机或模拟器上运行）
+ * 5000 条长日记匀速向下滚动，记录每帧的 vsync 间隔，输出 P50/P90/P99 和掉帧数。
+ * 结果写入 logcat（TAG = DiaryScrollBenchmark）和 instrumentation 状态。
+ */
+@RunWith(AndroidJUnit4.class)
+public class DiaryScrollBenchmark {
+
+    private static final String TAG = "DiaryScrollBenchmark";
+    private static final int ENTRIES = 5000;
+    private static final int WARMUP_FRAMES = 30;
+    private static final int FRAMES = 600;
+    private static final int SCROLL_PX_PER_FRAME = 80;
+
+    @Test
+    public void testScrollDiaryList() throws InterruptedException {
+        List<DiaryEntry> entries = new ArrayList<>(ENTRIES);
+        StringBuilder paragraph = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            paragraph.append("今天去公园散步，看到湖边的柳树发了新芽，心情很好。");
+        }
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.add(new DiaryEntry(i + 1, "日记 " + i, i + " " + paragraph, "happy",
+                    "2024-01-15", "2024-01-15 08:00:00"));
+        }
+
+        long[] intervals = new long[FRAMES];
+        float[] refreshRate = new float[1];
+        CountDownLatch done = new CountDownLatch(1);
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            scenario.onActivity(activity -> {
+                refreshRate[0] = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+                RecyclerView list = new RecyclerView(activity);
+                list.setLayoutManager(new LinearLayoutManager(activity));
+                list.setAdapter(new DiaryAdapter(entries, null));
+                activity.setContentView(list);
+
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    private int frame = -WARMUP_FRAMES;
+                    private long last;
+
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        if (frame > 0) {
+                            intervals[frame - 1] = frameTimeNanos - last;
+                        }
+                        last = frameTimeNanos;
+                        if (frame++ == FRAMES) {
+                            done.countDown();
+                            return;
+                        }
+                        list.scrollBy(0, SCROLL_PX_PER_FRAME);
+                        Choreographer.getInstance().postFrameCallback(this);
+                    }
+                });
+            });
+            assertTrue("滚动未在规定时间内完成", done.await(60, TimeUnit.SECONDS));
+        }
+
+        report(intervals, refreshRate[0]);
+    }
+
+    private static void report(long[] intervals, float refreshRate) {
+        long[] sorted = intervals.clone();
+        Arrays.sort(sorted);
+        // A frame that took more than 1.5 vsync periods missed at least one
+        long jankThreshold = (long) (1.5e9 / refreshRate);
+        int janky = 0;
+        for (long interval : intervals) {
+            if (interval > jankThreshold)
+                janky++;
+        }
+
+        Bundle results = new Bundle();
+        results.putDouble("frame_p50_ms", percentile(sorted, 50));
+        results.putDouble("frame_p90_ms", percentile(sorted, 90));
+        results.putDouble("frame_p99_ms", percentile(sorted, 99));
+        results.putInt("janky_frames", janky);
+        results.putInt("frames", intervals.length);
+        Log.i(TAG, results.toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = Math.min(sorted.length - 1, sorted.length * percent / 100);
+        return sorted[index] / 1e6;
+    }
+}
@@ -9,9 +9,6 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Locale;
 
 public class AddDiaryActivity extends AppCompatActivity {
 
@@ -45,7 +42,7 @@ public class AddDiaryActivity extends AppCompatActivity {
         tvDate = findViewById(R.id.tvDate);
 
         // Set default date to today
-        selectedDate = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new java.util.Date());
+        selectedDate = DateKeys.todayString();
         tvDate.setText(selectedDate);
 
         findViewById(R.id.btnBack).setOnClickListener(v -> finish());
@@ -88,21 +85,16 @@ public class AddDiaryActivity extends AppCompatActivity {
 
     private void setupDatePicker() {
         findViewById(R.id.layoutDate).setOnClickListener(v -> {
-            Calendar calendar = Calendar.getInstance();
-
-            // Parse current selected date
-            try {
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA);
-                calendar.setTime(sdf.parse(selectedDate));
-            } catch (Exception e) {
-                e.printStackTrace();
+            // Open on the current selection
+            int key = DateKeys.parse(selectedDate);
+            if (key == 0) {
+                key = DateKeys.today();
             }
 
             new DatePickerDialog(this, (view, year, month, dayOfMonth) -> {
-                selectedDate = String.format(Locale.CHINA, "%04d-%02d-%02d", year, month + 1, dayOfMonth);
+                selectedDate = DateKeys.format(DateKeys.of(year, month + 1, dayOfMonth));
                 tvDate.setText(selectedDate);
-            }, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
-                    calendar.get(Calendar.DAY_OF_MONTH)).show();
+            }, DateKeys.year(key), DateKeys.month(key) - 1, DateKeys.day(key)).show();
         });
     }
 
@@ -41,7 +41,7 @@ public class AiFragment extends Fragment {
     private ChatAdapter chatAdapter;
     private List<ChatMessage> messageList = new ArrayList<>();
     private AiManager aiManager;
-    private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
 
     private ActivityResultLauncher<Intent> speechRecognizerLauncher;
 
@@ -49,7 +49,7 @@ public class AiFragment extends Fragment {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         aiManager = new AiManager();
-        dbHelper = DatabaseHelper.getInstance(requireContext());
+        repository = LedgerRepository.getInstance(requireContext());
         initSpeechRecognizerLauncher();
     }
 
@@ -93,22 +93,18 @@ public class AiFragment extends Fragment {
         btnVoice = view.findViewById(R.id.btnVoice);
 
         chatAdapter = new ChatAdapter(messageList,
-                (transaction, position) -> {
-                    boolean success = dbHelper.addTransaction(transaction);
-                    if (success) {
+                (transaction, position) -> repository.addTransaction(this, transaction, success -> {
+                    if (success && isAdded()) {
                         Toast.makeText(requireContext(), "账单已创建", Toast.LENGTH_SHORT).show();
-                        messageList.remove(position);
-                        chatAdapter.notifyItemRemoved(position);
+                        removeMessage(position);
                     }
-                },
-                (todoItem, position) -> {
-                    boolean success = dbHelper.addTodoItem(todoItem);
-                    if (success) {
+                }),
+                (todoItem, position) -> repository.addTodoItem(this, todoItem, success -> {
+                    if (success && isAdded()) {
                         Toast.makeText(requireContext(), "任务已创建", Toast.LENGTH_SHORT).show();
-                        messageList.remove(position);
-                        chatAdapter.notifyItemRemoved(position);
+                        removeMessage(position);
                     }
-                });
+                }));
 
         rvChat.setLayoutManager(new LinearLayoutManager(requireContext()));
         rvChat.setAdapter(chatAdapter);
@@ -117,6 +113,13 @@ public class AiFragment extends Fragment {
         btnVoice.setOnClickListener(v -> startVoiceInput());
     }
 
+    private void removeMessage(int position) {
+        if (position >= 0 && position < messageList.size()) {
+            messageList.remove(position);
+            chatAdapter.notifyItemRemoved(position);
+        }
+    }
+
     private void startVoiceInput() {
         if (ContextCompat.checkSelfPermission(requireContext(),
                 Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
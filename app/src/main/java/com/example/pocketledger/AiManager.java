@@ -9,9 +9,6 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
@@ -47,7 +44,7 @@ public class AiManager {
     }
 
     public void parseBill(String text, AiCallback callback) {
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+        String today = DateKeys.todayString();
 
         String prompt = "你是一个智能记账助手。今天是 " + today + "。\n\n" +
                 "请从用户输入中提取记账信息：\"" + text + "\"\n\n" +
@@ -167,7 +164,7 @@ public class AiManager {
     }
 
     public void parseTask(String text, TaskCallback callback) {
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+        String today = DateKeys.todayString();
 
         String prompt = "你是一个任务管理助手。今天是 " + today + "。\n\n" +
                 "请从用户输入中提取任务信息：\"" + text + "\"\n\n" +
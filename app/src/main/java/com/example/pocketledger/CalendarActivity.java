@@ -9,13 +9,12 @@ import android.widget.GridView;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -26,23 +25,49 @@ public class CalendarActivity extends AppCompatActivity {
     private GridView calendarGrid;
     private RecyclerView rvDailyRecords;
     private View layoutEmpty;
-    private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
+    private LedgerRepository.Request monthLoad;
+    private LedgerRepository.Request recordsLoad;
+    private LedgerRepository.Request yearLoad;
+    private InvalidationTracker.Subscription transactionsSeen;
+    private InvalidationTracker.Subscription activitySeen; // everything the grid shows
     private TransactionAdapter adapter;
+    private CalendarAdapter calendarAdapter;
+    private TextView tvYearTitle;
+    private YearHeatmapView yearHeatmap;
+    private int heatmapYear; // the year the heatmap was last loaded for
+
+    private static final String[] WEEKDAYS = { "星期一", "星期二", "星期三", "星期四", "星期五", "星期六", "星期日" };
+    // Day-of-month labels, so grid cells never format a number
+    private static final String[] DAY_LABELS = new String[32];
+
+    static {
+        for (int i = 1; i < DAY_LABELS.length; i++) {
+            DAY_LABELS[i] = String.valueOf(i);
+        }
+    }
 
-    private Calendar currentCalendar = Calendar.getInstance();
-    private Calendar selectedDate = Calendar.getInstance();
-    private List<Date> daysOfMonth = new ArrayList<>();
-    private Map<String, DailyTotal> monthlySummaries;
+    private int displayedMonth = DateKeys.monthOf(DateKeys.today()); // yyyymm
+    private int selectedDay = DateKeys.today(); // yyyymmdd
+    // The 42 cells of the displayed month, worked out once per month rather than per getView
+    private int[] gridDays = new int[0];
+    private String[] gridDates = new String[0]; // yyyy-MM-dd, the keys of monthOverview
+    // Shared with the repository's month cache, never modified here
+    private Map<String, DayOverview> monthOverview = Collections.emptyMap();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_calendar);
 
-        dbHelper = DatabaseHelper.getInstance(this);
+        repository = LedgerRepository.getInstance(this);
+        InvalidationTracker tracker = repository.getDatabaseHelper().getInvalidationTracker();
+        transactionsSeen = tracker.subscribe(InvalidationTracker.TRANSACTIONS);
+        activitySeen = tracker.subscribe(InvalidationTracker.TRANSACTIONS, InvalidationTracker.DIARY,
+                InvalidationTracker.TODOS);
 
         initViews();
-        setupCalendar();
+        buildMonthGrid();
     }
 
     private void initViews() {
@@ -52,20 +77,27 @@ public class CalendarActivity extends AppCompatActivity {
         calendarGrid = findViewById(R.id.calendarGrid);
         rvDailyRecords = findViewById(R.id.rvDailyRecords);
         layoutEmpty = findViewById(R.id.layoutEmpty);
+        tvYearTitle = findViewById(R.id.tvYearTitle);
+        yearHeatmap = findViewById(R.id.yearHeatmap);
+        yearHeatmap.setOnDayClickListener(day -> {
+            selectedDay = day;
+            displayedMonth = DateKeys.monthOf(day);
+            setupCalendar();
+        });
 
         findViewById(R.id.btnPrevMonth).setOnClickListener(v -> {
-            currentCalendar.add(Calendar.MONTH, -1);
+            displayedMonth = DateKeys.plusMonths(displayedMonth, -1);
             setupCalendar();
         });
 
         findViewById(R.id.btnNextMonth).setOnClickListener(v -> {
-            currentCalendar.add(Calendar.MONTH, 1);
+            displayedMonth = DateKeys.plusMonths(displayedMonth, 1);
             setupCalendar();
         });
 
         findViewById(R.id.btnToday).setOnClickListener(v -> {
-            currentCalendar = Calendar.getInstance();
-            selectedDate = Calendar.getInstance();
+            selectedDay = DateKeys.today();
+            displayedMonth = DateKeys.monthOf(selectedDay);
             setupCalendar();
         });
 
@@ -74,16 +106,47 @@ public class CalendarActivity extends AppCompatActivity {
         rvDailyRecords.setAdapter(adapter);
 
         layoutEmpty.setOnClickListener(v -> showAddSelectionDialog());
+
+        // One adapter for the activity's lifetime; flipping months only swaps its arrays
+        calendarAdapter = new CalendarAdapter();
+        calendarGrid.setAdapter(calendarAdapter);
+        calendarGrid.setOnItemClickListener((parent, view, position, id) -> {
+            selectedDay = gridDays[position];
+            calendarAdapter.notifyDataSetChanged();
+            loadDailyRecords();
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (adapter != null) {
+        // Reload what was written to, or what onPause cancelled before it landed
+        if (activitySeen.hasChanged()) {
+            activitySeen.markSeen();
+            loadMonthOverview();
+        } else if (monthLoad != null) {
+            loadMonthOverview();
+        }
+        if (transactionsSeen.hasChanged()) {
+            transactionsSeen.markSeen();
             loadDailyRecords();
+            loadYearHeatmap();
+        } else {
+            if (recordsLoad != null) {
+                loadDailyRecords();
+            }
+            if (yearLoad != null) {
+                loadYearHeatmap();
+            }
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        repository.cancelAll(this);
+    }
+
     private void showAddSelectionDialog() {
         String[] options = { "📝 记一笔 (账单)", "📖 写日记 (生活)", "✅ 加任务 (待办)" };
         new android.app.AlertDialog.Builder(this)
@@ -118,13 +181,13 @@ public class CalendarActivity extends AppCompatActivity {
         final String[] selectedDueDate = { null };
 
         layoutDueDate.setOnClickListener(v -> {
-            Calendar cal = Calendar.getInstance();
+            int today = DateKeys.today();
             new android.app.DatePickerDialog(this, (view, year, month, dayOfMonth) -> {
                 selectedDueDate[0] = String.format(Locale.CHINA, "%04d-%02d-%02d", year, month + 1, dayOfMonth);
                 tvDueDate.setText(String.format(Locale.CHINA, "%02d/%02d/%d", month + 1, dayOfMonth, year));
                 tvDueDate.setTextColor(androidx.core.content.ContextCompat.getColor(this, R.color.text_main));
                 btnClearDate.setVisibility(View.VISIBLE);
-            }, cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH)).show();
+            }, DateKeys.year(today), DateKeys.month(today) - 1, DateKeys.day(today)).show();
         });
 
         btnClearDate.setOnClickListener(v -> {
@@ -161,11 +224,17 @@ public class CalendarActivity extends AppCompatActivity {
                     else if (priorityId == R.id.rbLow)
                         priority = TodoItem.PRIORITY_LOW;
 
-                    String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+                    String today = DateKeys.todayString();
 
                     TodoItem newItem = new TodoItem(title, description, status, priority,
                             selectedDueDate[0], tags, today, null, null);
-                    dbHelper.addTodoItem(newItem);
+                    // Stays on this screen, so no onResume to pick up the new due date
+                    repository.addTodoItem(this, newItem, added -> {
+                        if (activitySeen.hasChanged()) {
+                            activitySeen.markSeen();
+                            loadMonthOverview();
+                        }
+                    });
                     android.widget.Toast.makeText(this, "任务已添加", android.widget.Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("取消", null)
@@ -173,47 +242,91 @@ public class CalendarActivity extends AppCompatActivity {
     }
 
     private void setupCalendar() {
-        daysOfMonth.clear();
-        Calendar monthIter = (Calendar) currentCalendar.clone();
-        monthIter.set(Calendar.DAY_OF_MONTH, 1);
-
-        int firstDayOfWeek = monthIter.get(Calendar.DAY_OF_WEEK);
-        int shift = firstDayOfWeek - Calendar.MONDAY;
-        if (shift < 0)
-            shift += 7;
-
-        monthIter.add(Calendar.DAY_OF_MONTH, -shift);
-
-        for (int i = 0; i < 42; i++) {
-            daysOfMonth.add(monthIter.getTime());
-            monthIter.add(Calendar.DAY_OF_MONTH, 1);
+        buildMonthGrid();
+        loadMonthOverview();
+        loadDailyRecords();
+        if (displayedMonth / 100 != heatmapYear) {
+            loadYearHeatmap();
         }
+    }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM", Locale.CHINA);
-        monthlySummaries = dbHelper.getMonthlyDailySummaries(sdf.format(currentCalendar.getTime()));
+    private void buildMonthGrid() {
+        gridDays = DateKeys.monthGrid(displayedMonth);
+        gridDates = new String[gridDays.length];
+        for (int i = 0; i < gridDays.length; i++) {
+            gridDates[i] = DateKeys.format(gridDays[i]);
+        }
 
-        tvCurrentMonth.setText(new SimpleDateFormat("yyyy年MM月", Locale.CHINA).format(currentCalendar.getTime()));
+        tvCurrentMonth.setText(String.format(Locale.CHINA, "%04d年%02d月", displayedMonth / 100, displayedMonth % 100));
 
-        CalendarAdapter calendarAdapter = new CalendarAdapter();
-        calendarGrid.setAdapter(calendarAdapter);
+        // Draw the grid immediately; a prefetched month has its totals already,
+        // otherwise they fill in when the query returns
+        Map<String, DayOverview> cached = repository.getCachedMonthOverview(DateKeys.formatMonth(displayedMonth));
+        monthOverview = cached != null ? cached : Collections.emptyMap();
+        calendarAdapter.notifyDataSetChanged();
+    }
 
-        calendarGrid.setOnItemClickListener((parent, view, position, id) -> {
-            selectedDate.setTime(daysOfMonth.get(position));
-            calendarAdapter.notifyDataSetChanged();
-            loadDailyRecords();
+    private void loadMonthOverview() {
+        if (monthLoad != null) {
+            monthLoad.cancel();
+        }
+        String yearMonth = DateKeys.formatMonth(displayedMonth);
+        Map<String, DayOverview> cached = repository.getCachedMonthOverview(yearMonth);
+        if (cached != null) {
+            monthLoad = null;
+            showMonthOverview(cached);
+            return;
+        }
+        monthLoad = repository.getMonthOverview(this, yearMonth, overview -> {
+            monthLoad = null;
+            showMonthOverview(overview);
         });
+    }
 
-        loadDailyRecords();
+    private void showMonthOverview(Map<String, DayOverview> overview) {
+        if (overview != monthOverview) {
+            monthOverview = overview;
+            calendarAdapter.notifyDataSetChanged();
+        }
+        // The months either side are the likely next taps; have them ready
+        repository.prefetchMonthOverview(this, DateKeys.formatMonth(DateKeys.plusMonths(displayedMonth, -1)));
+        repository.prefetchMonthOverview(this, DateKeys.formatMonth(DateKeys.plusMonths(displayedMonth, 1)));
     }
 
     private void loadDailyRecords() {
-        String dateStr = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(selectedDate.getTime());
-        List<Transaction> records = dbHelper.getTransactionsByDate(dateStr);
+        String dateStr = DateKeys.format(selectedDay);
+        yearHeatmap.setSelectedDay(selectedDay);
 
-        String titleDate = new SimpleDateFormat("MM月dd日", Locale.CHINA).format(selectedDate.getTime());
-        String weekDay = new SimpleDateFormat("EEEE", Locale.CHINA).format(selectedDate.getTime());
-        tvSelectedDateTitle.setText("记录列表 " + titleDate + " (" + weekDay + ")");
+        tvSelectedDateTitle.setText(String.format(Locale.CHINA, "记录列表 %02d月%02d日 (%s)", DateKeys.month(selectedDay),
+                DateKeys.day(selectedDay), WEEKDAYS[DateKeys.dayOfWeek(selectedDay) - 1]));
+
+        if (recordsLoad != null) {
+            recordsLoad.cancel();
+        }
+        recordsLoad = repository.getTransactionsByDate(this, dateStr, records -> {
+            recordsLoad = null;
+            showDailyRecords(records);
+        });
+    }
+
+    private void loadYearHeatmap() {
+        if (yearLoad != null) {
+            yearLoad.cancel();
+        }
+        int year = displayedMonth / 100;
+        heatmapYear = year;
+        yearLoad = repository.getYearDailyExpenses(this, year, expenses -> {
+            yearLoad = null;
+            long total = 0;
+            for (long cents : expenses) {
+                total += cents;
+            }
+            tvYearTitle.setText(String.format(Locale.CHINA, "%d年支出 ¥%.2f", year, DatabaseHelper.fromCents(total)));
+            yearHeatmap.setData(year, expenses);
+        });
+    }
 
+    private void showDailyRecords(List<Transaction> records) {
         if (records.isEmpty()) {
             layoutEmpty.setVisibility(View.VISIBLE);
             rvDailyRecords.setVisibility(View.GONE);
@@ -225,14 +338,17 @@ public class CalendarActivity extends AppCompatActivity {
     }
 
     private class CalendarAdapter extends BaseAdapter {
+        private final int dueColor = ContextCompat.getColor(CalendarActivity.this, R.color.text_secondary);
+        private final int overdueColor = ContextCompat.getColor(CalendarActivity.this, R.color.expense_red);
+
         @Override
         public int getCount() {
-            return daysOfMonth.size();
+            return gridDays.length;
         }
 
         @Override
         public Object getItem(int position) {
-            return daysOfMonth.get(position);
+            return gridDays[position];
         }
 
         @Override
@@ -242,33 +358,31 @@ public class CalendarActivity extends AppCompatActivity {
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
+            DayHolder holder;
             if (convertView == null) {
                 convertView = LayoutInflater.from(CalendarActivity.this).inflate(R.layout.item_calendar_day, parent,
                         false);
+                holder = new DayHolder(convertView);
+                convertView.setTag(holder);
+            } else {
+                holder = (DayHolder) convertView.getTag();
             }
 
-            Date date = daysOfMonth.get(position);
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(date);
+            int day = gridDays[position];
 
-            TextView tvDay = convertView.findViewById(R.id.tvDayNumber);
-            TextView tvInc = convertView.findViewById(R.id.tvDayIncome);
-            TextView tvExp = convertView.findViewById(R.id.tvDayExpense);
-            View layout = convertView.findViewById(R.id.layoutDay);
+            TextView tvDay = holder.tvDay;
+            TextView tvInc = holder.tvInc;
+            TextView tvExp = holder.tvExp;
+            TextView tvActivity = holder.tvActivity;
+            View layout = holder.layout;
 
-            tvDay.setText(String.valueOf(cal.get(Calendar.DAY_OF_MONTH)));
+            tvDay.setText(DAY_LABELS[DateKeys.day(day)]);
+            tvDay.setAlpha(DateKeys.monthOf(day) == displayedMonth ? 1.0f : 0.2f);
 
-            if (cal.get(Calendar.MONTH) != currentCalendar.get(Calendar.MONTH)) {
-                tvDay.setAlpha(0.2f);
-            } else {
-                tvDay.setAlpha(1.0f);
-            }
+            layout.setSelected(day == selectedDay);
 
-            layout.setSelected(isSameDay(cal, selectedDate));
-
-            String dateKey = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(date);
-            if (monthlySummaries.containsKey(dateKey)) {
-                DailyTotal dt = monthlySummaries.get(dateKey);
+            DayOverview dt = monthOverview.get(gridDates[position]);
+            if (dt != null) {
                 if (dt.getIncome() > 0) {
                     tvInc.setVisibility(View.VISIBLE);
                     tvInc.setText(String.format(Locale.CHINA, "+%.0f", dt.getIncome()));
@@ -280,17 +394,37 @@ public class CalendarActivity extends AppCompatActivity {
                     tvExp.setText(String.format(Locale.CHINA, "-%.0f", dt.getExpense()));
                 } else
                     tvExp.setVisibility(View.GONE);
+
+                if (dt.getDiaryCount() > 0 || dt.getDueCount() > 0) {
+                    String text = dt.getDiaryCount() > 0 ? DiaryEntry.moodEmoji(dt.getMood()) : "";
+                    if (dt.getDueCount() > 0)
+                        text += "📌" + dt.getDueCount();
+                    tvActivity.setVisibility(View.VISIBLE);
+                    tvActivity.setText(text);
+                    tvActivity.setTextColor(dt.getOverdueCount() > 0 ? overdueColor : dueColor);
+                } else
+                    tvActivity.setVisibility(View.GONE);
             } else {
                 tvInc.setVisibility(View.GONE);
                 tvExp.setVisibility(View.GONE);
+                tvActivity.setVisibility(View.GONE);
             }
 
             return convertView;
         }
 
-        private boolean isSameDay(Calendar c1, Calendar c2) {
-            return c1.get(Calendar.YEAR) == c2.get(Calendar.YEAR) &&
-                    c1.get(Calendar.DAY_OF_YEAR) == c2.get(Calendar.DAY_OF_YEAR);
+        private final class DayHolder {
+            final TextView tvDay, tvInc, tvExp, tvActivity;
+            final View layout;
+
+            DayHolder(View view) {
+                tvDay = view.findViewById(R.id.tvDayNumber);
+                tvInc = view.findViewById(R.id.tvDayIncome);
+                tvExp = view.findViewById(R.id.tvDayExpense);
+                tvActivity = view.findViewById(R.id.tvDayActivity);
+                layout = view.findViewById(R.id.layoutDay);
+            }
         }
+
     }
 }
@@ -18,6 +18,8 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private List<ChatMessage> messages;
     private OnConfirmListener confirmListener;
     private OnTaskConfirmListener taskConfirmListener;
+    // Message bubbles and the welcome text can run to many lines
+    private final PrecomputedTextCache texts = new PrecomputedTextCache(64);
 
     public interface OnConfirmListener {
         void onConfirm(Transaction transaction, int position);
@@ -32,6 +34,8 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         this.messages = messages;
         this.confirmListener = confirmListener;
         this.taskConfirmListener = taskConfirmListener;
+        // The hosts edit the list in place and notify exactly what changed
+        setHasStableIds(true);
     }
 
     // Legacy constructor for backward compatibility
@@ -39,6 +43,11 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         this(messages, confirmListener, null);
     }
 
+    @Override
+    public long getItemId(int position) {
+        return messages.get(position).getId();
+    }
+
     @Override
     public int getItemViewType(int position) {
         return messages.get(position).getType();
@@ -60,7 +69,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         ChatMessage message = messages.get(position);
         if (holder instanceof UserViewHolder) {
-            ((UserViewHolder) holder).tvUserMsg.setText(message.getContent());
+            texts.setText(((UserViewHolder) holder).tvUserMsg, message.getId(), message.getContent());
         } else if (holder instanceof AiViewHolder) {
             AiViewHolder aiHolder = (AiViewHolder) holder;
 
@@ -70,7 +79,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 aiHolder.cardPreview.setVisibility(View.GONE);
                 aiHolder.cardTaskPreview.setVisibility(View.GONE);
                 aiHolder.tvWelcome.setVisibility(View.VISIBLE);
-                aiHolder.tvWelcome.setText(message.getContent());
+                texts.setText(aiHolder.tvWelcome, message.getId(), message.getContent());
                 return;
             }
 
@@ -89,14 +98,14 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 if (task != null) {
                     aiHolder.cardPreview.setVisibility(View.GONE);
                     aiHolder.cardTaskPreview.setVisibility(View.VISIBLE);
-                    bindTaskPreview(aiHolder, task, position);
+                    bindTaskPreview(aiHolder, task);
                 } else {
                     // Check for pending transaction
                     Transaction t = message.getPendingTransaction();
                     if (t != null) {
                         aiHolder.cardPreview.setVisibility(View.VISIBLE);
                         aiHolder.cardTaskPreview.setVisibility(View.GONE);
-                        bindTransactionPreview(aiHolder, t, message, position);
+                        bindTransactionPreview(aiHolder, t, message);
                     } else {
                         aiHolder.cardPreview.setVisibility(View.GONE);
                         aiHolder.cardTaskPreview.setVisibility(View.GONE);
@@ -106,24 +115,24 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
-    private void bindTransactionPreview(AiViewHolder aiHolder, Transaction t, ChatMessage message, int position) {
+    private void bindTransactionPreview(AiViewHolder aiHolder, Transaction t, ChatMessage message) {
         aiHolder.tvPreviewCategory.setText(t.getCategory());
         String amountPrefix = "income".equals(t.getType()) ? "+¥" : "-¥";
         aiHolder.tvPreviewAmount.setText(String.format(Locale.CHINA, "%s%.2f", amountPrefix, t.getAmount()));
-        aiHolder.tvPreviewNote.setText(t.getNote().isEmpty() ? message.getContent() : t.getNote());
+        String note = t.getNote().isEmpty() ? message.getContent() : t.getNote();
+        texts.setText(aiHolder.tvPreviewNote, message.getId(), note);
         aiHolder.tvPreviewTime.setText(t.getDate());
 
+        // Positions are read when clicked: rows above may have been removed since binding
         aiHolder.btnConfirm.setOnClickListener(v -> {
-            if (confirmListener != null)
+            int position = aiHolder.getAdapterPosition();
+            if (confirmListener != null && position != RecyclerView.NO_POSITION)
                 confirmListener.onConfirm(t, position);
         });
-        aiHolder.btnCancel.setOnClickListener(v -> {
-            messages.remove(position);
-            notifyItemRemoved(position);
-        });
+        aiHolder.btnCancel.setOnClickListener(v -> removeAt(aiHolder.getAdapterPosition()));
     }
 
-    private void bindTaskPreview(AiViewHolder aiHolder, TodoItem task, int position) {
+    private void bindTaskPreview(AiViewHolder aiHolder, TodoItem task) {
         aiHolder.tvTaskTitle.setText(task.getTitle());
         aiHolder.tvTaskPriority.setText(task.getPriorityText());
         aiHolder.tvTaskStatus.setText("○ " + task.getStatusText());
@@ -159,14 +168,19 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
         aiHolder.btnTaskConfirm.setOnClickListener(v -> {
-            if (taskConfirmListener != null) {
+            int position = aiHolder.getAdapterPosition();
+            if (taskConfirmListener != null && position != RecyclerView.NO_POSITION) {
                 taskConfirmListener.onConfirmTask(task, position);
             }
         });
-        aiHolder.btnTaskCancel.setOnClickListener(v -> {
-            messages.remove(position);
-            notifyItemRemoved(position);
-        });
+        aiHolder.btnTaskCancel.setOnClickListener(v -> removeAt(aiHolder.getAdapterPosition()));
+    }
+
+    private void removeAt(int position) {
+        if (position == RecyclerView.NO_POSITION)
+            return;
+        texts.invalidate(messages.remove(position).getId());
+        notifyItemRemoved(position);
     }
 
     @Override
@@ -1,9 +1,15 @@
 package com.example.pocketledger;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class ChatMessage {
     public static final int TYPE_USER = 0;
     public static final int TYPE_AI = 1;
 
+    // Process-wide, so every message has a stable RecyclerView id
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id = NEXT_ID.incrementAndGet();
     private int type;
     private String content;
     private Transaction pendingTransaction;
@@ -16,6 +22,10 @@ public class ChatMessage {
         this.content = content;
     }
 
+    public long getId() {
+        return id;
+    }
+
     public int getType() {
         return type;
     }
@@ -0,0 +1,182 @@
+package com.example.pocketledger;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+/**
+ * Exports the ledger as CSV in the background (run it through
+ * {@link LedgerRepository#write}: it is never dropped from the queue and no
+ * row changes halfway through the file). Rows are written straight from the database
+ * cursor into a buffered UTF-8 writer on the SAF stream, so memory use stays
+ * flat however large the ledger is. A cancelled or failed export deletes the
+ * partly written document.
+ */
+public class CsvExportTask implements Callable<CsvExportTask.Result> {
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread.
+         */
+        void onProgress(int exported, int total);
+    }
+
+    public static final class Result {
+        public final int exported;
+        public final boolean cancelled;
+        public final String error;
+
+        Result(int exported, boolean cancelled, String error) {
+            this.exported = exported;
+            this.cancelled = cancelled;
+            this.error = error;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 500;
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final DatabaseHelper dbHelper;
+    private final ProgressNotifier notifier;
+    private final ProgressListener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled;
+    private int exported;
+
+    public CsvExportTask(ContentResolver resolver, Uri uri, DatabaseHelper dbHelper, ProgressNotifier notifier,
+            ProgressListener listener) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.dbHelper = dbHelper;
+        this.notifier = notifier;
+        this.listener = listener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public Result call() {
+        int total = dbHelper.getTransactionCount();
+        exported = 0;
+        try (OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) {
+                throw new IOException("无法打开文件");
+            }
+            // Adding Byte Order Mark (BOM) for Excel UTF-8 compatibility
+            os.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+            // Standard Header with Chinese column names
+            writer.write("类型,分类,金额,日期,备注\n");
+
+            dbHelper.forEachTransaction(t -> {
+                if (cancelled)
+                    return false;
+                writeRow(writer, t);
+                if (++exported % PROGRESS_INTERVAL == 0) {
+                    postProgress(exported, total);
+                }
+                return true;
+            });
+            writer.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+            deletePartialFile();
+            notifier.finish("导出失败");
+            return new Result(0, false, e.getMessage());
+        }
+
+        if (cancelled) {
+            deletePartialFile();
+            notifier.cancel();
+            return new Result(0, true, null);
+        }
+        notifier.finish("已导出 " + exported + " 条记录");
+        return new Result(exported, false, null);
+    }
+
+    private void writeRow(Writer writer, Transaction t) throws IOException {
+        // Convert internal type to Chinese display name
+        writer.write(convertTypeToChineseDisplay(t.getType()));
+        writer.write(',');
+        // Quote values that might contain special characters
+        writer.write(escapeCSVField(t.getCategory()));
+        writer.write(',');
+        writeAmount(writer, DatabaseHelper.toCents(t.getAmount()));
+        writer.write(',');
+        writer.write(t.getDate()); // Date in yyyy-MM-dd format
+        writer.write(',');
+        writer.write(escapeCSVField(t.getNote()));
+        writer.write('\n');
+    }
+
+    // Same output as "%.2f" without going through Formatter for every row
+    static void writeAmount(Writer writer, long cents) throws IOException {
+        if (cents < 0) {
+            writer.write('-');
+            cents = -cents;
+        }
+        writer.write(Long.toString(cents / 100));
+        writer.write('.');
+        long fraction = cents % 100;
+        writer.write((char) ('0' + fraction / 10));
+        writer.write((char) ('0' + fraction % 10));
+    }
+
+    /**
+     * Convert internal type value to Chinese display name
+     */
+    static String convertTypeToChineseDisplay(String type) {
+        if ("income".equals(type)) {
+            return "收入";
+        } else if ("expense".equals(type)) {
+            return "支出";
+        }
+        return type == null ? "" : type;
+    }
+
+    /**
+     * Escape special characters in CSV field according to RFC 4180
+     */
+    static String escapeCSVField(String field) {
+        if (field == null) {
+            return "";
+        }
+        // If field contains comma, quote, or newline, wrap in quotes and escape quotes
+        if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                || field.indexOf('\r') >= 0) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+
+    private void postProgress(int done, int total) {
+        notifier.update(done, total);
+        if (listener != null) {
+            mainHandler.post(() -> listener.onProgress(done, total));
+        }
+    }
+
+    private void deletePartialFile() {
+        try {
+            DocumentsContract.deleteDocument(resolver, uri);
+        } catch (Exception e) {
+            // Not every provider supports deletion; the partial file then stays behind
+            e.printStackTrace();
+        }
+    }
+}
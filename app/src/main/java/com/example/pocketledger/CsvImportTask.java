@@ -0,0 +1,214 @@
+package com.example.pocketledger;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+/**
+ * Imports a CSV bill file in the background (run it through
+ * {@link LedgerRepository#write}). The file is tokenized record by record with
+ * {@link CsvReader} and fed to a {@link DatabaseHelper.ImportSession}, so memory
+ * use does not grow with the file.
+ * Cancelling, or any read error, rolls the whole import back.
+ */
+public class CsvImportTask implements Callable<CsvImportTask.Result> {
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread. percent is -1 when the file size is unknown.
+         */
+        void onProgress(int imported, int percent);
+    }
+
+    public static final class Result {
+        public final int imported;
+        public final int skipped;
+        public final boolean cancelled;
+        public final String error;
+
+        Result(int imported, int skipped, boolean cancelled, String error) {
+            this.imported = imported;
+            this.skipped = skipped;
+            this.cancelled = cancelled;
+            this.error = error;
+        }
+    }
+
+    private static final int PROGRESS_INTERVAL = 500;
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final DatabaseHelper dbHelper;
+    private final ProgressListener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled;
+
+    public CsvImportTask(ContentResolver resolver, Uri uri, DatabaseHelper dbHelper, ProgressListener listener) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.dbHelper = dbHelper;
+        this.listener = listener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public Result call() {
+        long totalBytes = querySize();
+        int skipped = 0;
+        DatabaseHelper.ImportSession session = dbHelper.beginImport();
+        try (CountingInputStream is = new CountingInputStream(resolver.openInputStream(uri));
+                CsvReader csv = new CsvReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+
+            int lines = 0;
+            while (csv.nextRecord()) {
+                if (cancelled) {
+                    session.abort();
+                    return new Result(0, 0, true, null);
+                }
+                // Skip the header and empty lines
+                if (csv.getRecordNumber() == 1 || csv.isBlankRecord()) {
+                    continue;
+                }
+
+                Transaction transaction = parseRow(csv);
+                if (transaction == null) {
+                    skipped++;
+                } else {
+                    session.add(transaction);
+                }
+
+                if (++lines % PROGRESS_INTERVAL == 0) {
+                    postProgress(session.getCount(), totalBytes > 0 ? (int) (is.count * 100 / totalBytes) : -1);
+                }
+            }
+            int imported = session.commit();
+            return new Result(imported, skipped, false, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            session.abort();
+            return new Result(0, 0, false, e.getMessage());
+        }
+    }
+
+    /**
+     * Validate one row of 类型,分类,金额,日期[,备注]; null if it should be skipped.
+     */
+    static Transaction parseRow(CsvReader csv) {
+        int fields = csv.getFieldCount();
+        if (fields < 4)
+            return null;
+        // Convert Chinese display name to internal type, or validate English type
+        String type = convertChineseDisplayToType(csv.getTrimmedField(0));
+        if (type == null)
+            return null;
+
+        // Validate and parse amount
+        double amount;
+        try {
+            amount = Double.parseDouble(csv.getTrimmedField(2));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (amount < 0)
+            return null;
+
+        String date = csv.getTrimmedField(3);
+        if (!isIsoDate(date) || DateKeys.parse(date) == 0)
+            return null;
+
+        String category = csv.getTrimmedField(1);
+        String note = fields > 4 ? csv.getTrimmedField(4) : "";
+        return new Transaction(type, amount, category, note, date);
+    }
+
+    // Same check as matches("\\d{4}-\\d{2}-\\d{2}") without compiling a Pattern per row
+    static boolean isIsoDate(String date) {
+        if (date.length() != 10)
+            return false;
+        for (int i = 0; i < 10; i++) {
+            char c = date.charAt(i);
+            if (i == 4 || i == 7) {
+                if (c != '-')
+                    return false;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert Chinese display name back to internal type value
+     */
+    static String convertChineseDisplayToType(String displayType) {
+        if ("收入".equals(displayType)) {
+            return "income";
+        } else if ("支出".equals(displayType)) {
+            return "expense";
+        }
+        // Also accept English type names for backward compatibility
+        if ("income".equals(displayType) || "expense".equals(displayType)) {
+            return displayType;
+        }
+        return null; // Invalid type
+    }
+
+    private void postProgress(int imported, int percent) {
+        if (listener != null) {
+            mainHandler.post(() -> listener.onProgress(imported, percent));
+        }
+    }
+
+    private long querySize() {
+        try (Cursor cursor = resolver.query(uri, new String[] { OpenableColumns.SIZE }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) throws IOException {
+            super(in);
+            if (in == null) {
+                throw new IOException("无法打开文件");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
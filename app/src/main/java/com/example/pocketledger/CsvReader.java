@@ -0,0 +1,206 @@
+package com.example.pocketledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming RFC 4180 CSV tokenizer.
+ *
+ * Reads through a fixed char buffer and copies each record's field characters
+ * into one reusable record buffer, so walking a file allocates nothing per row
+ * unless the caller asks for a field as a String. Handles quoted fields with
+ * doubled quotes, commas and line breaks inside quotes, CRLF/LF/CR record
+ * ends and a leading UTF-8 BOM.
+ *
+ * <pre>
+ * CsvReader csv = new CsvReader(reader);
+ * while (csv.nextRecord()) {
+ *     String first = csv.getField(0);
+ * }
+ * </pre>
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int INITIAL_FIELDS = 8;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean started;
+
+    // Field characters of the current record, back to back
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStarts = new int[INITIAL_FIELDS];
+    private int[] fieldEnds = new int[INITIAL_FIELDS];
+    private int fieldCount;
+    private long recordNumber;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return false at end of input
+     */
+    public boolean nextRecord() throws IOException {
+        if (!started) {
+            started = true;
+            // Handle optional BOM
+            if (fill() && buffer[position] == '\uFEFF') {
+                position++;
+            }
+        }
+        recordLength = 0;
+        fieldCount = 0;
+        if (position >= limit && !fill()) {
+            return false;
+        }
+
+        int fieldStart = 0;
+        boolean quoted = false;
+        boolean afterQuote = false;
+        while (true) {
+            if (position >= limit && !fill()) {
+                // EOF terminates the last record, even inside an unclosed quote
+                endField(fieldStart);
+                break;
+            }
+            char c = buffer[position++];
+            if (quoted) {
+                if (c == '"') {
+                    if (position >= limit && !fill()) {
+                        endField(fieldStart);
+                        break;
+                    }
+                    if (buffer[position] == '"') {
+                        // "" inside quotes is a literal quote
+                        position++;
+                        append(c);
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                    }
+                } else {
+                    append(c);
+                }
+            } else if (c == ',') {
+                endField(fieldStart);
+                fieldStart = recordLength;
+                afterQuote = false;
+            } else if (c == '\n') {
+                endField(fieldStart);
+                break;
+            } else if (c == '\r') {
+                endField(fieldStart);
+                if ((position < limit || fill()) && buffer[position] == '\n') {
+                    position++;
+                }
+                break;
+            } else if (c == '"' && recordLength == fieldStart && !afterQuote) {
+                quoted = true;
+            } else {
+                // Characters after a closing quote are kept, as lenient readers do
+                append(c);
+            }
+        }
+        recordNumber++;
+        return true;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 1-based index of the current record.
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    public String getField(int index) {
+        checkIndex(index);
+        return new String(record, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * The field with surrounding whitespace removed, without an intermediate String.
+     */
+    public String getTrimmedField(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        while (start < end && record[start] <= ' ') {
+            start++;
+        }
+        while (end > start && record[end - 1] <= ' ') {
+            end--;
+        }
+        return new String(record, start, end - start);
+    }
+
+    /**
+     * True for a record that is empty or whitespace only.
+     */
+    public boolean isBlankRecord() {
+        if (fieldCount > 1)
+            return false;
+        for (int i = 0; i < recordLength; i++) {
+            if (record[i] > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            char[] grown = new char[record.length * 2];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        record[recordLength++] = c;
+    }
+
+    private void endField(int start) {
+        if (fieldCount == fieldStarts.length) {
+            int[] starts = new int[fieldCount * 2];
+            int[] ends = new int[fieldCount * 2];
+            System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+            System.arraycopy(fieldEnds, 0, ends, 0, fieldCount);
+            fieldStarts = starts;
+            fieldEnds = ends;
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = recordLength;
+        fieldCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("field " + index + " of " + fieldCount);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.pocketledger;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of one month on the ledger dashboard: totals plus the
+ * expense breakdown by main category (sorted by amount, largest first).
+ * Budget figures are derived on demand because the budget lives in preferences.
+ */
+public class DashboardSummary {
+    private final String yearMonth;
+    private final double income;
+    private final double expense;
+    private final List<CategoryStat> categoryStats;
+
+    public DashboardSummary(String yearMonth, double income, double expense, List<CategoryStat> categoryStats) {
+        this.yearMonth = yearMonth;
+        this.income = income;
+        this.expense = expense;
+        this.categoryStats = Collections.unmodifiableList(categoryStats);
+    }
+
+    public String getYearMonth() {
+        return yearMonth;
+    }
+
+    public double getIncome() {
+        return income;
+    }
+
+    public double getExpense() {
+        return expense;
+    }
+
+    public double getBalance() {
+        return income - expense;
+    }
+
+    public List<CategoryStat> getCategoryStats() {
+        return categoryStats;
+    }
+
+    public List<CategoryStat> getTopCategories(int n) {
+        return categoryStats.subList(0, Math.min(n, categoryStats.size()));
+    }
+
+    public double getBudgetLeft(double budget) {
+        return budget - expense;
+    }
+
+    // Percentage of the budget spent, not capped so callers can detect overspending
+    public int getBudgetProgress(double budget) {
+        return budget > 0 ? (int) ((expense / budget) * 100) : 0;
+    }
+}
@@ -1,25 +1,48 @@
 package com.example.pocketledger;
 
+import android.Manifest;
+import android.content.ClipData;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class DataManageActivity extends AppCompatActivity {
 
     private static final int PICK_FILE_REQUEST = 1;
     private static final int CREATE_FILE_REQUEST = 2;
+    private static final int NOTIFICATION_PERMISSION_REQUEST = 3;
+    private static final int BACKUP_FILE_REQUEST = 4;
+    private static final int RESTORE_FILE_REQUEST = 5;
+    private static final int INCREMENTAL_FILE_REQUEST = 6;
+    private static final int EXPORT_NOTIFICATION_ID = 1001;
     private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
+
+    private View layoutProgress;
+    private TextView tvProgress;
+    private LinearProgressIndicator progressIndicator;
+    private ImportHolder imports;
+    private CsvExportTask exportTask;
+    private boolean backupRunning;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -27,13 +50,117 @@ public class DataManageActivity extends AppCompatActivity {
         setContentView(R.layout.activity_data_manage);
 
         dbHelper = DatabaseHelper.getInstance(this);
+        repository = LedgerRepository.getInstance(this);
+
+        layoutProgress = findViewById(R.id.layoutProgress);
+        tvProgress = findViewById(R.id.tvProgress);
+        progressIndicator = findViewById(R.id.progressIndicator);
 
         findViewById(R.id.btnBack).setOnClickListener(v -> finish());
         findViewById(R.id.btnExport).setOnClickListener(v -> exportData());
         findViewById(R.id.btnImport).setOnClickListener(v -> importData());
+        findViewById(R.id.btnBackup).setOnClickListener(v -> backupDatabase());
+        findViewById(R.id.btnIncremental).setOnClickListener(v -> backupChanges());
+        findViewById(R.id.btnRestore).setOnClickListener(v -> confirmRestore());
+        findViewById(R.id.btnCancelProgress).setOnClickListener(v -> cancelRunningTask());
+
+        imports = new ViewModelProvider(this).get(ImportHolder.class);
+        imports.attach(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // A running import outlives a rotation in its holder, and is rolled back only once
+        // the screen is left for good. A running export is left to finish; its
+        // notification reports the result.
+        imports.detach(this);
+        repository.cancelAll(this);
+    }
+
+    /**
+     * Keeps a CSV import across configuration changes: the task reports to whichever
+     * activity instance is current, and one recreated mid-import picks the progress
+     * back up. Only leaving the screen for good ({@link #onCleared}) rolls it back.
+     */
+    public static class ImportHolder extends ViewModel {
+        private CsvImportTask task;
+        private DataManageActivity host;
+        private CsvImportTask.Result unreported;
+        private int imported;
+        private int percent = -1;
+
+        void start(DataManageActivity activity, Uri uri) {
+            imported = 0;
+            percent = -1;
+            // The application's resolver, so the task does not hold on to a destroyed activity
+            task = new CsvImportTask(activity.getApplicationContext().getContentResolver(), uri, activity.dbHelper,
+                    this::onProgress);
+            // Registered to the holder rather than the activity, whose requests end with it
+            activity.repository.write(this, task, this::onFinished);
+        }
+
+        boolean isRunning() {
+            return task != null;
+        }
+
+        void cancel() {
+            if (task != null) {
+                task.cancel();
+            }
+        }
+
+        void attach(DataManageActivity activity) {
+            host = activity;
+            if (task != null) {
+                activity.showImportStarted();
+                if (imported > 0 || percent >= 0) {
+                    activity.showImportProgress(imported, percent);
+                }
+            }
+            if (unreported != null) {
+                CsvImportTask.Result result = unreported;
+                unreported = null;
+                activity.onImportFinished(result);
+            }
+        }
+
+        void detach(DataManageActivity activity) {
+            if (host == activity) {
+                host = null;
+            }
+        }
+
+        private void onProgress(int imported, int percent) {
+            this.imported = imported;
+            this.percent = percent;
+            if (host != null) {
+                host.showImportProgress(imported, percent);
+            }
+        }
+
+        private void onFinished(CsvImportTask.Result result) {
+            task = null;
+            if (host != null) {
+                host.onImportFinished(result);
+            } else {
+                unreported = result;
+            }
+        }
+
+        @Override
+        protected void onCleared() {
+            cancel();
+        }
     }
 
     private void exportData() {
+        // Progress is also shown in-app, so the export goes ahead whatever the answer
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[] { Manifest.permission.POST_NOTIFICATIONS },
+                    NOTIFICATION_PERMISSION_REQUEST);
+        }
         Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         intent.setType("text/comma-separated-values");
@@ -50,7 +177,25 @@ public class DataManageActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if (resultCode != RESULT_OK || data == null || data.getData() == null)
+        if (resultCode != RESULT_OK || data == null)
+            return;
+        if (requestCode == RESTORE_FILE_REQUEST) {
+            // Several files when a full backup is picked together with incremental ones
+            List<Uri> uris = new ArrayList<>();
+            ClipData clip = data.getClipData();
+            if (clip != null) {
+                for (int i = 0; i < clip.getItemCount(); i++) {
+                    uris.add(clip.getItemAt(i).getUri());
+                }
+            } else if (data.getData() != null) {
+                uris.add(data.getData());
+            }
+            if (!uris.isEmpty()) {
+                handleRestore(uris);
+            }
+            return;
+        }
+        if (data.getData() == null)
             return;
 
         Uri uri = data.getData();
@@ -58,165 +203,177 @@ public class DataManageActivity extends AppCompatActivity {
             handleExport(uri);
         } else if (requestCode == PICK_FILE_REQUEST) {
             handleImport(uri);
+        } else if (requestCode == BACKUP_FILE_REQUEST) {
+            handleBackup(uri, false);
+        } else if (requestCode == INCREMENTAL_FILE_REQUEST) {
+            handleBackup(uri, true);
         }
     }
 
     private void handleExport(Uri uri) {
-        try (OutputStream os = getContentResolver().openOutputStream(uri)) {
-            List<Transaction> transactions = dbHelper.getAllTransactions();
-            StringBuilder csv = new StringBuilder();
-
-            // Adding Byte Order Mark (BOM) for Excel UTF-8 compatibility
-            byte[] bom = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
-            os.write(bom);
-
-            // Standard Header with Chinese column names
-            csv.append("类型,分类,金额,日期,备注\n");
-
-            for (Transaction t : transactions) {
-                // Convert internal type to Chinese display name
-                String displayType = convertTypeToChineseDisplay(t.getType());
-
-                // Quote values that might contain special characters
-                String safeNote = escapeCSVField(t.getNote());
-                String safeCategory = escapeCSVField(t.getCategory());
-
-                csv.append(displayType).append(",")
-                        .append(safeCategory).append(",")
-                        .append(String.format("%.2f", t.getAmount())).append(",")
-                        .append(t.getDate()).append(",") // Date in yyyy-MM-dd format
-                        .append(safeNote).append("\n");
-            }
+        if (isBusy())
+            return;
+        ProgressNotifier notifier = new ProgressNotifier(this, EXPORT_NOTIFICATION_ID, "正在导出账单",
+                android.R.drawable.stat_sys_download);
+        exportTask = new CsvExportTask(getContentResolver(), uri, dbHelper, notifier, this::showExportProgress);
+        setBusy(true);
+        tvProgress.setText("正在导出…");
+        progressIndicator.setIndeterminate(true);
+        repository.write(this, exportTask, this::onExportFinished);
+    }
 
-            os.write(csv.toString().getBytes(StandardCharsets.UTF_8));
-            Toast.makeText(this, "导出成功，共 " + transactions.size() + " 条记录", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Toast.makeText(this, "导出失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+    private void showExportProgress(int exported, int total) {
+        if (exportTask == null)
+            return;
+        tvProgress.setText("已导出 " + exported + " / " + total + " 条");
+        if (total > 0) {
+            progressIndicator.setIndeterminate(false);
+            progressIndicator.setProgressCompat(exported * 100 / total, true);
         }
     }
 
-    /**
-     * Convert internal type value to Chinese display name
-     */
-    private String convertTypeToChineseDisplay(String type) {
-        if ("income".equals(type)) {
-            return "收入";
-        } else if ("expense".equals(type)) {
-            return "支出";
+    private void onExportFinished(CsvExportTask.Result result) {
+        exportTask = null;
+        setBusy(false);
+        if (result.cancelled) {
+            Toast.makeText(this, "已取消导出", Toast.LENGTH_SHORT).show();
+        } else if (result.error != null) {
+            Toast.makeText(this, "导出失败: " + result.error, Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "导出成功，共 " + result.exported + " 条记录", Toast.LENGTH_SHORT).show();
         }
-        return type;
     }
 
-    /**
-     * Convert Chinese display name back to internal type value
-     */
-    private String convertChineseDisplayToType(String displayType) {
-        if ("收入".equals(displayType)) {
-            return "income";
-        } else if ("支出".equals(displayType)) {
-            return "expense";
-        }
-        // Also accept English type names for backward compatibility
-        if ("income".equals(displayType) || "expense".equals(displayType)) {
-            return displayType;
-        }
-        return null; // Invalid type
+    private void handleImport(Uri uri) {
+        if (isBusy())
+            return;
+        imports.start(this, uri);
+        showImportStarted();
     }
 
-    /**
-     * Escape special characters in CSV field according to RFC 4180
-     */
-    private String escapeCSVField(String field) {
-        if (field == null) {
-            return "";
+    private void showImportStarted() {
+        setBusy(true);
+        tvProgress.setText("正在导入…");
+        progressIndicator.setIndeterminate(true);
+    }
+
+    private void cancelRunningTask() {
+        imports.cancel();
+        if (exportTask != null) {
+            exportTask.cancel();
         }
-        // If field contains comma, quote, or newline, wrap in quotes and escape quotes
-        if (field.contains(",") || field.contains("\"") || field.contains("\n") || field.contains("\r")) {
-            return "\"" + field.replace("\"", "\"\"") + "\"";
+        tvProgress.setText("正在取消…");
+    }
+
+    private void showImportProgress(int imported, int percent) {
+        if (!imports.isRunning())
+            return;
+        tvProgress.setText("已导入 " + imported + " 条");
+        if (percent >= 0) {
+            progressIndicator.setIndeterminate(false);
+            progressIndicator.setProgressCompat(percent, true);
         }
-        return field;
     }
 
-    private void handleImport(Uri uri) {
-        int count = 0;
-        int errors = 0;
-        try (InputStream is = getContentResolver().openInputStream(uri);
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-
-            String line;
-            boolean firstLine = true;
-            int lineNumber = 0;
-
-            // Handle optional BOM in import
-            reader.mark(3);
-            if (reader.read() != 0xFEFF) {
-                reader.reset();
+    private void onImportFinished(CsvImportTask.Result result) {
+        setBusy(false);
+        if (result.cancelled) {
+            Toast.makeText(this, "已取消导入，未写入任何记录", Toast.LENGTH_SHORT).show();
+        } else if (result.error != null) {
+            Toast.makeText(this, "导入失败: " + result.error, Toast.LENGTH_SHORT).show();
+        } else {
+            String msg = "成功导入 " + result.imported + " 条记录";
+            if (result.skipped > 0) {
+                msg += "，跳过 " + result.skipped + " 条无效数据";
             }
+            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
+        }
+    }
 
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                if (firstLine) {
-                    firstLine = false;
-                    continue;
-                }
+    private void backupDatabase() {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.CHINA).format(new Date());
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("application/gzip");
+        intent.putExtra(Intent.EXTRA_TITLE, "pocket_ledger_" + stamp + ".db.gz");
+        startActivityForResult(intent, BACKUP_FILE_REQUEST);
+    }
 
-                // Skip empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
+    private void backupChanges() {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.CHINA).format(new Date());
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("application/gzip");
+        intent.putExtra(Intent.EXTRA_TITLE, "pocket_ledger_" + stamp + ".delta.gz");
+        startActivityForResult(intent, INCREMENTAL_FILE_REQUEST);
+    }
 
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    try {
-                        String typeInput = parts[0].trim();
-                        String category = parts[1].trim();
-                        String amountStr = parts[2].trim();
-                        String date = parts[3].trim();
-                        String note = parts.length > 4 ? parts[4].trim() : "";
-
-                        // Convert Chinese display name to internal type, or validate English type
-                        String type = convertChineseDisplayToType(typeInput);
-                        if (type == null) {
-                            errors++;
-                            continue;
-                        }
-
-                        // Validate and parse amount
-                        double amount;
-                        try {
-                            amount = Double.parseDouble(amountStr);
-                            if (amount < 0) {
-                                errors++;
-                                continue;
-                            }
-                        } catch (NumberFormatException e) {
-                            errors++;
-                            continue;
-                        }
-
-                        // Validate date format (basic check)
-                        if (!date.matches("\\d{4}-\\d{2}-\\d{2}")) {
-                            errors++;
-                            continue;
-                        }
-
-                        dbHelper.addTransaction(new Transaction(type, amount, category, note, date));
-                        count++;
-                    } catch (Exception e) {
-                        errors++;
-                    }
-                } else {
-                    errors++;
-                }
+    private void confirmRestore() {
+        new AlertDialog.Builder(this)
+                .setTitle("从完整备份恢复")
+                .setMessage("恢复会覆盖当前的全部账单、日记和待办，确定继续吗？\n\n可同时选择一个完整备份及其之后的增量备份。")
+                .setPositiveButton("选择备份文件", (dialog, which) -> {
+                    Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType("*/*");
+                    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+                    startActivityForResult(intent, RESTORE_FILE_REQUEST);
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    private void handleBackup(Uri uri, boolean incremental) {
+        if (isBusy())
+            return;
+        backupRunning = true;
+        setBusy(true);
+        tvProgress.setText("正在备份…");
+        progressIndicator.setIndeterminate(true);
+        DatabaseBackup backup = new DatabaseBackup(this, dbHelper);
+        repository.write(this, () -> incremental ? backup.backupChanges(uri) : backup.backup(uri), result -> {
+            backupRunning = false;
+            setBusy(false);
+            if (result.success) {
+                Toast.makeText(this, String.format(Locale.CHINA, "备份完成 (%.1f MB, %d ms)",
+                        result.bytes / 1048576.0, result.elapsedMs), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "备份失败: " + result.error, Toast.LENGTH_SHORT).show();
             }
+        });
+    }
 
-            String msg = "成功导入 " + count + " 条记录";
-            if (errors > 0) {
-                msg += "，跳过 " + errors + " 条无效数据";
+    private void handleRestore(List<Uri> uris) {
+        if (isBusy())
+            return;
+        backupRunning = true;
+        setBusy(true);
+        tvProgress.setText("正在恢复…");
+        progressIndicator.setIndeterminate(true);
+        DatabaseBackup backup = new DatabaseBackup(this, dbHelper);
+        repository.writeExclusive(this, () -> backup.restore(uris), result -> {
+            backupRunning = false;
+            setBusy(false);
+            if (result.success) {
+                Toast.makeText(this, "恢复完成", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "恢复失败: " + result.error, Toast.LENGTH_LONG).show();
             }
-            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-        } catch (Exception e) {
-            Toast.makeText(this, "导入失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+        });
+    }
+
+    private boolean isBusy() {
+        return imports.isRunning() || exportTask != null || backupRunning;
+    }
+
+    private void setBusy(boolean busy) {
+        layoutProgress.setVisibility(busy ? View.VISIBLE : View.GONE);
+        // Backup and restore cannot be interrupted halfway
+        findViewById(R.id.btnCancelProgress).setVisibility(backupRunning ? View.GONE : View.VISIBLE);
+        findViewById(R.id.btnExport).setEnabled(!busy);
+        findViewById(R.id.btnImport).setEnabled(!busy);
+        findViewById(R.id.btnBackup).setEnabled(!busy);
+        findViewById(R.id.btnIncremental).setEnabled(!busy);
+        findViewById(R.id.btnRestore).setEnabled(!busy);
     }
 }
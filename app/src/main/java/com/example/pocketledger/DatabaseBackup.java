@@ -0,0 +1,224 @@
+package com.example.pocketledger;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Whole-database backup and restore (transactions, diary and todos in one file).
+ * A full backup is a {@link DatabaseHelper#snapshotTo} copy and an incremental
+ * one a {@link DatabaseHelper#exportChanges} change set, either gzipped while it
+ * is streamed to the SAF document. Run every operation through
+ * {@link LedgerRepository#write} so they are ordered with every other write,
+ * and {@link #restore} through {@link LedgerRepository#writeExclusive}.
+ */
+public class DatabaseBackup {
+
+    public static final class Result {
+        public final boolean success;
+        // For a backup, the compressed size of the document written
+        public final long bytes;
+        public final long elapsedMs;
+        public final String error;
+
+        Result(boolean success, long bytes, long elapsedMs, String error) {
+            this.success = success;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+            this.error = error;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final DatabaseHelper dbHelper;
+
+    public DatabaseBackup(Context context, DatabaseHelper dbHelper) {
+        this.context = context.getApplicationContext();
+        this.resolver = this.context.getContentResolver();
+        this.dbHelper = dbHelper;
+    }
+
+    public Result backup(Uri uri) {
+        long start = SystemClock.elapsedRealtime();
+        File snapshot = new File(context.getCacheDir(), "backup_snapshot.db");
+        try {
+            long seq = dbHelper.getChangeSeq();
+            dbHelper.snapshotTo(snapshot);
+            long bytes = writeCompressed(snapshot, uri);
+            dbHelper.completeBackup(seq);
+            return new Result(true, bytes, SystemClock.elapsedRealtime() - start, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new Result(false, 0, 0, e.getMessage());
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    /**
+     * Incremental backup: only the rows changed since the last full or
+     * incremental backup. Needs at least one full backup first.
+     */
+    public Result backupChanges(Uri uri) {
+        long start = SystemClock.elapsedRealtime();
+        File changeSet = new File(context.getCacheDir(), "backup_changes.db");
+        try {
+            long seq = dbHelper.exportChanges(changeSet);
+            long bytes = writeCompressed(changeSet, uri);
+            dbHelper.completeBackup(seq);
+            return new Result(true, bytes, SystemClock.elapsedRealtime() - start, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new Result(false, 0, 0, e.getMessage());
+        } finally {
+            changeSet.delete();
+        }
+    }
+
+    /**
+     * Restore from any mix of one full backup and incremental backups: the full
+     * snapshot is restored first, then the change sets are replayed in seq order.
+     * Plain, uncompressed .db files are accepted too.
+     */
+    public Result restore(List<Uri> uris) {
+        long start = SystemClock.elapsedRealtime();
+        List<File> files = new ArrayList<>();
+        try {
+            File snapshot = null;
+            List<File> changeSets = new ArrayList<>();
+            long bytes = 0;
+            for (int i = 0; i < uris.size(); i++) {
+                File file = new File(context.getCacheDir(), "restore_" + i + ".db");
+                files.add(file);
+                readDecompressed(uris.get(i), file);
+                bytes += file.length();
+                if (DatabaseHelper.isChangeSet(file)) {
+                    changeSets.add(file);
+                } else if (snapshot == null) {
+                    snapshot = file;
+                } else {
+                    throw new IOException("一次只能恢复一个完整备份");
+                }
+            }
+
+            // Each change set starts where the previous one ended, so replay by start seq
+            Map<File, Long> bases = new HashMap<>();
+            for (File changeSet : changeSets) {
+                bases.put(changeSet, DatabaseHelper.getChangeSetBase(changeSet));
+            }
+            Collections.sort(changeSets, (a, b) -> Long.compare(bases.get(a), bases.get(b)));
+            // Reject a broken chain while the current data is still in place
+            dbHelper.checkRestore(snapshot, changeSets);
+
+            if (snapshot != null) {
+                dbHelper.restoreFrom(snapshot);
+            }
+            for (File changeSet : changeSets) {
+                dbHelper.applyChanges(changeSet);
+            }
+            return new Result(true, bytes, SystemClock.elapsedRealtime() - start, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new Result(false, 0, 0, e.getMessage());
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Returns the number of compressed bytes written to the document
+    private long writeCompressed(File file, Uri uri) throws IOException {
+        try (InputStream in = new FileInputStream(file);
+                OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) {
+                throw new IOException("无法打开文件");
+            }
+            CountingOutputStream counted = new CountingOutputStream(os);
+            // Database pages compress well even at the fastest level, which keeps
+            // a multi-MB ledger well under a second
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(counted, BUFFER_SIZE), BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            copy(in, out);
+            out.close();
+            return counted.count;
+        }
+    }
+
+    private void readDecompressed(Uri uri, File file) throws IOException {
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) {
+                throw new IOException("无法打开文件");
+            }
+            InputStream in = new BufferedInputStream(is, BUFFER_SIZE);
+            if (isGzip(in)) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                copy(in, out);
+            }
+        }
+    }
+
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        // FilterOutputStream would otherwise write the array a byte at a time
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+}
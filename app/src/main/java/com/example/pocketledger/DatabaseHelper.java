@@ -3,30 +3,82 @@ package com.example.pocketledger;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = "DatabaseHelper";
     private static final String DATABASE_NAME = "PocketLedger.db";
-    private static final int DATABASE_VERSION = 8; // Enhanced todo table V2 (Visibility features)
+    private static final int DATABASE_VERSION = 16; // idx_diary_date on fresh installs too
 
     // Transaction table
     private static final String TABLE_NAME = "transactions";
+    // Version-9 rows whose date could not be converted, kept untouched by the v10 migration
+    private static final String TABLE_UNDATED = "transactions_undated";
     private static final String COL_ID = "id";
     private static final String COL_TYPE = "type";
-    private static final String COL_AMOUNT = "amount";
+    private static final String COL_AMOUNT = "amount_cents"; // INTEGER minor units
     private static final String COL_CATEGORY = "category";
     private static final String COL_NOTE = "note";
-    private static final String COL_DATE = "date";
+    private static final String COL_DATE = "date_key"; // INTEGER yyyymmdd
+
+    // Transaction columns before version 10
+    private static final String LEGACY_COL_AMOUNT = "amount";
+    private static final String LEGACY_COL_DATE = "date";
+
+    // Rollup tables, maintained by triggers on the transactions table (v9)
+    private static final String TABLE_DAILY_TOTALS = "daily_totals";
+    private static final String DAILY_DATE = "day_key"; // yyyymmdd
+    private static final String DAILY_INCOME = "income";
+    private static final String DAILY_EXPENSE = "expense";
+    private static final String DAILY_COUNT = "tx_count";
+
+    private static final String TABLE_MONTHLY_CATEGORY = "monthly_category_totals";
+    private static final String MONTHLY_MONTH = "month_key"; // yyyymm
+    private static final String MONTHLY_TYPE = "type";
+    private static final String MONTHLY_CATEGORY = "category"; // main category, before the '-'
+    private static final String MONTHLY_TOTAL = "total";
+    private static final String MONTHLY_COUNT = "tx_count";
+
+    // Change log for incremental backups (v11), filled by triggers
+    private static final String TABLE_CHANGE_LOG = "change_log";
+    private static final String LOG_SEQ = "seq";
+    private static final String LOG_TABLE = "table_name";
+    private static final String LOG_ROW_ID = "row_id";
+    private static final String LOG_OP = "op"; // I, U or D
+
+    // Small key/value store for backup bookkeeping
+    private static final String TABLE_BACKUP_META = "backup_meta";
+    private static final String META_KEY = "key";
+    private static final String META_VALUE = "value";
+    private static final String META_WATERMARK = "watermark";
 
     // Diary table (legacy)
     private static final String TABLE_DIARY = "diary";
@@ -42,18 +94,82 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TODO_ID = "id";
     private static final String TODO_TITLE = "title";
     private static final String TODO_DESCRIPTION = "description";
-    private static final String TODO_STATUS = "status"; // not_started, in_progress, completed
-    private static final String TODO_PRIORITY = "priority"; // high, medium, low
+    // Display ranks since v14, converted by TodoItem.statusRank / priorityRank
+    private static final String TODO_STATUS_RANK = "status_rank"; // 1 in_progress, 2 not_started, 3 completed
+    private static final String TODO_PRIORITY_RANK = "priority_rank"; // 1 high, 2 medium, 3 low, 4 none
     private static final String TODO_DUE_DATE = "due_date";
     private static final String TODO_TAGS = "tags";
     private static final String TODO_DATE = "date";
     private static final String TODO_CREATED_AT = "created_at";
     private static final String TODO_ASSIGNEE = "assignee"; // New in v8
     private static final String TODO_ATTACHMENT = "attachment"; // New in v8
+    // Text columns before v14
+    private static final String LEGACY_TODO_STATUS = "status";
+    private static final String LEGACY_TODO_PRIORITY = "priority";
+
+    // Tags normalized out of todos_v2.tags (v13); the string column stays what is shown and edited
+    private static final String TABLE_TAGS = "tags";
+    private static final String TAG_ID = "id";
+    private static final String TAG_NAME = "name";
+    private static final String TABLE_TODO_TAGS = "todo_tags";
+    private static final String TT_TODO_ID = "todo_id";
+    private static final String TT_TAG_ID = "tag_id";
+
+    // User tables recorded in the change log (all use AUTOINCREMENT ids)
+    private static final String[] LOGGED_TABLES = { TABLE_NAME, TABLE_DIARY, TABLE_TODO };
+    // v14 turned the todo status and priority into ranks; no logged table has changed since
+    private static final int MIN_CHANGE_SET_VERSION = 14;
+
+    // Projections: only what the models need, so list queries never drag in unused text
+    private static final String TRANSACTION_COLUMNS = COL_ID + ", " + COL_TYPE + ", " + COL_AMOUNT + ", "
+            + COL_CATEGORY + ", " + COL_NOTE + ", " + COL_DATE;
+    private static final String DIARY_LIST_COLUMNS = DIARY_ID + ", " + DIARY_TITLE + ", " + DIARY_CONTENT + ", "
+            + DIARY_MOOD + ", " + DIARY_DATE;
+    // List rows skip the description; the edit dialog loads the full item with getTodoItem
+    private static final String TODO_LIST_COLUMNS = TODO_ID + ", " + TODO_TITLE + ", " + TODO_STATUS_RANK + ", "
+            + TODO_PRIORITY_RANK + ", " + TODO_DUE_DATE + ", " + TODO_TAGS + ", " + TODO_DATE + ", " + TODO_ASSIGNEE
+            + ", " + TODO_ATTACHMENT;
+
+    // in_progress, not_started, completed; then high to low priority. Walks idx_todo_v2_rank
+    // (or idx_todo_v2_date_rank under a date filter) instead of sorting
+    private static final String TODO_DEFAULT_ORDER = TODO_STATUS_RANK + ", " + TODO_PRIORITY_RANK + ", "
+            + TODO_CREATED_AT + " DESC";
+
+    private static final String SQL_PRUNE_TAGS = "DELETE FROM " + TABLE_TAGS + " WHERE NOT EXISTS (SELECT 1 FROM "
+            + TABLE_TODO_TAGS + " WHERE " + TT_TAG_ID + " = " + TABLE_TAGS + "." + TAG_ID + ")";
+
+    // Hot statements, compiled once per open database in the StatementCache
+    private static final String SQL_INSERT_TRANSACTION = "INSERT INTO " + TABLE_NAME + " (" + COL_TYPE + ", "
+            + COL_AMOUNT + ", " + COL_CATEGORY + ", " + COL_NOTE + ", " + COL_DATE + ") VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_TRANSACTION_DATE = "SELECT " + COL_DATE + " FROM " + TABLE_NAME + " WHERE "
+            + COL_ID + " = ?";
+    private static final String SQL_DELETE_TRANSACTION = "DELETE FROM " + TABLE_NAME + " WHERE " + COL_ID + " = ?";
+    private static final String SQL_COUNT_TRANSACTIONS = "SELECT COUNT(*) FROM " + TABLE_NAME;
+    private static final String SQL_UPDATE_TODO_STATUS = "UPDATE " + TABLE_TODO + " SET " + TODO_STATUS_RANK
+            + " = ? WHERE " + TODO_ID + " = ?";
+    // Returns rows, which SQLiteStatement cannot; being a constant it still hits the
+    // connection's own prepared-statement cache instead of being compiled each call
+    private static final String SQL_TRANSACTIONS_BY_DATE = "SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME
+            + " WHERE " + COL_DATE + " = ? ORDER BY " + COL_ID + " DESC";
+
+    // Per-connection prepared-statement cache size (framework default 25, max 100)
+    private static final int SQL_CACHE_SIZE = 50;
 
     // Singleton instance
     private static volatile DatabaseHelper instance;
 
+    // Month-keyed dashboard cache ("yyyy-MM" -> summary), invalidated by transaction writes.
+    // The generation guards against a slow reader caching a result computed before a write.
+    private final Map<String, DashboardSummary> summaryCache = new ConcurrentHashMap<>();
+    private final AtomicLong summaryGeneration = new AtomicLong();
+
+    // Lets screens skip reloading tables nobody wrote to since they last looked
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+
+    private final DatabaseTuning tuning;
+    private final AtomicLong lastOptimize = new AtomicLong();
+    private volatile StatementCache statements;
+
     /**
      * Get singleton instance of DatabaseHelper
      * Thread-safe double-checked locking pattern
@@ -70,20 +186,104 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public DatabaseHelper(Context context) {
+        this(context, DatabaseTuning.DEFAULT);
+    }
+
+    public DatabaseHelper(Context context, DatabaseTuning tuning) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.tuning = tuning;
+        // Journal mode is switched by the framework, which also sizes its reader pool for WAL
+        setWriteAheadLoggingEnabled(tuning.writeAheadLogging);
+    }
+
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * Per-connection pragmas. They land on the primary (write) connection; the
+     * framework's extra WAL reader connections keep SQLite's defaults apart from
+     * the journal mode.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+        if (tuning.synchronous != null) {
+            pragma(db, "synchronous = " + tuning.synchronous);
+        }
+        if (tuning.cacheSizeKib > 0) {
+            // A negative cache_size is in KiB rather than pages
+            pragma(db, "cache_size = -" + tuning.cacheSizeKib);
+        }
+        if (tuning.tempStoreInMemory) {
+            pragma(db, "temp_store = MEMORY");
+        }
+        if (tuning.mmapSizeBytes > 0) {
+            pragma(db, "mmap_size = " + tuning.mmapSizeBytes);
+        }
+    }
+
+    /**
+     * Run PRAGMA optimize when the tuning interval has passed since the last run,
+     * so the planner statistics follow the data as it grows. Called by the
+     * repository after each write; when nothing is due it is only a clock read.
+     */
+    public void optimizeIfDue() {
+        if (tuning.optimizeIntervalMs <= 0)
+            return;
+        long now = System.currentTimeMillis();
+        long last = lastOptimize.get();
+        if (last != 0 && now - last < tuning.optimizeIntervalMs || !lastOptimize.compareAndSet(last, now))
+            return;
+        try {
+            pragma(this.getWritableDatabase(), "optimize");
+        } catch (SQLiteException e) {
+            // Only statistics; the write that triggered it has already succeeded
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        StatementCache cache = statements;
+        statements = null;
+        if (cache != null) {
+            cache.close();
+        }
+        super.close();
+    }
+
+    /**
+     * The statement cache of the currently open database, replaced after a reopen.
+     */
+    private StatementCache statements(SQLiteDatabase db) {
+        StatementCache cache = statements;
+        if (cache != null && cache.isFor(db))
+            return cache;
+        synchronized (this) {
+            cache = statements;
+            if (cache == null || !cache.isFor(db)) {
+                if (cache != null) {
+                    cache.close();
+                }
+                cache = new StatementCache(db);
+                statements = cache;
+            }
+            return cache;
+        }
+    }
+
+    // Some pragmas answer with a row, which execSQL rejects, so always go through a cursor
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        try (Cursor cursor = db.rawQuery("PRAGMA " + pragma, null)) {
+            cursor.moveToFirst();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         // Create transactions table
-        String createTable = "CREATE TABLE " + TABLE_NAME + " (" +
-                COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COL_TYPE + " TEXT, " +
-                COL_AMOUNT + " REAL, " +
-                COL_CATEGORY + " TEXT, " +
-                COL_NOTE + " TEXT, " +
-                COL_DATE + " TEXT)";
-        db.execSQL(createTable);
+        createTransactionTable(db, TABLE_NAME);
 
         // Create diary table (legacy)
         String createDiaryTable = "CREATE TABLE " + TABLE_DIARY + " (" +
@@ -94,20 +294,25 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 DIARY_DATE + " TEXT, " +
                 DIARY_CREATED_AT + " TEXT DEFAULT CURRENT_TIMESTAMP)";
         db.execSQL(createDiaryTable);
+        createDiaryIndexes(db);
 
         // Create todo table (Notion-style enhanced)
         createTodoTableV2(db);
 
         // Create indexes for better query performance
         createIndexes(db);
+
+        createRollupTables(db);
+
+        createChangeLog(db);
+
+        createSearchIndex(db);
+
+        createTagTables(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Migration from version 3 to 4: add indexes
-        if (oldVersion < 4) {
-            createIndexes(db);
-        }
         // Migration from version 4 to 5: add diary table
         if (oldVersion < 5) {
             String createDiaryTable = "CREATE TABLE IF NOT EXISTS " + TABLE_DIARY + " (" +
@@ -118,17 +323,18 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     DIARY_DATE + " TEXT, " +
                     DIARY_CREATED_AT + " TEXT DEFAULT CURRENT_TIMESTAMP)";
             db.execSQL(createDiaryTable);
-            db.execSQL("CREATE INDEX IF NOT EXISTS idx_diary_date ON " + TABLE_DIARY + " (" + DIARY_DATE + ")");
+            createDiaryIndexes(db);
         }
         // Migration from version 5/6 to 7: create enhanced todo table
         if (oldVersion < 7) {
             createTodoTableV2(db);
             // Migrate data from old todos table if exists
             try {
-                db.execSQL("INSERT INTO " + TABLE_TODO + " (" + TODO_TITLE + ", " + TODO_STATUS + ", " +
-                        TODO_PRIORITY + ", " + TODO_DATE + ", " + TODO_CREATED_AT + ") " +
-                        "SELECT title, CASE WHEN completed = 1 THEN 'completed' ELSE 'not_started' END, " +
-                        "priority, date, created_at FROM todos");
+                db.execSQL("INSERT INTO " + TABLE_TODO + " (" + TODO_TITLE + ", " + TODO_STATUS_RANK + ", " +
+                        TODO_PRIORITY_RANK + ", " + TODO_DATE + ", " + TODO_CREATED_AT + ") " +
+                        "SELECT title, CASE WHEN completed = 1 THEN " + TodoItem.STATUS_RANK_COMPLETED + " ELSE " +
+                        TodoItem.STATUS_RANK_NOT_STARTED + " END, " + priorityRankSql("priority") +
+                        ", date, created_at FROM todos");
             } catch (Exception e) {
                 // Old table might not exist, ignore
             }
@@ -142,53 +348,371 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 e.printStackTrace();
             }
         }
+        // Migration to version 10: integer cents and date keys. Also covers 8 -> 9, the
+        // rollup tables are recreated in integer form and backfilled from the new rows.
+        if (oldVersion < 10) {
+            migrateTransactionsToIntegerKeys(db);
+            createIndexes(db);
+            createRollupTables(db);
+            backfillRollupTables(db);
+        }
+        // Migration from version 10 to 11: change log for incremental backups
+        if (oldVersion < 11) {
+            createChangeLog(db);
+        }
+        // Migration from version 11 to 12: full-text search over existing rows
+        if (oldVersion < 12) {
+            createSearchIndex(db);
+        }
+        // Migration from version 12 to 13: split the tag strings into tags / todo_tags
+        if (oldVersion < 13) {
+            createTagTables(db);
+            backfillTodoTags(db);
+        }
+        // Migration from version 13 to 14: todo status / priority as ranks. Before v7 the
+        // table was only just created above, already in the new form.
+        if (oldVersion >= 7 && oldVersion < 14) {
+            migrateTodosToRanks(db);
+        }
+        // Migration from version 14 to 15: re-tokenize the search index so Chinese is split into
+        // words. Before v12 it was only just created above, already with the new tokenizer.
+        if (oldVersion >= 12 && oldVersion < 15) {
+            rebuildSearchIndex(db);
+        }
+        // Migration from version 15 to 16: databases created fresh (rather than upgraded
+        // from before v5) never got the diary date index
+        if (oldVersion < 16) {
+            createDiaryIndexes(db);
+        }
+    }
+
+    private void createTransactionTable(SQLiteDatabase db, String table) {
+        db.execSQL("CREATE TABLE " + table + " (" +
+                COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_TYPE + " TEXT, " +
+                COL_AMOUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_CATEGORY + " TEXT, " +
+                COL_NOTE + " TEXT, " +
+                COL_DATE + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    /**
+     * Rebuild the transactions table with amounts in cents and dates as yyyymmdd
+     * integers. Ids are kept, so AUTOINCREMENT continues from the same value.
+     * Dropping the old table also drops its indexes and the version-9 triggers.
+     * Rows whose date cannot be read are moved to {@link #TABLE_UNDATED} as they
+     * were, rather than dated 0 where no query would ever find them.
+     */
+    private void migrateTransactionsToIntegerKeys(SQLiteDatabase db) {
+        String rebuilt = TABLE_NAME + "_v10";
+        db.execSQL("DROP TABLE IF EXISTS " + rebuilt);
+        createTransactionTable(db, rebuilt);
+        String insert = "INSERT INTO " + rebuilt + " (" + COL_ID + ", " + COL_TYPE + ", " + COL_AMOUNT + ", "
+                + COL_CATEGORY + ", " + COL_NOTE + ", " + COL_DATE + ") " +
+                "SELECT " + COL_ID + ", " + COL_TYPE + ", " +
+                "CAST(ROUND(IFNULL(" + LEGACY_COL_AMOUNT + ", 0) * 100) AS INTEGER), " +
+                COL_CATEGORY + ", " + COL_NOTE + ", ";
+        String legacyDate = "substr(IFNULL(" + LEGACY_COL_DATE + ", ''), 1, 10)";
+        // Well-formed dates convert in one statement; date() turns an impossible day
+        // such as 02-30 into another date, so those fail the comparison
+        db.execSQL(insert + "CAST(replace(" + legacyDate + ", '-', '') AS INTEGER) FROM " + TABLE_NAME +
+                " WHERE date(" + legacyDate + ") IS " + legacyDate);
+
+        // The rest (unpadded months and days, mostly) go through DateKeys one by one
+        String notConverted = " WHERE " + COL_ID + " NOT IN (SELECT " + COL_ID + " FROM " + rebuilt + ")";
+        int undated = 0;
+        try (SQLiteStatement convert = db.compileStatement(insert + "? FROM " + TABLE_NAME + " WHERE "
+                + COL_ID + " = ?");
+                Cursor cursor = db.rawQuery("SELECT " + COL_ID + ", " + LEGACY_COL_DATE + " FROM " + TABLE_NAME
+                        + notConverted, null)) {
+            while (cursor.moveToNext()) {
+                int dateKey = DateKeys.parse(cursor.getString(1));
+                if (dateKey == 0) {
+                    undated++;
+                    continue;
+                }
+                convert.bindLong(1, dateKey);
+                convert.bindLong(2, cursor.getLong(0));
+                convert.executeInsert();
+            }
+        }
+        if (undated > 0) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_UNDATED);
+            db.execSQL("CREATE TABLE " + TABLE_UNDATED + " AS SELECT * FROM " + TABLE_NAME + notConverted);
+            Log.w(TAG, undated + " transactions have no readable date, kept in " + TABLE_UNDATED);
+        }
+        db.execSQL("DROP TABLE " + TABLE_NAME);
+        db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + TABLE_NAME);
+
+        // Version-9 rollups were keyed by text dates
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DAILY_TOTALS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MONTHLY_CATEGORY);
     }
 
     private void createTodoTableV2(SQLiteDatabase db) {
-        String createTodoTable = "CREATE TABLE IF NOT EXISTS " + TABLE_TODO + " (" +
+        createTodoTable(db, TABLE_TODO);
+        createTodoIndexes(db);
+    }
+
+    private void createTodoTable(SQLiteDatabase db, String table) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + table + " (" +
                 TODO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 TODO_TITLE + " TEXT, " +
                 TODO_DESCRIPTION + " TEXT, " +
-                TODO_STATUS + " TEXT DEFAULT 'not_started', " +
-                TODO_PRIORITY + " TEXT, " +
+                TODO_STATUS_RANK + " INTEGER NOT NULL DEFAULT " + TodoItem.STATUS_RANK_NOT_STARTED + ", " +
+                TODO_PRIORITY_RANK + " INTEGER NOT NULL DEFAULT " + TodoItem.PRIORITY_RANK_NONE + ", " +
                 TODO_DUE_DATE + " TEXT, " +
                 TODO_TAGS + " TEXT, " +
                 TODO_DATE + " TEXT, " +
                 TODO_CREATED_AT + " TEXT DEFAULT CURRENT_TIMESTAMP, " +
                 TODO_ASSIGNEE + " TEXT, " +
-                TODO_ATTACHMENT + " TEXT)";
-        db.execSQL(createTodoTable);
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_date ON " + TABLE_TODO + " (" + TODO_DATE + ")");
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_status ON " + TABLE_TODO + " (" + TODO_STATUS + ")");
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_priority ON " + TABLE_TODO + " (" + TODO_PRIORITY + ")");
+                TODO_ATTACHMENT + " TEXT)");
+    }
+
+    private void createTodoIndexes(SQLiteDatabase db) {
+        // Column for column the list order, so the unfiltered lists and the status tab
+        // (a prefix) are index walks with no sort step
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_rank ON " + TABLE_TODO + " (" + TODO_STATUS_RANK + ", "
+                + TODO_PRIORITY_RANK + ", " + TODO_CREATED_AT + " DESC)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_date_rank ON " + TABLE_TODO + " (" + TODO_DATE + ", "
+                + TODO_STATUS_RANK + ", " + TODO_PRIORITY_RANK + ", " + TODO_CREATED_AT + " DESC)");
         db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_v2_due ON " + TABLE_TODO + " (" + TODO_DUE_DATE + ")");
     }
 
+    /**
+     * Rebuild todos_v2 with status and priority stored as display ranks instead of
+     * strings. Ids are kept, so the search index and todo_tags stay valid; the
+     * AUTOINCREMENT counter is carried over so deleted ids are still never reused.
+     * Dropping the old table drops its triggers, which are created again here.
+     */
+    private void migrateTodosToRanks(SQLiteDatabase db) {
+        String rebuilt = TABLE_TODO + "_v14";
+        long seq = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?",
+                new String[] { TABLE_TODO });
+        db.execSQL("DROP TABLE IF EXISTS " + rebuilt);
+        createTodoTable(db, rebuilt);
+        db.execSQL("INSERT INTO " + rebuilt + " (" + TODO_ID + ", " + TODO_TITLE + ", " + TODO_DESCRIPTION + ", "
+                + TODO_STATUS_RANK + ", " + TODO_PRIORITY_RANK + ", " + TODO_DUE_DATE + ", " + TODO_TAGS + ", "
+                + TODO_DATE + ", " + TODO_CREATED_AT + ", " + TODO_ASSIGNEE + ", " + TODO_ATTACHMENT + ") " +
+                "SELECT " + TODO_ID + ", " + TODO_TITLE + ", " + TODO_DESCRIPTION + ", " +
+                statusRankSql(LEGACY_TODO_STATUS) + ", " + priorityRankSql(LEGACY_TODO_PRIORITY) + ", " +
+                TODO_DUE_DATE + ", " + TODO_TAGS + ", " + TODO_DATE + ", " + TODO_CREATED_AT + ", " +
+                TODO_ASSIGNEE + ", " + TODO_ATTACHMENT + " FROM " + TABLE_TODO);
+        db.execSQL("DROP TABLE " + TABLE_TODO);
+        db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + TABLE_TODO);
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?", new Object[] { seq, TABLE_TODO });
+
+        createTodoIndexes(db);
+        createChangeLogTriggers(db, TABLE_TODO);
+        createSearchTriggers(db, SEARCH_SOURCES[SearchResult.KIND_TODO]);
+        createTagTables(db);
+    }
+
+    // Same mapping as TodoItem.statusRank, for migrating text columns in SQL
+    private static String statusRankSql(String column) {
+        return "CASE " + column + " WHEN '" + TodoItem.STATUS_IN_PROGRESS + "' THEN " + TodoItem.STATUS_RANK_IN_PROGRESS
+                + " WHEN '" + TodoItem.STATUS_COMPLETED + "' THEN " + TodoItem.STATUS_RANK_COMPLETED + " ELSE "
+                + TodoItem.STATUS_RANK_NOT_STARTED + " END";
+    }
+
+    private static String priorityRankSql(String column) {
+        return "CASE " + column + " WHEN '" + TodoItem.PRIORITY_HIGH + "' THEN " + TodoItem.PRIORITY_RANK_HIGH
+                + " WHEN '" + TodoItem.PRIORITY_MEDIUM + "' THEN " + TodoItem.PRIORITY_RANK_MEDIUM + " WHEN '"
+                + TodoItem.PRIORITY_LOW + "' THEN " + TodoItem.PRIORITY_RANK_LOW + " ELSE "
+                + TodoItem.PRIORITY_RANK_NONE + " END";
+    }
+
+    private static void createTagTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_TAGS + " (" +
+                TAG_ID + " INTEGER PRIMARY KEY, " +
+                TAG_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_TODO_TAGS + " (" +
+                TT_TODO_ID + " INTEGER NOT NULL, " +
+                TT_TAG_ID + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + TT_TODO_ID + ", " + TT_TAG_ID + ")) WITHOUT ROWID");
+        // The primary key serves todo -> tags; this one tag -> todos and the counts
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_todo_tags_tag ON " + TABLE_TODO_TAGS + " (" + TT_TAG_ID + ", "
+                + TT_TODO_ID + ")");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_todo_tags_d AFTER DELETE ON " + TABLE_TODO + " BEGIN " +
+                "DELETE FROM " + TABLE_TODO_TAGS + " WHERE " + TT_TODO_ID + " = old." + TODO_ID + "; " +
+                SQL_PRUNE_TAGS + "; END");
+    }
+
+    private static void backfillTodoTags(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT " + TODO_ID + ", " + TODO_TAGS + " FROM " + TABLE_TODO +
+                " WHERE " + TODO_TAGS + " IS NOT NULL AND " + TODO_TAGS + " != ''", null)) {
+            while (cursor.moveToNext()) {
+                syncTodoTags(db, cursor.getLong(0), cursor.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Point todo_tags at exactly the tags in the string and drop tags no todo
+     * uses any more. Call inside the transaction that wrote the todo.
+     */
+    private static void syncTodoTags(SQLiteDatabase db, long todoId, String tags) {
+        db.delete(TABLE_TODO_TAGS, TT_TODO_ID + " = ?", new String[] { String.valueOf(todoId) });
+        for (String tag : TodoItem.splitTags(tags)) {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_TAGS + " (" + TAG_NAME + ") VALUES (?)", new Object[] { tag });
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_TODO_TAGS + " (" + TT_TODO_ID + ", " + TT_TAG_ID
+                    + ") SELECT ?, " + TAG_ID + " FROM " + TABLE_TAGS + " WHERE " + TAG_NAME + " = ?",
+                    new Object[] { todoId, tag });
+        }
+        db.execSQL(SQL_PRUNE_TAGS);
+    }
+
+    // Diary lookups by day and the month overview's date range
+    private void createDiaryIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_diary_date ON " + TABLE_DIARY + " (" + DIARY_DATE + ")");
+    }
+
     /**
      * Create indexes on frequently queried columns
      */
     private void createIndexes(SQLiteDatabase db) {
         try {
+            // (date_key) also orders by id, which is the implicit last column; used for keyset paging
             db.execSQL("CREATE INDEX IF NOT EXISTS idx_date ON " + TABLE_NAME + " (" + COL_DATE + ")");
-            db.execSQL("CREATE INDEX IF NOT EXISTS idx_type ON " + TABLE_NAME + " (" + COL_TYPE + ")");
+            // Covers day/month range sums without touching the table
             db.execSQL("CREATE INDEX IF NOT EXISTS idx_date_type ON " + TABLE_NAME + " (" + COL_DATE + ", " + COL_TYPE
-                    + ")");
+                    + ", " + COL_AMOUNT + ")");
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Per-day and per-month/category totals kept in step with the transactions
+     * table by triggers, so calendar and dashboard reads never aggregate raw rows.
+     * Each rollup row carries a count and is removed once its last transaction goes.
+     */
+    private void createRollupTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_DAILY_TOTALS + " (" +
+                DAILY_DATE + " INTEGER PRIMARY KEY, " +
+                DAILY_INCOME + " INTEGER NOT NULL DEFAULT 0, " +
+                DAILY_EXPENSE + " INTEGER NOT NULL DEFAULT 0, " +
+                DAILY_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_MONTHLY_CATEGORY + " (" +
+                MONTHLY_MONTH + " INTEGER NOT NULL, " +
+                MONTHLY_TYPE + " TEXT NOT NULL, " +
+                MONTHLY_CATEGORY + " TEXT NOT NULL, " +
+                MONTHLY_TOTAL + " INTEGER NOT NULL DEFAULT 0, " +
+                MONTHLY_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + MONTHLY_MONTH + ", " + MONTHLY_TYPE + ", " + MONTHLY_CATEGORY + ")) WITHOUT ROWID");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_rollup_insert AFTER INSERT ON " + TABLE_NAME + " BEGIN " +
+                rollupApply("NEW", "+") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_rollup_delete AFTER DELETE ON " + TABLE_NAME + " BEGIN " +
+                rollupApply("OLD", "-") + rollupPrune("OLD") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_rollup_update AFTER UPDATE OF " + COL_TYPE + ", " + COL_AMOUNT
+                + ", " + COL_CATEGORY + ", " + COL_DATE + " ON " + TABLE_NAME + " BEGIN " +
+                rollupApply("OLD", "-") + rollupPrune("OLD") + rollupApply("NEW", "+") + " END");
+    }
+
+    // Trigger body adding (+) or removing (-) one row's contribution to both rollups
+    private static String rollupApply(String row, String sign) {
+        String date = row + "." + COL_DATE;
+        String month = date + " / 100";
+        String type = "IFNULL(" + row + "." + COL_TYPE + ", '')";
+        String category = mainCategoryExpr(row + "." + COL_CATEGORY);
+        String amount = row + "." + COL_AMOUNT;
+        return "INSERT OR IGNORE INTO " + TABLE_DAILY_TOTALS + " (" + DAILY_DATE + ") VALUES (" + date + "); " +
+                "UPDATE " + TABLE_DAILY_TOTALS + " SET " +
+                DAILY_INCOME + " = " + DAILY_INCOME + " " + sign + " CASE WHEN " + type + " = 'income' THEN "
+                + amount + " ELSE 0 END, " +
+                DAILY_EXPENSE + " = " + DAILY_EXPENSE + " " + sign + " CASE WHEN " + type + " = 'expense' THEN "
+                + amount + " ELSE 0 END, " +
+                DAILY_COUNT + " = " + DAILY_COUNT + " " + sign + " 1 " +
+                "WHERE " + DAILY_DATE + " = " + date + "; " +
+                "INSERT OR IGNORE INTO " + TABLE_MONTHLY_CATEGORY + " (" + MONTHLY_MONTH + ", " + MONTHLY_TYPE + ", "
+                + MONTHLY_CATEGORY + ") VALUES (" + month + ", " + type + ", " + category + "); " +
+                "UPDATE " + TABLE_MONTHLY_CATEGORY + " SET " +
+                MONTHLY_TOTAL + " = " + MONTHLY_TOTAL + " " + sign + " " + amount + ", " +
+                MONTHLY_COUNT + " = " + MONTHLY_COUNT + " " + sign + " 1 " +
+                "WHERE " + MONTHLY_MONTH + " = " + month + " AND " + MONTHLY_TYPE + " = " + type +
+                " AND " + MONTHLY_CATEGORY + " = " + category + "; ";
+    }
+
+    private static String rollupPrune(String row) {
+        String date = row + "." + COL_DATE;
+        return "DELETE FROM " + TABLE_DAILY_TOTALS + " WHERE " + DAILY_DATE + " = " + date + " AND " + DAILY_COUNT
+                + " <= 0; " +
+                "DELETE FROM " + TABLE_MONTHLY_CATEGORY + " WHERE " + MONTHLY_MONTH + " = " + date
+                + " / 100 AND " + MONTHLY_COUNT + " <= 0; ";
+    }
+
+    private static String mainCategoryExpr(String column) {
+        return "IFNULL(CASE WHEN instr(" + column + ", '-') > 0 " +
+                "THEN substr(" + column + ", 1, instr(" + column + ", '-') - 1) " +
+                "ELSE " + column + " END, '')";
+    }
+
+    private void backfillRollupTables(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_DAILY_TOTALS);
+        db.execSQL("DELETE FROM " + TABLE_MONTHLY_CATEGORY);
+        db.execSQL("INSERT INTO " + TABLE_DAILY_TOTALS + " (" + DAILY_DATE + ", " + DAILY_INCOME + ", "
+                + DAILY_EXPENSE + ", " + DAILY_COUNT + ") " +
+                "SELECT " + COL_DATE + ", " +
+                "SUM(CASE WHEN " + COL_TYPE + " = 'income' THEN " + COL_AMOUNT + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + COL_TYPE + " = 'expense' THEN " + COL_AMOUNT + " ELSE 0 END), " +
+                "COUNT(*) FROM " + TABLE_NAME + " GROUP BY " + COL_DATE);
+        db.execSQL("INSERT INTO " + TABLE_MONTHLY_CATEGORY + " (" + MONTHLY_MONTH + ", " + MONTHLY_TYPE + ", "
+                + MONTHLY_CATEGORY + ", " + MONTHLY_TOTAL + ", " + MONTHLY_COUNT + ") " +
+                "SELECT " + COL_DATE + " / 100, IFNULL(" + COL_TYPE + ", ''), " +
+                mainCategoryExpr(COL_CATEGORY) + ", SUM(" + COL_AMOUNT + "), COUNT(*) " +
+                "FROM " + TABLE_NAME + " GROUP BY 1, 2, 3");
+    }
+
+    /**
+     * Every insert, update and delete on the user tables appends (table, id, op)
+     * with a monotonic seq. An incremental backup is then "rows touched after the
+     * last backup's seq", read by primary-key range.
+     */
+    private void createChangeLog(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CHANGE_LOG + " (" +
+                LOG_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                LOG_TABLE + " TEXT NOT NULL, " +
+                LOG_ROW_ID + " INTEGER NOT NULL, " +
+                LOG_OP + " TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BACKUP_META + " (" +
+                META_KEY + " TEXT PRIMARY KEY, " +
+                META_VALUE + " INTEGER)");
+        for (String table : LOGGED_TABLES) {
+            createChangeLogTriggers(db, table);
+        }
+    }
+
+    // Also needed after any rebuild of a logged table, since DROP TABLE drops its triggers
+    private void createChangeLogTriggers(SQLiteDatabase db, String table) {
+        String[][] ops = { { "INSERT", "I", "NEW" }, { "UPDATE", "U", "NEW" }, { "DELETE", "D", "OLD" } };
+        for (String[] op : ops) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_log_" + table + "_" + op[1].toLowerCase(Locale.ROOT) +
+                    " AFTER " + op[0] + " ON " + table + " BEGIN " +
+                    "INSERT INTO " + TABLE_CHANGE_LOG + " (" + LOG_TABLE + ", " + LOG_ROW_ID + ", " + LOG_OP + ") " +
+                    "VALUES ('" + table + "', " + op[2] + ".id, '" + op[1] + "'); END");
+        }
+    }
+
     public boolean addTransaction(Transaction transaction) {
+        int dateKey = DateKeys.parse(transaction.getDate());
+        if (dateKey == 0) {
+            // Stored as 0 it would match no day, month or page and never be seen again
+            return false;
+        }
         try {
             SQLiteDatabase db = this.getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_TYPE, transaction.getType());
-            cv.put(COL_AMOUNT, transaction.getAmount());
-            cv.put(COL_CATEGORY, transaction.getCategory());
-            cv.put(COL_NOTE, transaction.getNote());
-            cv.put(COL_DATE, transaction.getDate());
-
-            long result = db.insert(TABLE_NAME, null, cv);
+            SQLiteStatement insert = statements(db).get(SQL_INSERT_TRANSACTION);
+            long result;
+            synchronized (insert) {
+                StatementCache.bindText(insert, 1, transaction.getType());
+                insert.bindLong(2, toCents(transaction.getAmount()));
+                StatementCache.bindText(insert, 3, transaction.getCategory());
+                StatementCache.bindText(insert, 4, transaction.getNote());
+                insert.bindLong(5, dateKey);
+                result = insert.executeInsert();
+            }
+            invalidateSummary(dateKey);
             return result != -1;
         } catch (Exception e) {
             e.printStackTrace();
@@ -197,43 +721,62 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public List<Transaction> getAllTransactions() {
-        List<Transaction> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_NAME + " ORDER BY " + COL_DATE + " DESC, " + COL_ID + " DESC", null)) {
-            if (cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(0);
-                    String type = cursor.getString(1);
-                    double amount = cursor.getDouble(2);
-                    String category = cursor.getString(3);
-                    String note = cursor.getString(4);
-                    String date = cursor.getString(5);
-                    list.add(new Transaction(id, type, amount, category, note, date));
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        return queryTransactions("SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME + " ORDER BY " + COL_DATE
+                + " DESC, " + COL_ID + " DESC", null);
+    }
+
+    public List<Transaction> getTransactionsByDate(String date) {
+        return queryTransactions(SQL_TRANSACTIONS_BY_DATE, new String[] { String.valueOf(DateKeys.parse(date)) });
+    }
+
+    /**
+     * Keyset page of transactions ordered by (date DESC, id DESC).
+     * Pass a null beforeDate for the first (newest) page, otherwise the date/id of
+     * the last row already loaded. Unlike OFFSET this costs the same on page 1000.
+     */
+    public List<Transaction> getTransactionsPage(String beforeDate, int beforeId, int limit) {
+        if (beforeDate == null) {
+            return queryTransactions("SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME + " ORDER BY " + COL_DATE
+                    + " DESC, " + COL_ID + " DESC LIMIT ?",
+                    new String[] { String.valueOf(limit) });
         }
+        // "date <= ?" keeps the predicate sargable on idx_date, the OR only filters the boundary day
+        return queryTransactions(
+                "SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME + " WHERE " + COL_DATE + " <= ? AND ("
+                        + COL_DATE + " < ? OR " + COL_ID + " < ?) ORDER BY " + COL_DATE + " DESC, " + COL_ID
+                        + " DESC LIMIT ?",
+                new String[] { String.valueOf(DateKeys.parse(beforeDate)),
+                        String.valueOf(DateKeys.parse(beforeDate)),
+                        String.valueOf(beforeId), String.valueOf(limit) });
+    }
+
+    /**
+     * Keyset page of transactions newer than the given row, used when scrolling back
+     * up after older pages were evicted. Returned in the same (date DESC, id DESC) order.
+     */
+    public List<Transaction> getTransactionsPageAfter(String afterDate, int afterId, int limit) {
+        List<Transaction> list = queryTransactions(
+                "SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME + " WHERE " + COL_DATE + " >= ? AND ("
+                        + COL_DATE + " > ? OR " + COL_ID + " > ?) ORDER BY " + COL_DATE + " ASC, " + COL_ID
+                        + " ASC LIMIT ?",
+                new String[] { String.valueOf(DateKeys.parse(afterDate)),
+                        String.valueOf(DateKeys.parse(afterDate)),
+                        String.valueOf(afterId), String.valueOf(limit) });
+        Collections.reverse(list);
         return list;
     }
 
-    public List<Transaction> getTransactionsByDate(String date) {
-        List<Transaction> list = new ArrayList<>();
+    private List<Transaction> queryTransactions(String sql, String[] args) {
+        return query(sql, args, new TransactionMapper());
+    }
+
+    private <T> List<T> query(String sql, String[] args, RowMapper<T> mapper) {
+        List<T> list = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_NAME + " WHERE " + COL_DATE + " = ? ORDER BY " + COL_ID + " DESC",
-                new String[] { date })) {
-            if (cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(0);
-                    String type = cursor.getString(1);
-                    double amount = cursor.getDouble(2);
-                    String category = cursor.getString(3);
-                    String note = cursor.getString(4);
-                    String dateVal = cursor.getString(5);
-                    list.add(new Transaction(id, type, amount, category, note, dateVal));
-                } while (cursor.moveToNext());
+        try (Cursor cursor = db.rawQuery(sql, args)) {
+            mapper.prepare(cursor);
+            while (cursor.moveToNext()) {
+                list.add(mapper.map(cursor));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -241,10 +784,127 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return list;
     }
 
+    // ==================== Row mappers ====================
+
+    private static String optString(Cursor cursor, int index) {
+        return index < 0 ? null : cursor.getString(index);
+    }
+
+    private static final class TransactionMapper implements RowMapper<Transaction> {
+        private int id;
+        private int type;
+        private int amount;
+        private int category;
+        private int note;
+        private int date;
+
+        @Override
+        public void prepare(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(COL_ID);
+            type = cursor.getColumnIndexOrThrow(COL_TYPE);
+            amount = cursor.getColumnIndexOrThrow(COL_AMOUNT);
+            category = cursor.getColumnIndexOrThrow(COL_CATEGORY);
+            note = cursor.getColumnIndexOrThrow(COL_NOTE);
+            date = cursor.getColumnIndexOrThrow(COL_DATE);
+        }
+
+        @Override
+        public Transaction map(Cursor cursor) {
+            return new Transaction(cursor.getInt(id), cursor.getString(type), fromCents(cursor.getLong(amount)),
+                    cursor.getString(category), cursor.getString(note), DateKeys.format(cursor.getInt(date)));
+        }
+
+        void mapInto(Cursor cursor, Transaction row) {
+            row.set(cursor.getInt(id), cursor.getString(type), fromCents(cursor.getLong(amount)),
+                    cursor.getString(category), cursor.getString(note), DateKeys.format(cursor.getInt(date)));
+        }
+    }
+
+    private static final class DiaryMapper implements RowMapper<DiaryEntry> {
+        private int id;
+        private int title;
+        private int content;
+        private int mood;
+        private int date;
+        private int createdAt;
+
+        @Override
+        public void prepare(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(DIARY_ID);
+            title = cursor.getColumnIndex(DIARY_TITLE);
+            content = cursor.getColumnIndex(DIARY_CONTENT);
+            mood = cursor.getColumnIndex(DIARY_MOOD);
+            date = cursor.getColumnIndex(DIARY_DATE);
+            createdAt = cursor.getColumnIndex(DIARY_CREATED_AT);
+        }
+
+        @Override
+        public DiaryEntry map(Cursor cursor) {
+            return new DiaryEntry(cursor.getInt(id), optString(cursor, title), optString(cursor, content),
+                    optString(cursor, mood), optString(cursor, date), optString(cursor, createdAt));
+        }
+    }
+
+    private static final class TodoMapper implements RowMapper<TodoItem> {
+        private int id;
+        private int title;
+        private int description;
+        private int status;
+        private int priority;
+        private int dueDate;
+        private int tags;
+        private int date;
+        private int createdAt;
+        private int assignee;
+        private int attachment;
+
+        @Override
+        public void prepare(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(TODO_ID);
+            title = cursor.getColumnIndex(TODO_TITLE);
+            description = cursor.getColumnIndex(TODO_DESCRIPTION);
+            status = cursor.getColumnIndex(TODO_STATUS_RANK);
+            priority = cursor.getColumnIndex(TODO_PRIORITY_RANK);
+            dueDate = cursor.getColumnIndex(TODO_DUE_DATE);
+            tags = cursor.getColumnIndex(TODO_TAGS);
+            date = cursor.getColumnIndex(TODO_DATE);
+            createdAt = cursor.getColumnIndex(TODO_CREATED_AT);
+            assignee = cursor.getColumnIndex(TODO_ASSIGNEE);
+            attachment = cursor.getColumnIndex(TODO_ATTACHMENT);
+        }
+
+        @Override
+        public TodoItem map(Cursor cursor) {
+            return new TodoItem(cursor.getInt(id), optString(cursor, title), optString(cursor, description),
+                    status < 0 ? null : TodoItem.statusForRank(cursor.getInt(status)),
+                    priority < 0 ? null : TodoItem.priorityForRank(cursor.getInt(priority)), optString(cursor, dueDate),
+                    optString(cursor, tags), optString(cursor, date), optString(cursor, createdAt),
+                    optString(cursor, assignee), optString(cursor, attachment));
+        }
+    }
+
     public void deleteTransaction(int id) {
         try {
-            SQLiteDatabase db = this.getWritableDatabase();
-            db.delete(TABLE_NAME, COL_ID + " = ?", new String[] { String.valueOf(id) });
+            StatementCache cache = statements(this.getWritableDatabase());
+            SQLiteStatement select = cache.get(SQL_TRANSACTION_DATE);
+            int dateKey;
+            synchronized (select) {
+                select.bindLong(1, id);
+                try {
+                    dateKey = (int) select.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    return; // No such row
+                }
+            }
+            SQLiteStatement delete = cache.get(SQL_DELETE_TRANSACTION);
+            int deleted;
+            synchronized (delete) {
+                delete.bindLong(1, id);
+                deleted = delete.executeUpdateDelete();
+            }
+            if (deleted > 0) {
+                invalidateSummary(dateKey);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -267,36 +927,108 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     private double getMonthlySumByType(String type) {
+        DashboardSummary summary = getDashboardSummary(DateKeys.currentMonth());
+        return "income".equals(type) ? summary.getIncome() : summary.getExpense();
+    }
+
+
+    /**
+     * Income, expense and the per-category expense breakdown of one month, read from
+     * the monthly rollup in one query and cached until a transaction in that month changes.
+     */
+    public DashboardSummary getDashboardSummary(String yearMonth) {
+        DashboardSummary cached = summaryCache.get(yearMonth);
+        if (cached != null)
+            return cached;
+
+        long generation = summaryGeneration.get();
+        DashboardSummary summary = queryDashboardSummary(yearMonth);
+        // Only publish if no write happened while we were reading
+        if (summaryGeneration.get() == generation) {
+            summaryCache.put(yearMonth, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * The cached summary for the month, or null if it has to be queried.
+     */
+    public DashboardSummary getCachedDashboardSummary(String yearMonth) {
+        return summaryCache.get(yearMonth);
+    }
+
+    private DashboardSummary queryDashboardSummary(String yearMonth) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String currentMonth = new SimpleDateFormat("yyyy-MM", Locale.CHINA).format(new Date());
-        double total = 0;
-        try (Cursor cursor = db.rawQuery(
-                "SELECT SUM(" + COL_AMOUNT + ") FROM " + TABLE_NAME + " WHERE " + COL_TYPE + " = ? AND " + COL_DATE
-                        + " LIKE ?",
-                new String[] { type, currentMonth + "%" })) {
+        String query = "SELECT " + MONTHLY_TYPE + ", " + MONTHLY_CATEGORY + ", " + MONTHLY_TOTAL +
+                " FROM " + TABLE_MONTHLY_CATEGORY +
+                " WHERE " + MONTHLY_MONTH + " = ? ORDER BY " + MONTHLY_TOTAL + " DESC";
+
+        double income = 0;
+        double expense = 0;
+        List<String> categories = new ArrayList<>();
+        List<Double> amounts = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(query, new String[] { String.valueOf(DateKeys.parseMonth(yearMonth)) })) {
             if (cursor.moveToFirst()) {
-                total = cursor.getDouble(0);
+                do {
+                    String type = cursor.getString(0);
+                    double amount = fromCents(cursor.getLong(2));
+                    if ("income".equals(type)) {
+                        income += amount;
+                    } else if ("expense".equals(type)) {
+                        expense += amount;
+                        categories.add(cursor.getString(1));
+                        amounts.add(amount);
+                    }
+                } while (cursor.moveToNext());
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return total;
+
+        List<CategoryStat> stats = new ArrayList<>();
+        if (expense != 0) {
+            for (int i = 0; i < categories.size(); i++) {
+                double amount = amounts.get(i);
+                stats.add(new CategoryStat(categories.get(i), amount, (amount / expense) * 100));
+            }
+        }
+        return new DashboardSummary(yearMonth, income, expense, stats);
+    }
+
+    // Keyed by the parsed date, so an unpadded "2024-1-5" still evicts "2024-01"
+    private void invalidateSummary(int dateKey) {
+        invalidationTracker.invalidate(InvalidationTracker.TRANSACTIONS);
+        summaryGeneration.incrementAndGet();
+        if (dateKey != 0) {
+            summaryCache.remove(DateKeys.formatMonth(DateKeys.monthOf(dateKey)));
+        } else {
+            summaryCache.clear();
+        }
+    }
+
+    /**
+     * Drop every cached month, for bulk writes that bypass addTransaction/deleteTransaction.
+     */
+    public void invalidateDashboardCache() {
+        summaryGeneration.incrementAndGet();
+        summaryCache.clear();
     }
 
     public Map<String, DailyTotal> getMonthlyDailySummaries(String yearMonth) {
         Map<String, DailyTotal> summaries = new HashMap<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        String query = "SELECT " + COL_DATE + ", " +
-                "SUM(CASE WHEN " + COL_TYPE + " = 'income' THEN " + COL_AMOUNT + " ELSE 0 END), " +
-                "SUM(CASE WHEN " + COL_TYPE + " = 'expense' THEN " + COL_AMOUNT + " ELSE 0 END) " +
-                "FROM " + TABLE_NAME + " WHERE " + COL_DATE + " LIKE ? GROUP BY " + COL_DATE;
+        // Primary-key range over at most 31 rollup rows
+        String query = "SELECT " + DAILY_DATE + ", " + DAILY_INCOME + ", " + DAILY_EXPENSE +
+                " FROM " + TABLE_DAILY_TOTALS + " WHERE " + DAILY_DATE + " BETWEEN ? AND ?";
+        int monthKey = DateKeys.parseMonth(yearMonth);
 
-        try (Cursor cursor = db.rawQuery(query, new String[] { yearMonth + "%" })) {
+        try (Cursor cursor = db.rawQuery(query, new String[] {
+                String.valueOf(monthKey * 100 + 1), String.valueOf(monthKey * 100 + 31) })) {
             if (cursor.moveToFirst()) {
                 do {
-                    String date = cursor.getString(0);
-                    double income = cursor.getDouble(1);
-                    double expense = cursor.getDouble(2);
+                    String date = DateKeys.format(cursor.getInt(0));
+                    double income = fromCents(cursor.getLong(1));
+                    double expense = fromCents(cursor.getLong(2));
                     summaries.put(date, new DailyTotal(date, income, expense));
                 } while (cursor.moveToNext());
             }
@@ -306,101 +1038,1195 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return summaries;
     }
 
-    public List<CategoryStat> getCategoryStats() {
-        List<CategoryStat> stats = new ArrayList<>();
+    /**
+     * Per-day activity across all three tables for a month ("yyyy-MM"), keyed by
+     * "yyyy-MM-dd". Each branch of the UNION ALL is a range over an index (the
+     * daily_totals key, idx_diary_date, idx_todo_v2_due) and brings its own
+     * columns with zeros for the rest; the outer GROUP BY folds them into one
+     * row per day. Days with no activity at all are absent.
+     */
+    public Map<String, DayOverview> getMonthOverview(String yearMonth) {
+        Map<String, DayOverview> overview = new HashMap<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        double totalExpense = getMonthlyExpense();
-        if (totalExpense == 0)
-            return stats;
-
-        String currentMonth = new SimpleDateFormat("yyyy-MM", Locale.CHINA).format(new Date());
-
-        String query = "SELECT " +
-                "CASE WHEN instr(" + COL_CATEGORY + ", '-') > 0 " +
-                "THEN substr(" + COL_CATEGORY + ", 1, instr(" + COL_CATEGORY + ", '-') - 1) " +
-                "ELSE " + COL_CATEGORY + " END as main_category, " +
-                "SUM(" + COL_AMOUNT + ") as total " +
-                "FROM " + TABLE_NAME +
-                " WHERE " + COL_TYPE + " = 'expense' AND " + COL_DATE + " LIKE ?" +
-                " GROUP BY main_category ORDER BY total DESC";
-
-        try (Cursor cursor = db.rawQuery(query, new String[] { currentMonth + "%" })) {
-            if (cursor.moveToFirst()) {
-                do {
-                    String category = cursor.getString(0);
-                    double amount = cursor.getDouble(1);
-                    double percentage = (amount / totalExpense) * 100;
-                    stats.add(new CategoryStat(category, amount, percentage));
-                } while (cursor.moveToNext());
+        int monthKey = DateKeys.parseMonth(yearMonth);
+        String firstDay = DateKeys.format(monthKey * 100 + 1);
+        String nextMonth = DateKeys.format(DateKeys.plusMonths(monthKey, 1) * 100 + 1);
+        String query = "SELECT day, SUM(income), SUM(expense), SUM(diaries), MAX(mood), SUM(due), SUM(overdue) "
+                + "FROM ("
+                + "SELECT " + DAILY_DATE + " AS day, " + DAILY_INCOME + " AS income, " + DAILY_EXPENSE
+                + " AS expense, 0 AS diaries, NULL AS mood, 0 AS due, 0 AS overdue FROM " + TABLE_DAILY_TOTALS
+                + " WHERE " + DAILY_DATE + " BETWEEN ? AND ? "
+                + "UNION ALL "
+                // The mood comes from the row MAX(id) picks: the last entry written that day
+                + "SELECT " + dateKeySql(DIARY_DATE) + ", 0, 0, n, " + DIARY_MOOD + ", 0, 0 FROM (SELECT "
+                + DIARY_DATE + ", COUNT(*) AS n, " + DIARY_MOOD + ", MAX(" + DIARY_ID + ") FROM " + TABLE_DIARY
+                + " WHERE " + DIARY_DATE + " >= ? AND " + DIARY_DATE + " < ? GROUP BY " + DIARY_DATE + ") "
+                + "UNION ALL "
+                + "SELECT " + dateKeySql(TODO_DUE_DATE) + ", 0, 0, 0, NULL, 1, " + TODO_STATUS_RANK + " != "
+                + TodoItem.STATUS_RANK_COMPLETED + " AND " + TODO_DUE_DATE + " < ? FROM " + TABLE_TODO
+                + " WHERE " + TODO_DUE_DATE + " >= ? AND " + TODO_DUE_DATE + " < ?"
+                + ") GROUP BY day";
+
+        try (Cursor cursor = db.rawQuery(query, new String[] {
+                String.valueOf(monthKey * 100 + 1), String.valueOf(monthKey * 100 + 31),
+                firstDay, nextMonth,
+                DateKeys.todayString(), firstDay, nextMonth })) {
+            while (cursor.moveToNext()) {
+                String date = DateKeys.format(cursor.getInt(0));
+                overview.put(date, new DayOverview(date, fromCents(cursor.getLong(1)), fromCents(cursor.getLong(2)),
+                        cursor.getInt(3), cursor.isNull(4) ? null : cursor.getString(4), cursor.getInt(5),
+                        cursor.getInt(6)));
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return stats;
+        return overview;
     }
 
-    // ==================== Diary CRUD Operations ====================
-
-    public boolean addDiaryEntry(DiaryEntry entry) {
-        try {
-            SQLiteDatabase db = this.getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(DIARY_TITLE, entry.getTitle());
-            cv.put(DIARY_CONTENT, entry.getContent());
-            cv.put(DIARY_MOOD, entry.getMood());
-            cv.put(DIARY_DATE, entry.getDate());
+    /**
+     * Expense per day of a year in cents, indexed from 0 for January 1st, with 365 or
+     * 366 entries. One primary-key range over the rollup table fills the array
+     * directly, so a whole year costs no per-day objects.
+     */
+    public long[] getYearDailyExpenses(int year) {
+        int first = DateKeys.of(year, 1, 1);
+        long firstEpochDay = DateKeys.toEpochDay(first);
+        long[] expenses = new long[(int) (DateKeys.toEpochDay(DateKeys.of(year + 1, 1, 1)) - firstEpochDay)];
+        SQLiteDatabase db = this.getReadableDatabase();
+        String query = "SELECT " + DAILY_DATE + ", " + DAILY_EXPENSE + " FROM " + TABLE_DAILY_TOTALS +
+                " WHERE " + DAILY_DATE + " BETWEEN ? AND ? AND " + DAILY_EXPENSE + " > 0";
 
-            long result = db.insert(TABLE_DIARY, null, cv);
-            return result != -1;
+        try (Cursor cursor = db.rawQuery(query, new String[] {
+                String.valueOf(first), String.valueOf(DateKeys.of(year, 12, 31)) })) {
+            while (cursor.moveToNext()) {
+                expenses[(int) (DateKeys.toEpochDay(cursor.getInt(0)) - firstEpochDay)] = cursor.getLong(1);
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            return false;
         }
+        return expenses;
     }
 
-    public List<DiaryEntry> getAllDiaryEntries() {
-        List<DiaryEntry> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_DIARY + " ORDER BY " + DIARY_DATE + " DESC, " + DIARY_ID + " DESC", null)) {
-            if (cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(0);
-                    String title = cursor.getString(1);
-                    String content = cursor.getString(2);
-                    String mood = cursor.getString(3);
-                    String date = cursor.getString(4);
-                    String createdAt = cursor.getString(5);
-                    list.add(new DiaryEntry(id, title, content, mood, date, createdAt));
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    // A "yyyy-MM-dd" text column as a yyyymmdd key
+    private static String dateKeySql(String column) {
+        return "CAST(replace(substr(" + column + ", 1, 10), '-', '') AS INTEGER)";
+    }
+
+    public List<CategoryStat> getCategoryStats() {
+        return getDashboardSummary(DateKeys.currentMonth()).getCategoryStats();
+    }
+
+    // ==================== Amounts ====================
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    static double fromCents(long cents) {
+        return cents / 100.0;
+    }
+
+    // ==================== Streaming export ====================
+
+    public interface TransactionVisitor {
+        /**
+         * The same instance is refilled for every row; copy what has to outlive the call.
+         *
+         * @return false to stop the walk early
+         */
+        boolean visit(Transaction transaction) throws IOException;
+    }
+
+    public int getTransactionCount() {
+        SQLiteStatement count = statements(this.getReadableDatabase()).get(SQL_COUNT_TRANSACTIONS);
+        synchronized (count) {
+            return (int) count.simpleQueryForLong();
         }
-        return list;
     }
 
-    public List<DiaryEntry> getDiaryEntriesByDate(String date) {
-        List<DiaryEntry> list = new ArrayList<>();
+    /**
+     * Walk every transaction, newest first, straight off the cursor so the ledger
+     * is never held in memory as a whole. The cursor window is refilled as the
+     * walk advances; the visitor sees one row at a time, in one reused object.
+     */
+    public void forEachTransaction(TransactionVisitor visitor) throws IOException {
         SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_DIARY + " WHERE " + DIARY_DATE + " = ? ORDER BY " + DIARY_ID + " DESC",
-                new String[] { date })) {
-            if (cursor.moveToFirst()) {
-                do {
+        TransactionMapper mapper = new TransactionMapper();
+        Transaction row = new Transaction(0, null, 0, null, null, null);
+        try (Cursor cursor = db.rawQuery("SELECT " + TRANSACTION_COLUMNS + " FROM " + TABLE_NAME + " ORDER BY "
+                + COL_DATE + " DESC, " + COL_ID + " DESC", null)) {
+            mapper.prepare(cursor);
+            while (cursor.moveToNext()) {
+                mapper.mapInto(cursor, row);
+                if (!visitor.visit(row)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // ==================== Whole-database snapshot ====================
+
+    private static final int CHECKPOINT_ATTEMPTS = 5;
+    private static final long CHECKPOINT_RETRY_MS = 100;
+
+    /**
+     * Write a consistent copy of the whole database (all tables, indexes and
+     * triggers) to target. Uses VACUUM INTO where the platform SQLite has it
+     * (3.27+, Android 11 and later), which also compacts the copy; older versions
+     * copy the file while holding a transaction so no write lands mid-copy.
+     * Call from the repository's write thread.
+     */
+    public void snapshotTo(File target) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        if (target.exists() && !target.delete()) {
+            throw new IOException("无法覆盖临时文件");
+        }
+        if (supportsVacuumInto(db)) {
+            db.execSQL("VACUUM INTO ?", new Object[] { target.getAbsolutePath() });
+            return;
+        }
+        // Fold any WAL frames into the main file first; the repository serializes
+        // writes, so nothing new is appended between this and the copy below
+        checkpoint(db);
+        db.beginTransaction();
+        try {
+            copyFile(new File(db.getPath()), target);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Replace the live database with a snapshot written by {@link #snapshotTo}.
+     * The snapshot is checked before anything is touched: it must be a readable
+     * SQLite file with a transactions table and a version no newer than this
+     * build. Reopening afterwards runs onUpgrade for snapshots of older versions.
+     * The files are swapped under every connection, so no query may be running:
+     * call it through {@link LedgerRepository#writeExclusive}.
+     */
+    public void restoreFrom(File snapshot) throws IOException {
+        checkSnapshot(snapshot);
+
+        File dbFile = new File(this.getWritableDatabase().getPath());
+        // Stage next to the live file so the swap itself is a rename
+        File staged = new File(dbFile.getPath() + ".restore");
+        copyFile(snapshot, staged);
+        close();
+        try {
+            for (String suffix : new String[] { "-wal", "-shm", "-journal" }) {
+                File side = new File(dbFile.getPath() + suffix);
+                if (side.exists() && !side.delete()) {
+                    throw new IOException("无法替换数据库文件");
+                }
+            }
+            if (!staged.renameTo(dbFile)) {
+                throw new IOException("无法替换数据库文件");
+            }
+        } finally {
+            staged.delete();
+            invalidateDashboardCache();
+            invalidationTracker.invalidateAll();
+            // Reopen now so an upgrade failure surfaces here rather than on the next screen
+            this.getWritableDatabase();
+        }
+        // Change sets taken after this snapshot continue from its seq
+        setWatermark(this.getWritableDatabase(), getChangeSeq());
+    }
+
+    /**
+     * Copy every WAL frame back into the main file and empty the log. A reader still
+     * on an older snapshot makes the checkpoint stop short (busy = 1) and leaves
+     * frames only in the WAL, so retry briefly and give up rather than copy a file
+     * that is missing them.
+     */
+    private static void checkpoint(SQLiteDatabase db) throws IOException {
+        for (int attempt = 0; attempt < CHECKPOINT_ATTEMPTS; attempt++) {
+            try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                // Columns: busy, frames in the log, frames checkpointed
+                if (cursor.moveToFirst() && cursor.getInt(0) == 0) {
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(CHECKPOINT_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IOException("数据库正忙，请稍后再备份");
+    }
+
+    /**
+     * Validate a snapshot for {@link #restoreFrom} without touching the live database.
+     *
+     * @return the change-log seq the snapshot was taken at
+     */
+    private static long checkSnapshot(File snapshot) throws IOException {
+        try (SQLiteDatabase candidate = SQLiteDatabase.openDatabase(snapshot.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY)) {
+            int version = candidate.getVersion();
+            if (version > DATABASE_VERSION) {
+                throw new IOException("备份来自更新版本的应用 (v" + version + ")");
+            }
+            if (version < 1 || !DatabaseUtils.stringForQuery(candidate, "PRAGMA quick_check", null).equals("ok")
+                    || tableCount(candidate, TABLE_NAME) == 0) {
+                throw new IOException("不是有效的备份文件");
+            }
+            // Before v11 there is no change log, and sqlite_sequence only exists once
+            // an AUTOINCREMENT table has had a row
+            if (tableCount(candidate, "sqlite_sequence") == 0)
+                return 0;
+            return DatabaseUtils.longForQuery(candidate, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence "
+                    + "WHERE name = ?", new String[] { TABLE_CHANGE_LOG });
+        } catch (SQLiteException e) {
+            throw new IOException("不是有效的备份文件", e);
+        }
+    }
+
+    private static long tableCount(SQLiteDatabase db, String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] { table });
+    }
+
+    /**
+     * Check a whole restore before any of it runs: the snapshot (may be null, to
+     * replay onto the current data) and the change sets, in replay order, must
+     * form an unbroken chain of versions this build can apply. Otherwise a change
+     * set rejected halfway would leave the user's data already replaced.
+     */
+    public void checkRestore(File snapshot, List<File> changeSets) throws IOException {
+        long watermark = snapshot != null ? checkSnapshot(snapshot) : getBackupWatermark();
+        for (File changeSet : changeSets) {
+            try (SQLiteDatabase changes = openChangeSet(changeSet)) {
+                watermark = checkChangeSet(changes, watermark);
+            }
+        }
+    }
+
+    private static boolean supportsVacuumInto(SQLiteDatabase db) {
+        String[] parts = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null).split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        return major > 3 || (major == 3 && minor >= 27);
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from); OutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            out.flush();
+        }
+    }
+
+    // ==================== Incremental backup ====================
+
+    /**
+     * Latest change-log seq handed out, including pruned entries.
+     */
+    public long getChangeSeq() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?", new String[] { TABLE_CHANGE_LOG });
+    }
+
+    /**
+     * Seq covered by the last full or incremental backup, 0 if there has been none.
+     */
+    public long getBackupWatermark() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + META_VALUE + "), 0) FROM " + TABLE_BACKUP_META
+                + " WHERE " + META_KEY + " = ?", new String[] { META_WATERMARK });
+    }
+
+    /**
+     * Record that everything up to seq is now in a backup and drop the log
+     * entries the next incremental backup no longer needs.
+     */
+    public void completeBackup(long seq) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            setWatermark(db, seq);
+            db.delete(TABLE_CHANGE_LOG, LOG_SEQ + " <= ?", new String[] { String.valueOf(seq) });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * True if the file is a change set written by {@link #exportChanges} rather than
+     * a full snapshot.
+     */
+    public static boolean isChangeSet(File file) {
+        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY)) {
+            return DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'changeset_meta'", null) > 0;
+        } catch (SQLiteException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Seq a change set starts after, used to replay several in order.
+     */
+    public static long getChangeSetBase(File changeSet) throws IOException {
+        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(changeSet.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY)) {
+            return DatabaseUtils.longForQuery(db, "SELECT " + META_VALUE + " FROM changeset_meta WHERE "
+                    + META_KEY + " = 'base'", null);
+        } catch (SQLiteException e) {
+            throw new IOException("不是有效的增量备份", e);
+        }
+    }
+
+    /**
+     * Write the current state of every row changed since the backup watermark,
+     * plus the ids deleted since then, into a small SQLite file. Rows come
+     * straight from the live database via ATTACH, so nothing passes through Java.
+     *
+     * @return the seq the change set reaches; pass it to {@link #completeBackup}
+     *         once the file is safely stored
+     */
+    public long exportChanges(File target) throws IOException {
+        long base = getBackupWatermark();
+        if (base == 0) {
+            throw new IOException("请先进行一次完整备份");
+        }
+        long to = getChangeSeq();
+        if (target.exists() && !target.delete()) {
+            throw new IOException("无法覆盖临时文件");
+        }
+
+        String range = LOG_SEQ + " > " + base + " AND " + LOG_SEQ + " <= " + to;
+        // The framework switches WAL off on any connection something is ATTACHed to, and
+        // reopening the helper's pool would pull it from under the reads in flight. So the
+        // change set gets a connection of its own, with the live database attached to it.
+        try (SQLiteDatabase changes = SQLiteDatabase.openDatabase(target.getPath(), null,
+                SQLiteDatabase.CREATE_IF_NECESSARY)) {
+            changes.execSQL("ATTACH DATABASE ? AS ledger", new Object[] { getWritableDatabase().getPath() });
+            changes.beginTransaction();
+            try {
+                changes.execSQL("CREATE TABLE changeset_meta (" + META_KEY + " TEXT PRIMARY KEY, "
+                        + META_VALUE + " INTEGER)");
+                changes.execSQL("INSERT INTO changeset_meta VALUES ('base', " + base + "), ('to', " + to
+                        + "), ('version', " + DATABASE_VERSION + ")");
+                for (String table : LOGGED_TABLES) {
+                    changes.execSQL("CREATE TABLE " + table + " AS SELECT * FROM ledger." + table +
+                            " WHERE id IN (SELECT " + LOG_ROW_ID + " FROM ledger." + TABLE_CHANGE_LOG +
+                            " WHERE " + range + " AND " + LOG_TABLE + " = '" + table + "')");
+                }
+                // Ids are AUTOINCREMENT, so a deleted id never comes back and can simply be removed on replay
+                changes.execSQL("CREATE TABLE deleted AS SELECT DISTINCT " + LOG_TABLE + ", " + LOG_ROW_ID +
+                        " FROM ledger." + TABLE_CHANGE_LOG + " WHERE " + range + " AND " + LOG_OP + " = 'D'");
+                changes.setTransactionSuccessful();
+            } finally {
+                changes.endTransaction();
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Replay a change set on top of the current data. Change sets must be applied
+     * in order: the first one after a full restore starts at that snapshot's seq.
+     * Replacing a row is a DELETE then INSERT so the rollup triggers see both.
+     */
+    public void applyChanges(File changeSet) throws IOException {
+        // Read on a connection of its own rather than ATTACHing to the helper's, see exportChanges
+        try (SQLiteDatabase changes = openChangeSet(changeSet)) {
+            long to = checkChangeSet(changes, getBackupWatermark());
+
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                long before = getChangeSeq();
+                ContentValues row = new ContentValues();
+                for (String table : LOGGED_TABLES) {
+                    try (Cursor cursor = changes.rawQuery("SELECT * FROM " + table, null)) {
+                        int idIndex = cursor.getColumnIndexOrThrow("id");
+                        while (cursor.moveToNext()) {
+                            readRow(cursor, row);
+                            db.delete(table, "id = ?", new String[] { cursor.getString(idIndex) });
+                            db.insertOrThrow(table, null, row);
+                        }
+                    }
+                    try (Cursor cursor = changes.rawQuery("SELECT " + LOG_ROW_ID + " FROM deleted WHERE "
+                            + LOG_TABLE + " = ?", new String[] { table })) {
+                        while (cursor.moveToNext()) {
+                            db.delete(table, "id = ?", new String[] { cursor.getString(0) });
+                        }
+                    }
+                }
+                // todo_tags is derived from todos_v2.tags and not part of the change set
+                try (Cursor cursor = changes.rawQuery("SELECT " + TODO_ID + ", " + TODO_TAGS + " FROM "
+                        + TABLE_TODO, null)) {
+                    while (cursor.moveToNext()) {
+                        syncTodoTags(db, cursor.getLong(0), cursor.getString(1));
+                    }
+                }
+                // The replay is not a new change: drop what it logged and continue the
+                // seq numbering of the device that wrote the change set
+                db.delete(TABLE_CHANGE_LOG, LOG_SEQ + " > ?", new String[] { String.valueOf(before) });
+                db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, 0 " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?)",
+                        new Object[] { TABLE_CHANGE_LOG, TABLE_CHANGE_LOG });
+                db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?",
+                        new Object[] { to, TABLE_CHANGE_LOG });
+                setWatermark(db, to);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                invalidateDashboardCache();
+                invalidationTracker.invalidateAll();
+            }
+        }
+    }
+
+    private static SQLiteDatabase openChangeSet(File changeSet) throws IOException {
+        try {
+            return SQLiteDatabase.openDatabase(changeSet.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } catch (SQLiteException e) {
+            throw new IOException("不是有效的增量备份", e);
+        }
+    }
+
+    /**
+     * Check that a change set applies on top of the given watermark.
+     *
+     * @return the seq it reaches, the watermark after it is applied
+     */
+    private static long checkChangeSet(SQLiteDatabase changes, long watermark) throws IOException {
+        long base;
+        long to;
+        long version;
+        try {
+            base = readChangeSetMeta(changes, "base");
+            to = readChangeSetMeta(changes, "to");
+            version = readChangeSetMeta(changes, "version");
+        } catch (SQLiteException e) {
+            throw new IOException("不是有效的增量备份", e);
+        }
+        // Rows are replayed column by column, so any version since the logged tables
+        // last changed shape works
+        if (version < MIN_CHANGE_SET_VERSION || version > DATABASE_VERSION) {
+            throw new IOException("增量备份与当前数据版本不一致 (v" + version + ")");
+        }
+        if (to <= watermark) {
+            throw new IOException("该增量备份已经恢复过");
+        }
+        if (base > watermark) {
+            throw new IOException("缺少更早的增量备份");
+        }
+        return to;
+    }
+
+    private static long readChangeSetMeta(SQLiteDatabase db, String key) {
+        return DatabaseUtils.longForQuery(db, "SELECT " + META_VALUE + " FROM changeset_meta WHERE "
+                + META_KEY + " = ?", new String[] { key });
+    }
+
+    // Copy a change-set row keeping each value's storage class
+    private static void readRow(Cursor cursor, ContentValues row) {
+        row.clear();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    row.putNull(column);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row.put(column, cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row.put(column, cursor.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row.put(column, cursor.getBlob(i));
+                    break;
+                default:
+                    row.put(column, cursor.getString(i));
+                    break;
+            }
+        }
+    }
+
+    private static void setWatermark(SQLiteDatabase db, long seq) {
+        ContentValues cv = new ContentValues();
+        cv.put(META_KEY, META_WATERMARK);
+        cv.put(META_VALUE, seq);
+        db.insertWithOnConflict(TABLE_BACKUP_META, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // ==================== Full-text search ====================
+
+    // Okapi BM25 parameters, the usual defaults
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+    // Matches scored per source and query; beyond it only the newest rows are ranked
+    private static final int SEARCH_CANDIDATES = 500;
+
+    /**
+     * An FTS4 index over some text columns of a table. The table itself is the
+     * external content, so the text is stored once and snippets read it from there.
+     */
+    private static final class SearchSource {
+        final int kind;
+        final String table;
+        final String titleColumn;
+        final String dateColumn;
+        final String[] columns;
+        // Per column, so a hit in a title counts for more than one in a long body
+        final double[] weights;
+
+        SearchSource(int kind, String table, String titleColumn, String dateColumn, String[] columns,
+                double[] weights) {
+            this.kind = kind;
+            this.table = table;
+            this.titleColumn = titleColumn;
+            this.dateColumn = dateColumn;
+            this.columns = columns;
+            this.weights = weights;
+        }
+
+        String ftsTable() {
+            return table + "_fts";
+        }
+    }
+
+    // Indexed by SearchResult kind
+    private static final SearchSource[] SEARCH_SOURCES = {
+            new SearchSource(SearchResult.KIND_TRANSACTION, TABLE_NAME, COL_CATEGORY, COL_DATE,
+                    new String[] { COL_CATEGORY, COL_NOTE }, new double[] { 2.0, 1.0 }),
+            new SearchSource(SearchResult.KIND_DIARY, TABLE_DIARY, DIARY_TITLE, DIARY_DATE,
+                    new String[] { DIARY_TITLE, DIARY_CONTENT }, new double[] { 2.0, 1.0 }),
+            new SearchSource(SearchResult.KIND_TODO, TABLE_TODO, TODO_TITLE, TODO_DATE,
+                    new String[] { TODO_TITLE, TODO_DESCRIPTION, TODO_TAGS }, new double[] { 2.0, 1.0, 1.5 }) };
+
+    private static final class SearchHit {
+        final int kind;
+        final int id;
+        final double score;
+
+        SearchHit(int kind, int id, double score) {
+            this.kind = kind;
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    // Worst first; on equal scores the newer row (higher id) ranks higher
+    private static final Comparator<SearchHit> SEARCH_HIT_ORDER = (a, b) -> a.score != b.score
+            ? Double.compare(a.score, b.score)
+            : Integer.compare(a.id, b.id);
+
+    /**
+     * Search transaction notes and categories, diary titles and text, and todo
+     * titles, descriptions and tags at once. Every word typed is matched as a
+     * prefix and all of them must occur. Results are ranked by BM25 across the
+     * three kinds, best first, and paged by offset/limit.
+     *
+     * Only the top offset + limit hits are kept while the matches are scored,
+     * and the titles and snippets are read for the returned page alone.
+     *
+     * Every page scores the matches again, so each source scores only its newest
+     * {@link #SEARCH_CANDIDATES} matches (or offset + limit, if more): a page costs
+     * the same however common the words are, but an older match past that bound
+     * is not ranked even if it would have scored higher.
+     */
+    public List<SearchResult> search(String text, int offset, int limit) {
+        List<SearchResult> results = new ArrayList<>();
+        String match = toMatchQuery(text);
+        if (match == null || limit <= 0)
+            return results;
+
+        int wanted = offset + limit;
+        String candidates = String.valueOf(Math.max(SEARCH_CANDIDATES, wanted));
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(wanted + 1, SEARCH_HIT_ORDER);
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] args = { match, candidates };
+        boolean cjk = containsCjk(text);
+        try {
+            // Without ICU a run of Chinese is a single token, so the index cannot find a word inside it
+            boolean substring = cjk && !searchIndexSplitsCjk(db);
+            for (int k = 0; k < SEARCH_SOURCES.length && !substring; k++) {
+                SearchSource source = SEARCH_SOURCES[k];
+                String fts = source.ftsTable();
+                // FTS4 has no built-in ranking, so the score comes from matchinfo in Java.
+                // FTS walks docids in order, so the LIMIT stops it before the older matches are scored.
+                try (Cursor cursor = db.rawQuery("SELECT docid, matchinfo(" + fts + ", 'pcnalx') FROM " + fts
+                        + " WHERE " + fts + " MATCH ? ORDER BY docid DESC LIMIT ?", args)) {
+                    while (cursor.moveToNext()) {
+                        double score = bm25(cursor.getBlob(1), source.weights);
+                        if (best.size() == wanted && score <= best.peek().score)
+                            continue;
+                        best.add(new SearchHit(source.kind, cursor.getInt(0), score));
+                        if (best.size() > wanted) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+            // ICU splits by dictionary words, which misses part of a word ("饭" in "午饭")
+            if (cjk && best.isEmpty()) {
+                substring = true;
+            }
+            List<String> terms = substring ? searchTerms(text) : null;
+            if (substring) {
+                searchSubstrings(db, terms, wanted, candidates, best);
+            }
+            List<SearchHit> ranked = new ArrayList<>(best);
+            Collections.sort(ranked, Collections.reverseOrder(SEARCH_HIT_ORDER));
+            if (offset < ranked.size()) {
+                if (substring) {
+                    loadSubstringResults(db, terms, ranked.subList(offset, ranked.size()), results);
+                } else {
+                    loadSearchResults(db, match, ranked.subList(offset, ranked.size()), results);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            results.clear();
+        }
+        return results;
+    }
+
+    private static void loadSearchResults(SQLiteDatabase db, String match, List<SearchHit> page,
+            List<SearchResult> out) {
+        SearchResult[] ordered = new SearchResult[page.size()];
+        for (SearchSource source : SEARCH_SOURCES) {
+            StringBuilder ids = new StringBuilder();
+            for (SearchHit hit : page) {
+                if (hit.kind == source.kind) {
+                    if (ids.length() > 0) {
+                        ids.append(',');
+                    }
+                    ids.append(hit.id);
+                }
+            }
+            if (ids.length() == 0)
+                continue;
+
+            String fts = source.ftsTable();
+            try (Cursor cursor = db.rawQuery("SELECT " + fts + ".docid, " + source.table + "." + source.titleColumn
+                    + ", " + source.table + "." + source.dateColumn + ", snippet(" + fts + ", '"
+                    + SearchResult.MATCH_START + "', '" + SearchResult.MATCH_END + "', '…', -1, 12) FROM " + fts
+                    + " JOIN " + source.table + " ON " + source.table + ".id = " + fts + ".docid WHERE " + fts
+                    + " MATCH ? AND " + fts + ".docid IN (" + ids + ")", new String[] { match })) {
+                while (cursor.moveToNext()) {
                     int id = cursor.getInt(0);
-                    String title = cursor.getString(1);
-                    String content = cursor.getString(2);
-                    String mood = cursor.getString(3);
-                    String dateVal = cursor.getString(4);
-                    String createdAt = cursor.getString(5);
-                    list.add(new DiaryEntry(id, title, content, mood, dateVal, createdAt));
-                } while (cursor.moveToNext());
+                    String date = source.kind == SearchResult.KIND_TRANSACTION ? DateKeys.format(cursor.getInt(2))
+                            : cursor.getString(2);
+                    for (int i = 0; i < ordered.length; i++) {
+                        SearchHit hit = page.get(i);
+                        if (hit.kind == source.kind && hit.id == id) {
+                            ordered[i] = new SearchResult(hit.kind, id, cursor.getString(1), cursor.getString(3),
+                                    date, hit.score);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        for (SearchResult result : ordered) {
+            if (result != null) {
+                out.add(result);
             }
+        }
+    }
+
+    /**
+     * What the user typed as an FTS query: every run of letters and digits becomes
+     * a lower-case prefix term (lower case also keeps AND/OR/NOT from being read as
+     * operators), and everything else only separates terms. Null if nothing is left.
+     */
+    static String toMatchQuery(String text) {
+        if (text == null)
+            return null;
+        StringBuilder query = new StringBuilder();
+        boolean inTerm = false;
+        for (int i = 0; i < text.length();) {
+            int cp = text.codePointAt(i);
+            if (Character.isLetterOrDigit(cp)) {
+                if (!inTerm && query.length() > 0) {
+                    query.append(' ');
+                }
+                query.appendCodePoint(Character.toLowerCase(cp));
+                inTerm = true;
+            } else if (inTerm) {
+                query.append('*');
+                inTerm = false;
+            }
+            i += Character.charCount(cp);
+        }
+        if (inTerm) {
+            query.append('*');
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    /**
+     * The terms {@link #toMatchQuery} would build, lower case and without the prefix marker.
+     */
+    static List<String> searchTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length();) {
+            int cp = text.codePointAt(i);
+            if (Character.isLetterOrDigit(cp)) {
+                term.appendCodePoint(Character.toLowerCase(cp));
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+            i += Character.charCount(cp);
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    static boolean containsCjk(String text) {
+        for (int i = 0; i < text.length();) {
+            int cp = text.codePointAt(i);
+            Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL)
+                return true;
+            i += Character.charCount(cp);
+        }
+        return false;
+    }
+
+    // Read from the schema rather than remembered: a restored backup may have been built either way
+    private static boolean searchIndexSplitsCjk(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE name = ?",
+                new String[] { SEARCH_SOURCES[0].ftsTable() })) {
+            return cursor.moveToFirst() && cursor.getString(0) != null && cursor.getString(0).contains("tokenize=icu");
+        }
+    }
+
+    /**
+     * The LIKE search the index replaced, for what the tokenizer cannot find: every term
+     * must occur somewhere in the row. A hit scores the column weight for each occurrence.
+     */
+    private static void searchSubstrings(SQLiteDatabase db, List<String> terms, int wanted, String candidates,
+            PriorityQueue<SearchHit> best) {
+        for (SearchSource source : SEARCH_SOURCES) {
+            String[] args = substringArgs(source, terms);
+            args = Arrays.copyOf(args, args.length + 1);
+            args[args.length - 1] = candidates;
+            try (Cursor cursor = db.rawQuery("SELECT id, " + columnsWithPrefix(source.columns, "") + " FROM "
+                    + source.table + " WHERE " + substringWhere(source, terms.size()) + " ORDER BY id DESC LIMIT ?",
+                    args)) {
+                while (cursor.moveToNext()) {
+                    double score = 0;
+                    for (int c = 0; c < source.columns.length; c++) {
+                        String value = cursor.getString(c + 1);
+                        if (value == null)
+                            continue;
+                        String lower = value.toLowerCase(Locale.ROOT);
+                        for (String term : terms) {
+                            for (int at = lower.indexOf(term); at >= 0; at = lower.indexOf(term, at + term.length())) {
+                                score += source.weights[c];
+                            }
+                        }
+                    }
+                    if (best.size() == wanted && score <= best.peek().score)
+                        continue;
+                    best.add(new SearchHit(source.kind, cursor.getInt(0), score));
+                    if (best.size() > wanted) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+    }
+
+    // (a LIKE ? OR b LIKE ?) AND ... once per term
+    private static String substringWhere(SearchSource source, int termCount) {
+        StringBuilder any = new StringBuilder("(");
+        for (int c = 0; c < source.columns.length; c++) {
+            if (c > 0) {
+                any.append(" OR ");
+            }
+            any.append(source.columns[c]).append(" LIKE ?");
+        }
+        any.append(')');
+        StringBuilder where = new StringBuilder();
+        for (int t = 0; t < termCount; t++) {
+            if (t > 0) {
+                where.append(" AND ");
+            }
+            where.append(any);
+        }
+        return where.toString();
+    }
+
+    // Terms are letters and digits only, so none of them needs escaping for LIKE
+    private static String[] substringArgs(SearchSource source, List<String> terms) {
+        String[] args = new String[terms.size() * source.columns.length];
+        int i = 0;
+        for (String term : terms) {
+            String pattern = "%" + term + "%";
+            for (int c = 0; c < source.columns.length; c++) {
+                args[i++] = pattern;
+            }
+        }
+        return args;
+    }
+
+    private static void loadSubstringResults(SQLiteDatabase db, List<String> terms, List<SearchHit> page,
+            List<SearchResult> out) {
+        SearchResult[] ordered = new SearchResult[page.size()];
+        for (SearchSource source : SEARCH_SOURCES) {
+            StringBuilder ids = new StringBuilder();
+            for (SearchHit hit : page) {
+                if (hit.kind == source.kind) {
+                    if (ids.length() > 0) {
+                        ids.append(',');
+                    }
+                    ids.append(hit.id);
+                }
+            }
+            if (ids.length() == 0)
+                continue;
+
+            try (Cursor cursor = db.rawQuery("SELECT id, " + source.titleColumn + ", " + source.dateColumn + ", "
+                    + columnsWithPrefix(source.columns, "") + " FROM " + source.table + " WHERE id IN (" + ids
+                    + ")", null)) {
+                while (cursor.moveToNext()) {
+                    int id = cursor.getInt(0);
+                    String date = source.kind == SearchResult.KIND_TRANSACTION ? DateKeys.format(cursor.getInt(2))
+                            : cursor.getString(2);
+                    String snippet = null;
+                    for (int c = 0; c < source.columns.length && snippet == null; c++) {
+                        snippet = substringSnippet(cursor.getString(c + 3), terms);
+                    }
+                    for (int i = 0; i < ordered.length; i++) {
+                        SearchHit hit = page.get(i);
+                        if (hit.kind == source.kind && hit.id == id) {
+                            ordered[i] = new SearchResult(hit.kind, id, cursor.getString(1),
+                                    snippet != null ? snippet : "", date, hit.score);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        for (SearchResult result : ordered) {
+            if (result != null) {
+                out.add(result);
+            }
+        }
+    }
+
+    // Characters of context kept either side of the first hit, about what snippet() shows
+    private static final int SNIPPET_CONTEXT = 12;
+
+    /**
+     * A window of {@code text} around its first term, every term in it marked the way
+     * snippet() marks them; null if no term occurs.
+     */
+    static String substringSnippet(String text, List<String> terms) {
+        if (text == null)
+            return null;
+        String lower = text.toLowerCase(Locale.ROOT);
+        int first = -1;
+        for (String term : terms) {
+            int at = lower.indexOf(term);
+            if (at >= 0 && (first < 0 || at < first)) {
+                first = at;
+            }
+        }
+        if (first < 0)
+            return null;
+        // Lower-casing can change the length of some scripts; fall back to the lower-case text then
+        String source = lower.length() == text.length() ? text : lower;
+        int start = Math.max(0, first - SNIPPET_CONTEXT);
+        int end = Math.min(source.length(), first + SNIPPET_CONTEXT * 2);
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append('…');
+        }
+        for (int i = start; i < end;) {
+            String matched = null;
+            for (String term : terms) {
+                if (lower.startsWith(term, i) && (matched == null || term.length() > matched.length())) {
+                    matched = term;
+                }
+            }
+            if (matched == null) {
+                snippet.append(source.charAt(i++));
+            } else {
+                int to = i + matched.length();
+                snippet.append(SearchResult.MATCH_START).append(source, i, to).append(SearchResult.MATCH_END);
+                i = to;
+            }
+        }
+        if (end < source.length()) {
+            snippet.append('…');
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Okapi BM25 from an FTS4 matchinfo('pcnalx') blob: phrase count, column count,
+     * row count, average and this row's length per column, then per phrase and
+     * column the hits in this row, in all rows, and the rows with a hit.
+     */
+    private static double bm25(byte[] matchinfo, double[] weights) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        double rows = info.get(2);
+        int averages = 3;
+        int lengths = averages + columns;
+        int hits = lengths + columns;
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns; c++) {
+                int x = hits + 3 * (p * columns + c);
+                double tf = info.get(x);
+                if (tf == 0)
+                    continue;
+                double withHit = info.get(x + 2);
+                double idf = Math.log(1 + (rows - withHit + 0.5) / (withHit + 0.5));
+                double norm = 1 - BM25_B + BM25_B * info.get(lengths + c) / Math.max(1, info.get(averages + c));
+                score += weights[c] * idf * tf * (BM25_K1 + 1) / (tf + BM25_K1 * norm);
+            }
+        }
+        return score;
+    }
+
+    private static void createSearchIndex(SQLiteDatabase db) {
+        String tokenizer = searchTokenizer(db);
+        for (SearchSource source : SEARCH_SOURCES) {
+            String fts = source.ftsTable();
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(content=\"" + source.table
+                    + "\", " + columnsWithPrefix(source.columns, "") + ", tokenize=" + tokenizer + ")");
+            createSearchTriggers(db, source);
+            db.execSQL("INSERT INTO " + fts + " (" + fts + ") VALUES ('rebuild')");
+        }
+    }
+
+    // Also needed after any rebuild of a source table, since DROP TABLE drops its triggers
+    private static void createSearchTriggers(SQLiteDatabase db, SearchSource source) {
+        String fts = source.ftsTable();
+        String columns = columnsWithPrefix(source.columns, "");
+        String newValues = columnsWithPrefix(source.columns, "new.");
+        // External content: a row's old text has to be removed from the index while it is
+        // still in the table, and only edits to the indexed columns touch the index
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_fts_" + source.table + "_bu BEFORE UPDATE OF " + columns
+                + " ON " + source.table + " BEGIN DELETE FROM " + fts + " WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_fts_" + source.table + "_bd BEFORE DELETE ON "
+                + source.table + " BEGIN DELETE FROM " + fts + " WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_fts_" + source.table + "_au AFTER UPDATE OF " + columns
+                + " ON " + source.table + " BEGIN INSERT INTO " + fts + " (docid, " + columns
+                + ") VALUES (new.id, " + newValues + "); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_fts_" + source.table + "_ai AFTER INSERT ON "
+                + source.table + " BEGIN INSERT INTO " + fts + " (docid, " + columns
+                + ") VALUES (new.id, " + newValues + "); END");
+    }
+
+    private static void rebuildSearchIndex(SQLiteDatabase db) {
+        for (SearchSource source : SEARCH_SOURCES) {
+            db.execSQL("DROP TABLE IF EXISTS " + source.ftsTable());
+        }
+        createSearchIndex(db);
+    }
+
+    // The platform SQLite has FTS3/4 but not FTS5. Android builds it with ICU, whose
+    // tokenizer splits Chinese into words; unicode61 folds case and splits on all
+    // punctuation but keeps a run of Chinese as one token; "simple" is the last resort.
+    // Whatever is chosen, search() falls back to substrings for Chinese the index misses.
+    private static final String[] SEARCH_TOKENIZERS = { "icu zh_CN", "unicode61", "simple" };
+
+    private static String searchTokenizer(SQLiteDatabase db) {
+        for (String tokenizer : SEARCH_TOKENIZERS) {
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE temp.fts_probe USING fts4(x, tokenize=" + tokenizer + ")");
+                db.execSQL("DROP TABLE temp.fts_probe");
+                return tokenizer;
+            } catch (SQLiteException e) {
+                // Not compiled in, try the next one
+            }
+        }
+        return "simple";
+    }
+
+    private static String columnsWithPrefix(String[] columns, String prefix) {
+        StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append(prefix).append(column);
+        }
+        return list.toString();
+    }
+
+    // ==================== Bulk import ====================
+
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    /**
+     * Start a bulk insert. Call from one worker thread and finish with either
+     * {@link ImportSession#commit()} or {@link ImportSession#abort()}.
+     */
+    public ImportSession beginImport() {
+        return new ImportSession(getWritableDatabase());
+    }
+
+    /**
+     * Streaming bulk insert of transactions. Rows are bound into one compiled
+     * INSERT and committed every {@link #IMPORT_BATCH_SIZE} rows, so a large file
+     * costs a few hundred commits instead of one per row. The id range of every
+     * committed batch is remembered, which lets {@link #abort()} take the whole
+     * import back out without touching rows written by anyone else meanwhile.
+     */
+    public class ImportSession {
+        private final SQLiteDatabase db;
+        private final SQLiteStatement insert;
+        private final List<long[]> committedBatches = new ArrayList<>();
+        private boolean inBatch;
+        private int pending;
+        private long batchFirstId;
+        private long batchLastId;
+        private int count;
+
+        private ImportSession(SQLiteDatabase db) {
+            this.db = db;
+            // Its own statement rather than the cached one: the session keeps it across batches
+            this.insert = db.compileStatement(SQL_INSERT_TRANSACTION);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the transaction has no valid date
+         */
+        public void add(Transaction transaction) {
+            int dateKey = DateKeys.parse(transaction.getDate());
+            if (dateKey == 0) {
+                throw new IllegalArgumentException("日期无效: " + transaction.getDate());
+            }
+            if (!inBatch) {
+                db.beginTransaction();
+                inBatch = true;
+                batchFirstId = -1;
+            }
+            bindText(1, transaction.getType());
+            insert.bindLong(2, toCents(transaction.getAmount()));
+            bindText(3, transaction.getCategory());
+            bindText(4, transaction.getNote());
+            insert.bindLong(5, dateKey);
+            long id = insert.executeInsert();
+            if (batchFirstId == -1) {
+                batchFirstId = id;
+            }
+            batchLastId = id;
+            pending++;
+            count++;
+            if (pending >= IMPORT_BATCH_SIZE) {
+                commitBatch();
+            }
+        }
+
+        /**
+         * Rows added so far, including the ones still in the open batch.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public int commit() {
+            try {
+                if (inBatch) {
+                    commitBatch();
+                }
+            } finally {
+                insert.close();
+                invalidateDashboardCache();
+                invalidationTracker.invalidate(InvalidationTracker.TRANSACTIONS);
+            }
+            return count;
+        }
+
+        public void abort() {
+            try {
+                if (inBatch) {
+                    // Ending without setTransactionSuccessful rolls the open batch back
+                    inBatch = false;
+                    db.endTransaction();
+                }
+                db.beginTransaction();
+                try {
+                    for (long[] batch : committedBatches) {
+                        db.delete(TABLE_NAME, COL_ID + " BETWEEN ? AND ?",
+                                new String[] { String.valueOf(batch[0]), String.valueOf(batch[1]) });
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                committedBatches.clear();
+                count = 0;
+            } finally {
+                insert.close();
+                invalidateDashboardCache();
+                invalidationTracker.invalidate(InvalidationTracker.TRANSACTIONS);
+            }
+        }
+
+        private void commitBatch() {
+            try {
+                db.setTransactionSuccessful();
+            } finally {
+                inBatch = false;
+                db.endTransaction();
+            }
+            committedBatches.add(new long[] { batchFirstId, batchLastId });
+            pending = 0;
+        }
+
+        private void bindText(int index, String value) {
+            StatementCache.bindText(insert, index, value);
+        }
+    }
+
+    // ==================== Diary CRUD Operations ====================
+
+    public boolean addDiaryEntry(DiaryEntry entry) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ContentValues cv = new ContentValues();
+            cv.put(DIARY_TITLE, entry.getTitle());
+            cv.put(DIARY_CONTENT, entry.getContent());
+            cv.put(DIARY_MOOD, entry.getMood());
+            cv.put(DIARY_DATE, entry.getDate());
+
+            long result = db.insert(TABLE_DIARY, null, cv);
+            invalidationTracker.invalidate(InvalidationTracker.DIARY);
+            return result != -1;
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
         }
-        return list;
+    }
+
+    public List<DiaryEntry> getAllDiaryEntries() {
+        return query("SELECT " + DIARY_LIST_COLUMNS + " FROM " + TABLE_DIARY + " ORDER BY " + DIARY_DATE
+                + " DESC, " + DIARY_ID + " DESC", null, new DiaryMapper());
+    }
+
+    public List<DiaryEntry> getDiaryEntriesByDate(String date) {
+        return query("SELECT " + DIARY_LIST_COLUMNS + " FROM " + TABLE_DIARY + " WHERE " + DIARY_DATE
+                + " = ? ORDER BY " + DIARY_ID + " DESC", new String[] { date }, new DiaryMapper());
     }
 
     public boolean updateDiaryEntry(DiaryEntry entry) {
@@ -414,6 +2240,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
             int result = db.update(TABLE_DIARY, cv, DIARY_ID + " = ?",
                     new String[] { String.valueOf(entry.getId()) });
+            invalidationTracker.invalidate(InvalidationTracker.DIARY);
             return result > 0;
         } catch (Exception e) {
             e.printStackTrace();
@@ -425,6 +2252,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         try {
             SQLiteDatabase db = this.getWritableDatabase();
             db.delete(TABLE_DIARY, DIARY_ID + " = ?", new String[] { String.valueOf(id) });
+            invalidationTracker.invalidate(InvalidationTracker.DIARY);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -452,16 +2280,26 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             ContentValues cv = new ContentValues();
             cv.put(TODO_TITLE, item.getTitle());
             cv.put(TODO_DESCRIPTION, item.getDescription());
-            cv.put(TODO_STATUS, item.getStatus());
-            cv.put(TODO_PRIORITY, item.getPriority());
+            cv.put(TODO_STATUS_RANK, TodoItem.statusRank(item.getStatus()));
+            cv.put(TODO_PRIORITY_RANK, TodoItem.priorityRank(item.getPriority()));
             cv.put(TODO_DUE_DATE, item.getDueDate());
             cv.put(TODO_TAGS, item.getTags());
             cv.put(TODO_DATE, item.getDate());
             cv.put(TODO_ASSIGNEE, item.getAssignee());
             cv.put(TODO_ATTACHMENT, item.getAttachmentPath());
 
-            long result = db.insert(TABLE_TODO, null, cv);
-            return result != -1;
+            db.beginTransaction();
+            try {
+                long result = db.insert(TABLE_TODO, null, cv);
+                if (result != -1) {
+                    syncTodoTags(db, result, item.getTags());
+                }
+                db.setTransactionSuccessful();
+                return result != -1;
+            } finally {
+                db.endTransaction();
+                invalidationTracker.invalidate(InvalidationTracker.TODOS);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -469,62 +2307,33 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public List<TodoItem> getAllTodoItems() {
-        List<TodoItem> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_TODO + " ORDER BY " +
-                        "CASE " + TODO_STATUS
-                        + " WHEN 'in_progress' THEN 1 WHEN 'not_started' THEN 2 WHEN 'completed' THEN 3 END, " +
-                        "CASE " + TODO_PRIORITY
-                        + " WHEN 'high' THEN 1 WHEN 'medium' THEN 2 WHEN 'low' THEN 3 ELSE 4 END, " +
-                        TODO_CREATED_AT + " DESC",
-                null)) {
-            if (cursor.moveToFirst()) {
-                do {
-                    list.add(parseTodoItemV2(cursor));
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return list;
+        return query("SELECT " + TODO_LIST_COLUMNS + " FROM " + TABLE_TODO + " ORDER BY " + TODO_DEFAULT_ORDER,
+                null, new TodoMapper());
     }
 
-    public List<TodoItem> getTodoItemsByStatus(String status) {
-        List<TodoItem> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_TODO + " WHERE " + TODO_STATUS + " = ? ORDER BY " +
-                        "CASE " + TODO_PRIORITY
-                        + " WHEN 'high' THEN 1 WHEN 'medium' THEN 2 WHEN 'low' THEN 3 ELSE 4 END, " +
-                        TODO_CREATED_AT + " DESC",
-                new String[] { status })) {
-            if (cursor.moveToFirst()) {
-                do {
-                    list.add(parseTodoItemV2(cursor));
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return list;
+    /**
+     * Todos carrying the tag (case-insensitive), in the default order. Resolved
+     * through the tag name index and idx_todo_tags_tag, without reading other todos.
+     */
+    public List<TodoItem> getTodoItemsByTag(String tag) {
+        return query("SELECT " + TODO_LIST_COLUMNS + " FROM " + TABLE_TODO + " WHERE " + TODO_ID + " IN (SELECT "
+                + TT_TODO_ID + " FROM " + TABLE_TODO_TAGS + " WHERE " + TT_TAG_ID + " = (SELECT " + TAG_ID
+                + " FROM " + TABLE_TAGS + " WHERE " + TAG_NAME + " = ?)) ORDER BY " + TODO_DEFAULT_ORDER,
+                new String[] { tag }, new TodoMapper());
     }
 
-    public List<TodoItem> getTodayTodoItems() {
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
-        List<TodoItem> list = new ArrayList<>();
+    /**
+     * Every tag in use with its number of todos, most used first. One pass over
+     * the covering (tag_id, todo_id) index.
+     */
+    public List<TagCount> getTagCounts() {
+        List<TagCount> list = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_TODO + " WHERE " + TODO_DATE + " = ? OR " + TODO_DUE_DATE + " = ? ORDER BY " +
-                        "CASE " + TODO_STATUS
-                        + " WHEN 'in_progress' THEN 1 WHEN 'not_started' THEN 2 WHEN 'completed' THEN 3 END, " +
-                        "CASE " + TODO_PRIORITY
-                        + " WHEN 'high' THEN 1 WHEN 'medium' THEN 2 WHEN 'low' THEN 3 ELSE 4 END",
-                new String[] { today, today })) {
-            if (cursor.moveToFirst()) {
-                do {
-                    list.add(parseTodoItemV2(cursor));
-                } while (cursor.moveToNext());
+        try (Cursor cursor = db.rawQuery("SELECT g." + TAG_NAME + ", COUNT(*) AS n FROM " + TABLE_TODO_TAGS
+                + " tt JOIN " + TABLE_TAGS + " g ON g." + TAG_ID + " = tt." + TT_TAG_ID + " GROUP BY tt." + TT_TAG_ID
+                + " ORDER BY n DESC, g." + TAG_NAME, null)) {
+            while (cursor.moveToNext()) {
+                list.add(new TagCount(cursor.getString(0), cursor.getInt(1)));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -532,56 +2341,49 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return list;
     }
 
-    public List<TodoItem> getTodoItemsByDate(String date) {
-        List<TodoItem> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.rawQuery(
-                "SELECT * FROM " + TABLE_TODO + " WHERE " + TODO_DATE + " = ? ORDER BY " +
-                        "CASE " + TODO_STATUS
-                        + " WHEN 'in_progress' THEN 1 WHEN 'not_started' THEN 2 WHEN 'completed' THEN 3 END, " +
-                        "CASE " + TODO_PRIORITY
-                        + " WHEN 'high' THEN 1 WHEN 'medium' THEN 2 WHEN 'low' THEN 3 ELSE 4 END",
-                new String[] { date })) {
-            if (cursor.moveToFirst()) {
-                do {
-                    list.add(parseTodoItemV2(cursor));
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * All todos for the "by status" tab in one walk of idx_todo_v2_rank. The rank
+     * order already groups them by status, so the sections are counted in the same
+     * pass instead of running one query per status.
+     */
+    public TodoSections getTodoItemsGroupedByStatus() {
+        List<TodoItem> items = getAllTodoItems();
+        int[] counts = new int[TodoSections.STATUSES.length];
+        for (TodoItem item : items) {
+            counts[TodoItem.statusRank(item.getStatus()) - 1]++;
         }
-        return list;
+        return new TodoSections(items, counts);
     }
 
-    private TodoItem parseTodoItemV2(Cursor cursor) {
-        int id = cursor.getInt(0);
-        String title = cursor.getString(1);
-        String description = cursor.getString(2);
-        String status = cursor.getString(3);
-        String priority = cursor.getString(4);
-        String dueDate = cursor.getString(5);
-        String tags = cursor.getString(6);
-        String date = cursor.getString(7);
-        String createdAt = cursor.getString(8);
-
-        // Handle potential nulls for new columns during migration/older rows
-        String assignee = null;
-        String attachment = null;
+    public List<TodoItem> getTodoItemsByStatus(String status) {
+        return query(
+                "SELECT " + TODO_LIST_COLUMNS + " FROM " + TABLE_TODO + " WHERE " + TODO_STATUS_RANK + " = ? ORDER BY "
+                        + TODO_PRIORITY_RANK + ", " + TODO_CREATED_AT + " DESC",
+                new String[] { String.valueOf(TodoItem.statusRank(status)) }, new TodoMapper());
+    }
 
-        try {
-            int assigneeIdx = cursor.getColumnIndex(TODO_ASSIGNEE);
-            if (assigneeIdx != -1)
-                assignee = cursor.getString(assigneeIdx);
+    public List<TodoItem> getTodayTodoItems() {
+        String today = DateKeys.todayString();
+        return query(
+                "SELECT " + TODO_LIST_COLUMNS + " FROM " + TABLE_TODO + " WHERE " + TODO_DATE + " = ? OR "
+                        + TODO_DUE_DATE + " = ? ORDER BY " + TODO_DEFAULT_ORDER,
+                new String[] { today, today }, new TodoMapper());
+    }
 
-            int attachmentIdx = cursor.getColumnIndex(TODO_ATTACHMENT);
-            if (attachmentIdx != -1)
-                attachment = cursor.getString(attachmentIdx);
-        } catch (Exception e) {
-            // ignore
-        }
+    public List<TodoItem> getTodoItemsByDate(String date) {
+        return query(
+                "SELECT " + TODO_LIST_COLUMNS + " FROM " + TABLE_TODO + " WHERE " + TODO_DATE + " = ? ORDER BY "
+                        + TODO_DEFAULT_ORDER,
+                new String[] { date }, new TodoMapper());
+    }
 
-        return new TodoItem(id, title, description, status, priority, dueDate, tags, date, createdAt, assignee,
-                attachment);
+    /**
+     * One todo with every column, for the edit dialog (list rows leave the description out).
+     */
+    public TodoItem getTodoItem(int id) {
+        List<TodoItem> list = query("SELECT * FROM " + TABLE_TODO + " WHERE " + TODO_ID + " = ?",
+                new String[] { String.valueOf(id) }, new TodoMapper());
+        return list.isEmpty() ? null : list.get(0);
     }
 
     public boolean updateTodoItem(TodoItem item) {
@@ -590,17 +2392,27 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             ContentValues cv = new ContentValues();
             cv.put(TODO_TITLE, item.getTitle());
             cv.put(TODO_DESCRIPTION, item.getDescription());
-            cv.put(TODO_STATUS, item.getStatus());
-            cv.put(TODO_PRIORITY, item.getPriority());
+            cv.put(TODO_STATUS_RANK, TodoItem.statusRank(item.getStatus()));
+            cv.put(TODO_PRIORITY_RANK, TodoItem.priorityRank(item.getPriority()));
             cv.put(TODO_DUE_DATE, item.getDueDate());
             cv.put(TODO_TAGS, item.getTags());
             cv.put(TODO_DATE, item.getDate());
             cv.put(TODO_ASSIGNEE, item.getAssignee());
             cv.put(TODO_ATTACHMENT, item.getAttachmentPath());
 
-            int result = db.update(TABLE_TODO, cv, TODO_ID + " = ?",
-                    new String[] { String.valueOf(item.getId()) });
-            return result > 0;
+            db.beginTransaction();
+            try {
+                int result = db.update(TABLE_TODO, cv, TODO_ID + " = ?",
+                        new String[] { String.valueOf(item.getId()) });
+                if (result > 0) {
+                    syncTodoTags(db, item.getId(), item.getTags());
+                }
+                db.setTransactionSuccessful();
+                return result > 0;
+            } finally {
+                db.endTransaction();
+                invalidationTracker.invalidate(InvalidationTracker.TODOS);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -609,13 +2421,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     public boolean updateTodoStatus(int id, String status) {
         try {
-            SQLiteDatabase db = this.getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(TODO_STATUS, status);
-
-            int result = db.update(TABLE_TODO, cv, TODO_ID + " = ?",
-                    new String[] { String.valueOf(id) });
-            return result > 0;
+            SQLiteStatement update = statements(this.getWritableDatabase()).get(SQL_UPDATE_TODO_STATUS);
+            synchronized (update) {
+                update.bindLong(1, TodoItem.statusRank(status));
+                update.bindLong(2, id);
+                int result = update.executeUpdateDelete();
+                invalidationTracker.invalidate(InvalidationTracker.TODOS);
+                return result > 0;
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -631,6 +2444,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         try {
             SQLiteDatabase db = this.getWritableDatabase();
             db.delete(TABLE_TODO, TODO_ID + " = ?", new String[] { String.valueOf(id) });
+            invalidationTracker.invalidate(InvalidationTracker.TODOS);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -653,7 +2467,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         int count = 0;
         try (Cursor cursor = db.rawQuery(
-                "SELECT COUNT(*) FROM " + TABLE_TODO + " WHERE " + TODO_STATUS + " != 'completed'", null)) {
+                "SELECT COUNT(*) FROM " + TABLE_TODO + " WHERE " + TODO_STATUS_RANK + " != "
+                        + TodoItem.STATUS_RANK_COMPLETED, null)) {
             if (cursor.moveToFirst()) {
                 count = cursor.getInt(0);
             }
@@ -667,8 +2482,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         int count = 0;
         try (Cursor cursor = db.rawQuery(
-                "SELECT COUNT(*) FROM " + TABLE_TODO + " WHERE " + TODO_STATUS + " = ?",
-                new String[] { status })) {
+                "SELECT COUNT(*) FROM " + TABLE_TODO + " WHERE " + TODO_STATUS_RANK + " = ?",
+                new String[] { String.valueOf(TodoItem.statusRank(status)) })) {
             if (cursor.moveToFirst()) {
                 count = cursor.getInt(0);
             }
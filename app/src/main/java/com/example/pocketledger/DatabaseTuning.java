@@ -0,0 +1,39 @@
+package com.example.pocketledger;
+
+/**
+ * Connection settings applied by {@link DatabaseHelper#onConfigure}.
+ *
+ * {@link #DEFAULT} turns on write-ahead logging so the calendar and lists keep
+ * reading while a write (an AI confirmation, an import) is committing, and
+ * relaxes fsync to synchronous=NORMAL, which in WAL mode can lose at most the
+ * last commit on power loss but never corrupts the file. {@link #LEGACY} keeps
+ * SQLite's own defaults and the rollback journal, as the app ran before.
+ */
+public final class DatabaseTuning {
+
+    public static final DatabaseTuning DEFAULT = new DatabaseTuning(true, "NORMAL", 8 * 1024, true,
+            16L * 1024 * 1024, 60 * 60 * 1000L);
+
+    public static final DatabaseTuning LEGACY = new DatabaseTuning(false, null, 0, false, 0, 0);
+
+    final boolean writeAheadLogging;
+    // OFF / NORMAL / FULL, or null to leave the platform's choice
+    final String synchronous;
+    // Page cache per connection in KiB, 0 for SQLite's default (2 MiB)
+    final int cacheSizeKib;
+    final boolean tempStoreInMemory;
+    // 0 keeps memory-mapped I/O off
+    final long mmapSizeBytes;
+    // Minimum time between PRAGMA optimize runs, 0 to never run it
+    final long optimizeIntervalMs;
+
+    public DatabaseTuning(boolean writeAheadLogging, String synchronous, int cacheSizeKib,
+            boolean tempStoreInMemory, long mmapSizeBytes, long optimizeIntervalMs) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.cacheSizeKib = cacheSizeKib;
+        this.tempStoreInMemory = tempStoreInMemory;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.optimizeIntervalMs = optimizeIntervalMs;
+    }
+}
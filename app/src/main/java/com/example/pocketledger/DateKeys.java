@@ -0,0 +1,224 @@
+package com.example.pocketledger;
+
+import java.util.TimeZone;
+
+/**
+ * Dates as int keys, the form the database stores: yyyymmdd for a day, yyyymm
+ * for a month. Keys compare in date order and convert to and from epoch days
+ * with the same proleptic Gregorian arithmetic java.time uses (which minSdk 24
+ * does not ship). Every method is a pure function, so they are safe from any
+ * thread, and only the ones returning a String allocate.
+ */
+final class DateKeys {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Days from 0000-03-01 to 1970-01-01 in the shifted calendar below
+    private static final long DAYS_0000_TO_1970 = 719_468L;
+    private static final int DAYS_PER_400_YEARS = 146_097;
+
+    private DateKeys() {
+    }
+
+    static int of(int year, int month, int day) {
+        return year * 10000 + month * 100 + day;
+    }
+
+    static int year(int key) {
+        return key / 10000;
+    }
+
+    static int month(int key) {
+        return key / 100 % 100;
+    }
+
+    static int day(int key) {
+        return key % 100;
+    }
+
+    /**
+     * The yyyymm key of the month a day key falls in.
+     */
+    static int monthOf(int key) {
+        return key / 100;
+    }
+
+    /**
+     * Today in the device's time zone.
+     */
+    static int today() {
+        long now = System.currentTimeMillis();
+        return fromEpochDay(Math.floorDiv(now + TimeZone.getDefault().getOffset(now), MILLIS_PER_DAY));
+    }
+
+    /**
+     * Days since 1970-01-01. Counts years from March so the leap day is the last day of the year.
+     */
+    static long toEpochDay(int key) {
+        int year = year(key);
+        int month = month(key);
+        if (month <= 2)
+            year--;
+        long era = Math.floorDiv(year, 400);
+        int yearOfEra = (int) (year - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day(key) - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    static int fromEpochDay(long epochDay) {
+        long shifted = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(shifted, DAYS_PER_400_YEARS);
+        int dayOfEra = (int) (shifted - era * DAYS_PER_400_YEARS);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        return of(year, month, day);
+    }
+
+    static int plusDays(int key, int days) {
+        return fromEpochDay(toEpochDay(key) + days);
+    }
+
+    /**
+     * 1 for Monday through 7 for Sunday.
+     */
+    static int dayOfWeek(int key) {
+        // 1970-01-01 was a Thursday
+        return (int) Math.floorMod(toEpochDay(key) + 3, 7L) + 1;
+    }
+
+    static int plusMonths(int monthKey, int months) {
+        int index = monthKey / 100 * 12 + monthKey % 100 - 1 + months;
+        return Math.floorDiv(index, 12) * 100 + Math.floorMod(index, 12) + 1;
+    }
+
+    /**
+     * The 42 days of a six-week month view starting on the Monday on or before the 1st.
+     */
+    static int[] monthGrid(int monthKey) {
+        int first = monthKey * 100 + 1;
+        long start = toEpochDay(first) - (dayOfWeek(first) - 1);
+        int[] days = new int[42];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = fromEpochDay(start + i);
+        }
+        return days;
+    }
+
+    /**
+     * "yyyy-MM-dd" to yyyymmdd, 0 if the string is not a real date. Month and day
+     * may drop their leading zero ("2024-1-5"), and a time after a space or 'T'
+     * is ignored.
+     */
+    static int parse(String date) {
+        if (date == null || digitsEnd(date, 0) != 4 || !charAt(date, 4, '-'))
+            return 0;
+        int monthEnd = digitsEnd(date, 5);
+        int dayEnd = digitsEnd(date, monthEnd + 1);
+        if (!isField(5, monthEnd) || !charAt(date, monthEnd, '-') || !isField(monthEnd + 1, dayEnd))
+            return 0;
+        if (dayEnd < date.length() && !charAt(date, dayEnd, ' ') && !charAt(date, dayEnd, 'T'))
+            return 0;
+        int year = number(date, 0, 4);
+        int month = number(date, 5, monthEnd);
+        int day = number(date, monthEnd + 1, dayEnd);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month))
+            return 0;
+        return of(year, month, day);
+    }
+
+    /**
+     * "yyyy-MM" to yyyymm, 0 if the string is not a month. The month may drop its
+     * leading zero, and a day after it is ignored.
+     */
+    static int parseMonth(String yearMonth) {
+        if (yearMonth == null || digitsEnd(yearMonth, 0) != 4 || !charAt(yearMonth, 4, '-'))
+            return 0;
+        int monthEnd = digitsEnd(yearMonth, 5);
+        if (!isField(5, monthEnd) || (monthEnd < yearMonth.length() && !charAt(yearMonth, monthEnd, '-')))
+            return 0;
+        int month = number(yearMonth, 5, monthEnd);
+        if (month < 1 || month > 12)
+            return 0;
+        return number(yearMonth, 0, 4) * 100 + month;
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        if (month == 2)
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        // 31 for odd months up to July and even ones from August
+        return 30 + ((month + month / 8) & 1);
+    }
+
+    // Scanned in place rather than split, so parsing allocates nothing
+    private static int digitsEnd(String text, int from) {
+        int i = from;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    // Month and day fields are one or two digits
+    private static boolean isField(int start, int end) {
+        return end - start == 1 || end - start == 2;
+    }
+
+    private static boolean charAt(String text, int index, char c) {
+        return index < text.length() && text.charAt(index) == c;
+    }
+
+    private static int number(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * yyyymmdd to "yyyy-MM-dd", "" for 0.
+     */
+    static String format(int key) {
+        if (key <= 0)
+            return "";
+        char[] out = new char[10];
+        writeMonth(out, monthOf(key));
+        out[7] = '-';
+        out[8] = (char) ('0' + day(key) / 10);
+        out[9] = (char) ('0' + day(key) % 10);
+        return new String(out);
+    }
+
+    /**
+     * yyyymm to "yyyy-MM".
+     */
+    static String formatMonth(int monthKey) {
+        char[] out = new char[7];
+        writeMonth(out, monthKey);
+        return new String(out);
+    }
+
+    private static void writeMonth(char[] out, int monthKey) {
+        int year = monthKey / 100;
+        int month = monthKey % 100;
+        out[0] = (char) ('0' + year / 1000 % 10);
+        out[1] = (char) ('0' + year / 100 % 10);
+        out[2] = (char) ('0' + year / 10 % 10);
+        out[3] = (char) ('0' + year % 10);
+        out[4] = '-';
+        out[5] = (char) ('0' + month / 10);
+        out[6] = (char) ('0' + month % 10);
+    }
+
+    static String todayString() {
+        return format(today());
+    }
+
+    static String currentMonth() {
+        return formatMonth(monthOf(today()));
+    }
+}
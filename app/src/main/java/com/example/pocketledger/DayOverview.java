@@ -0,0 +1,34 @@
+package com.example.pocketledger;
+
+/**
+ * Everything the calendar shows for one day: money in and out, diary entries
+ * and the todos due that day. Built by {@link DatabaseHelper#getMonthOverview}.
+ */
+public class DayOverview {
+    private String date;
+    private double income;
+    private double expense;
+    private int diaryCount;
+    private String mood; // of the most recently written entry, null without one
+    private int dueCount; // todos due that day, any status
+    private int overdueCount; // of those, still open with the day already past
+
+    public DayOverview(String date, double income, double expense, int diaryCount, String mood, int dueCount,
+            int overdueCount) {
+        this.date = date;
+        this.income = income;
+        this.expense = expense;
+        this.diaryCount = diaryCount;
+        this.mood = mood;
+        this.dueCount = dueCount;
+        this.overdueCount = overdueCount;
+    }
+
+    public String getDate() { return date; }
+    public double getIncome() { return income; }
+    public double getExpense() { return expense; }
+    public int getDiaryCount() { return diaryCount; }
+    public String getMood() { return mood; }
+    public int getDueCount() { return dueCount; }
+    public int getOverdueCount() { return overdueCount; }
+}
@@ -6,13 +6,38 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class DiaryAdapter extends RecyclerView.Adapter<DiaryAdapter.DiaryViewHolder> {
 
-    private List<DiaryEntry> diaryList;
+    static final DiffUtil.ItemCallback<DiaryEntry> DIFF_CALLBACK = new DiffUtil.ItemCallback<DiaryEntry>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull DiaryEntry oldEntry, @NonNull DiaryEntry newEntry) {
+            return oldEntry.getId() == newEntry.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull DiaryEntry oldEntry, @NonNull DiaryEntry newEntry) {
+            return Objects.equals(oldEntry.getTitle(), newEntry.getTitle())
+                    && Objects.equals(oldEntry.getContent(), newEntry.getContent())
+                    && Objects.equals(oldEntry.getMood(), newEntry.getMood())
+                    && Objects.equals(oldEntry.getDate(), newEntry.getDate());
+        }
+    };
+
+    private final AsyncListDiffer<DiaryEntry> differ = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+            ListDiffing.config(DIFF_CALLBACK));
+    // Previews show two lines; measuring more of a long entry than that only costs time
+    private static final int PREVIEW_LENGTH = 200;
+
+    private final PrecomputedTextCache previews = new PrecomputedTextCache(64);
     private OnDiaryClickListener listener;
 
     public interface OnDiaryClickListener {
@@ -22,8 +47,9 @@ public class DiaryAdapter extends RecyclerView.Adapter<DiaryAdapter.DiaryViewHol
     }
 
     public DiaryAdapter(List<DiaryEntry> diaryList, OnDiaryClickListener listener) {
-        this.diaryList = diaryList;
         this.listener = listener;
+        setHasStableIds(true);
+        differ.submitList(new ArrayList<>(diaryList));
     }
 
     @NonNull
@@ -31,42 +57,62 @@ public class DiaryAdapter extends RecyclerView.Adapter<DiaryAdapter.DiaryViewHol
     public DiaryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_diary, parent, false);
-        return new DiaryViewHolder(view);
+        DiaryViewHolder holder = new DiaryViewHolder(view);
+        // Resolve the entry when clicked; the one at bind time may since have been replaced
+        holder.itemView.setOnClickListener(v -> {
+            DiaryEntry entry = entryAt(holder);
+            if (entry != null && listener != null) {
+                listener.onDiaryClick(entry);
+            }
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            DiaryEntry entry = entryAt(holder);
+            if (entry != null && listener != null) {
+                listener.onDiaryLongClick(entry);
+            }
+            return true;
+        });
+        return holder;
+    }
+
+    private DiaryEntry entryAt(DiaryViewHolder holder) {
+        int position = holder.getAdapterPosition();
+        return position == RecyclerView.NO_POSITION ? null : differ.getCurrentList().get(position);
     }
 
     @Override
     public void onBindViewHolder(@NonNull DiaryViewHolder holder, int position) {
-        DiaryEntry entry = diaryList.get(position);
+        DiaryEntry entry = differ.getCurrentList().get(position);
 
         holder.tvDate.setText(entry.getDate());
         holder.tvMood.setText(entry.getMoodEmoji());
         holder.tvTitle.setText(entry.getTitle() != null && !entry.getTitle().isEmpty()
                 ? entry.getTitle()
                 : "无标题");
-        holder.tvContent.setText(entry.getContent());
+        previews.setText(holder.tvContent, entry.getId(), preview(entry.getContent()));
+    }
 
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onDiaryClick(entry);
-            }
-        });
+    private static String preview(String content) {
+        if (content == null)
+            return "";
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+    }
 
-        holder.itemView.setOnLongClickListener(v -> {
-            if (listener != null) {
-                listener.onDiaryLongClick(entry);
-            }
-            return true;
-        });
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
     @Override
     public int getItemCount() {
-        return diaryList.size();
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Replace the entries. The diff runs in the background and only changed rows rebind.
+     */
     public void updateData(List<DiaryEntry> newList) {
-        this.diaryList = newList;
-        notifyDataSetChanged();
+        differ.submitList(new ArrayList<>(newList));
     }
 
     static class DiaryViewHolder extends RecyclerView.ViewHolder {
@@ -77,6 +77,10 @@ public class DiaryEntry {
 
     // Get mood emoji for display
     public String getMoodEmoji() {
+        return moodEmoji(mood);
+    }
+
+    public static String moodEmoji(String mood) {
         if (mood == null)
             return "😐";
         switch (mood) {
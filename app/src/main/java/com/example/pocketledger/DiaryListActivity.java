@@ -18,10 +18,8 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -128,11 +126,12 @@ public class DiaryListActivity extends AppCompatActivity implements TodoAdapter.
             case 0: // All tasks
                 todoList = dbHelper.getAllTodoItems();
                 break;
-            case 1: // By status - show in progress first
-                todoList = dbHelper.getTodoItemsByStatus(TodoItem.STATUS_IN_PROGRESS);
-                todoList.addAll(dbHelper.getTodoItemsByStatus(TodoItem.STATUS_NOT_STARTED));
-                todoList.addAll(dbHelper.getTodoItemsByStatus(TodoItem.STATUS_COMPLETED));
-                break;
+            case 1: // By status - show in progress first, under a header per status
+                TodoSections sections = dbHelper.getTodoItemsGroupedByStatus();
+                todoList = sections.getItems();
+                adapter.updateSections(sections);
+                updateEmptyState();
+                return;
             case 2: // Today's tasks
                 todoList = dbHelper.getTodayTodoItems();
                 break;
@@ -249,7 +248,7 @@ public class DiaryListActivity extends AppCompatActivity implements TodoAdapter.
                     else if (priorityId == R.id.rbLow)
                         priority = TodoItem.PRIORITY_LOW;
 
-                    String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+                    String today = DateKeys.todayString();
 
                     if (isEdit) {
                         existingItem.setTitle(title);
@@ -282,7 +281,11 @@ public class DiaryListActivity extends AppCompatActivity implements TodoAdapter.
 
     @Override
     public void onTodoClick(TodoItem item) {
-        showAddTaskDialog(item);
+        // List rows carry no description; edit the full row
+        TodoItem full = dbHelper.getTodoItem(item.getId());
+        if (full != null) {
+            showAddTaskDialog(full);
+        }
     }
 
     @Override
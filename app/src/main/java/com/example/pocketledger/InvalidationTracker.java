@@ -0,0 +1,78 @@
+package com.example.pocketledger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-table write counters kept by {@link DatabaseHelper}. Every write bumps the
+ * version of the table it touched; a screen holds a {@link Subscription} to the
+ * tables it shows and, on resume, only queries again if one of them moved.
+ * Derived tables count as their source: the rollups as {@link #TRANSACTIONS},
+ * tags as {@link #TODOS}.
+ */
+public final class InvalidationTracker {
+
+    public static final int TRANSACTIONS = 0;
+    public static final int DIARY = 1;
+    public static final int TODOS = 2;
+    private static final int TABLE_COUNT = 3;
+
+    private final AtomicLongArray versions = new AtomicLongArray(TABLE_COUNT);
+
+    public long getVersion(int table) {
+        return versions.get(table);
+    }
+
+    void invalidate(int table) {
+        versions.incrementAndGet(table);
+    }
+
+    /**
+     * For writes that replace the whole database (restore, change-set replay).
+     */
+    void invalidateAll() {
+        for (int i = 0; i < TABLE_COUNT; i++) {
+            versions.incrementAndGet(i);
+        }
+    }
+
+    public Subscription subscribe(int... tables) {
+        return new Subscription(tables);
+    }
+
+    /**
+     * What one screen last loaded. Main thread only.
+     */
+    public final class Subscription {
+        private final int[] tables;
+        private final long[] seen;
+
+        private Subscription(int[] tables) {
+            this.tables = tables.clone();
+            this.seen = new long[tables.length];
+            Arrays.fill(seen, -1); // Nothing loaded yet
+        }
+
+        /**
+         * Whether any of the tables was written since {@link #markSeen}; always true
+         * before the first call to it.
+         */
+        public boolean hasChanged() {
+            for (int i = 0; i < tables.length; i++) {
+                if (versions.get(tables[i]) != seen[i])
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Record the current versions. Call it before querying: a write that lands
+         * while the query runs then still shows up as a change.
+         */
+        public void markSeen() {
+            for (int i = 0; i < tables.length; i++) {
+                seen[i] = versions.get(tables[i]);
+            }
+        }
+    }
+}
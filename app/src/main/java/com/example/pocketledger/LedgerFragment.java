@@ -13,6 +13,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
+import androidx.core.widget.NestedScrollView;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -31,21 +32,25 @@ public class LedgerFragment extends Fragment {
 
     private TextView tvTotalBalance, tvIncome, tvExpense, tvBudgetLeft;
     private RecyclerView recyclerView;
+    private NestedScrollView scrollView;
     private LinearProgressIndicator budgetProgress;
     private LinearLayout layoutStats;
-    private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
     private TransactionAdapter adapter;
 
     private static final String PREFS_NAME = "PocketLedgerPrefs";
     private static final String KEY_BUDGET = "monthly_budget";
     private static final double DEFAULT_BUDGET = 3000.0;
+    private static final int TOP_CATEGORIES = 5;
 
     private double monthlyBudget;
+    private LedgerRepository.Request pendingLoad;
+    private InvalidationTracker.Subscription transactionsSeen;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        dbHelper = DatabaseHelper.getInstance(requireContext());
+        repository = LedgerRepository.getInstance(requireContext());
         monthlyBudget = requireContext().getSharedPreferences(PREFS_NAME, 0)
                 .getLong(KEY_BUDGET, Double.doubleToLongBits(DEFAULT_BUDGET));
         monthlyBudget = Double.longBitsToDouble((long) monthlyBudget);
@@ -73,6 +78,7 @@ public class LedgerFragment extends Fragment {
         budgetProgress = view.findViewById(R.id.budgetProgress);
         layoutStats = view.findViewById(R.id.layoutStats);
         recyclerView = view.findViewById(R.id.recyclerView);
+        scrollView = view.findViewById(R.id.scrollView);
 
         view.findViewById(R.id.layoutFabAdd).setOnClickListener(v -> {
             Intent intent = new Intent(requireContext(), AddTransactionActivity.class);
@@ -100,41 +106,99 @@ public class LedgerFragment extends Fragment {
     }
 
     private void setupRecyclerView() {
-        List<Transaction> list = dbHelper.getAllTransactions();
-        adapter = new TransactionAdapter(list, id -> {
+        adapter = new TransactionAdapter(new ArrayList<>(), id -> {
             new AlertDialog.Builder(requireContext())
                     .setTitle("删除交易")
                     .setMessage("确定要删除这条记录吗？")
                     .setPositiveButton("删除", (dialog, which) -> {
-                        dbHelper.deleteTransaction(id);
-                        refreshData();
+                        repository.deleteTransaction(this, id, result -> {
+                            adapter.removeTransaction(id);
+                            refreshSummary();
+                        });
                     })
                     .setNegativeButton("取消", null)
                     .show();
         });
+        adapter.setPageLoader(new TransactionAdapter.PageLoader() {
+            @Override
+            public void loadOlder(Transaction anchor, int limit,
+                    LedgerRepository.Callback<List<Transaction>> callback) {
+                if (anchor == null) {
+                    repository.getTransactionsPage(LedgerFragment.this, null, 0, limit, callback);
+                } else {
+                    repository.getTransactionsPage(LedgerFragment.this, anchor.getDate(), anchor.getId(), limit,
+                            callback);
+                }
+            }
+
+            @Override
+            public void loadNewer(Transaction anchor, int limit,
+                    LedgerRepository.Callback<List<Transaction>> callback) {
+                repository.getTransactionsPageAfter(LedgerFragment.this, anchor.getDate(), anchor.getId(), limit,
+                        callback);
+            }
+        });
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         recyclerView.setAdapter(adapter);
+        new NestedScrollPager(scrollView, recyclerView, adapter);
+        transactionsSeen = repository.getDatabaseHelper().getInvalidationTracker()
+                .subscribe(InvalidationTracker.TRANSACTIONS);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        refreshData();
+        // Swiping back to this tab keeps the list unless a transaction was written since
+        if (transactionsSeen.hasChanged() || adapter.isLoading()) {
+            refreshData();
+        } else {
+            refreshSummary();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // Drop loads that would land after the user has left this tab
+        repository.cancelAll(this);
     }
 
     private void refreshData() {
-        double income = dbHelper.getMonthlyIncome();
-        double expense = dbHelper.getMonthlyExpense();
-        double balance = income - expense;
+        // Paging cancelled in onPause leaves the window half-loaded, so restart from the top
+        transactionsSeen.markSeen();
+        adapter.reload();
+        refreshSummary();
+    }
+
+    private void refreshSummary() {
+        if (pendingLoad != null) {
+            pendingLoad.cancel();
+            pendingLoad = null;
+        }
+        String yearMonth = DateKeys.currentMonth();
+        // Repeat visits are served straight from the month cache without a thread hop
+        DashboardSummary cached = repository.getDatabaseHelper().getCachedDashboardSummary(yearMonth);
+        if (cached != null) {
+            bindSummary(cached);
+            return;
+        }
+        pendingLoad = repository.getDashboardSummary(this, yearMonth, this::bindSummary);
+    }
+
+    private void bindSummary(DashboardSummary summary) {
+        if (getView() == null)
+            return;
+        double income = summary.getIncome();
+        double expense = summary.getExpense();
 
-        tvTotalBalance.setText(String.format(Locale.CHINA, "¥%.2f", balance));
+        tvTotalBalance.setText(String.format(Locale.CHINA, "¥%.2f", summary.getBalance()));
         tvIncome.setText(String.format(Locale.CHINA, "¥%.2f", income));
         tvExpense.setText(String.format(Locale.CHINA, "¥%.2f", expense));
 
-        double budgetLeft = monthlyBudget - expense;
+        double budgetLeft = summary.getBudgetLeft(monthlyBudget);
         tvBudgetLeft.setText(String.format(Locale.CHINA, "¥%.0f", Math.max(0, budgetLeft)));
 
-        int progress = monthlyBudget > 0 ? (int) ((expense / monthlyBudget) * 100) : 0;
+        int progress = summary.getBudgetProgress(monthlyBudget);
         budgetProgress.setProgress(Math.min(progress, 100));
 
         if (progress > 100) {
@@ -145,17 +209,15 @@ public class LedgerFragment extends Fragment {
             budgetProgress.setIndicatorColor(ContextCompat.getColor(requireContext(), R.color.primary));
         }
 
-        adapter.updateData(dbHelper.getAllTransactions());
-        updateCategoryStats();
+        updateCategoryStats(summary.getTopCategories(TOP_CATEGORIES));
     }
 
-    private void updateCategoryStats() {
+    private void updateCategoryStats(List<CategoryStat> stats) {
         layoutStats.removeAllViews();
-        List<CategoryStat> stats = dbHelper.getCategoryStats();
         int[] colors = { R.color.primary, R.color.income_green, R.color.income_yellow,
                 R.color.expense_red, R.color.accent };
 
-        for (int i = 0; i < Math.min(stats.size(), 5); i++) {
+        for (int i = 0; i < stats.size(); i++) {
             CategoryStat stat = stats.get(i);
             View statView = LayoutInflater.from(requireContext())
                     .inflate(R.layout.item_category_stat, layoutStats, false);
@@ -191,7 +253,7 @@ public class LedgerFragment extends Fragment {
                                     .edit()
                                     .putLong(KEY_BUDGET, Double.doubleToLongBits(monthlyBudget))
                                     .apply();
-                            refreshData();
+                            refreshSummary();
                             Toast.makeText(requireContext(), "预算已更新", Toast.LENGTH_SHORT).show();
                         } catch (NumberFormatException e) {
                             Toast.makeText(requireContext(), "请输入有效金额", Toast.LENGTH_SHORT).show();
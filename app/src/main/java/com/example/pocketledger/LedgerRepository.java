@@ -0,0 +1,543 @@
+package com.example.pocketledger;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Async facade in front of {@link DatabaseHelper}.
+ *
+ * Reads run on a small bounded pool, writes are serialized on a single worker
+ * thread, and every result is posted back to the main looper. Each request is
+ * registered against an owner (usually the calling Fragment/Activity) so that
+ * stale loads can be dropped with {@link #cancelAll(Object)} when the screen
+ * pauses or the user switches tabs.
+ */
+public class LedgerRepository {
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        /**
+         * Called on the main thread instead of {@link #onResult} when the request threw,
+         * or was dropped from a full read queue. Not called once the request is cancelled.
+         */
+        default void onFailure() {
+        }
+    }
+
+    /**
+     * Handle for a submitted request. Cancelling a read removes it from the
+     * queue; cancelling a write only drops its callback, the write itself
+     * still completes so no data is lost.
+     */
+    public static final class Request {
+        private final Object owner;
+        private final boolean read;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Request(Object owner, boolean read) {
+            this.owner = owner;
+            this.read = read;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            // A queued write must still run, only its callback is skipped
+            Future<?> f = future;
+            if (f != null && read) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private static final int READ_THREADS = 2;
+    private static final int READ_QUEUE_CAPACITY = 32;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // About a year of calendar pages either side of where the user is flipping
+    private static final int MONTH_CACHE_SIZE = 12;
+
+    private static volatile LedgerRepository instance;
+
+    public static LedgerRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LedgerRepository.class) {
+                if (instance == null) {
+                    instance = new LedgerRepository(DatabaseHelper.getInstance(context));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor readExecutor;
+    private final ThreadPoolExecutor writeExecutor;
+    private final Map<Object, Set<Request>> requestsByOwner = new HashMap<>();
+    private final LruCache<String, MonthOverview> monthCache = new LruCache<>(MONTH_CACHE_SIZE);
+    // Fair, so reads queued behind a waiting writeExclusive do not starve it
+    private final ReentrantReadWriteLock readGate = new ReentrantReadWriteLock(true);
+
+    LedgerRepository(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+
+        // When the read queue is full the oldest queued load is dropped: it is
+        // the one most likely to have been superseded by a newer request.
+        readExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(READ_QUEUE_CAPACITY),
+                new NamedThreadFactory("ledger-read"),
+                new FailOldestPolicy());
+        readExecutor.allowCoreThreadTimeOut(true);
+
+        // Writes must never be dropped, so they get an unbounded FIFO on one thread
+        writeExecutor = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("ledger-write"));
+        writeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public DatabaseHelper getDatabaseHelper() {
+        return dbHelper;
+    }
+
+    // ==================== Generic submission ====================
+
+    public <T> Request read(Object owner, Callable<T> query, Callback<T> callback) {
+        return submit(readExecutor, owner, query, callback);
+    }
+
+    public <T> Request write(Object owner, Callable<T> operation, Callback<T> callback) {
+        return submit(writeExecutor, owner, operation, callback);
+    }
+
+    /**
+     * A write that swaps the database files under every connection, such as a
+     * restore. Reads are held back and the running ones waited for before it
+     * starts, and every cached result is dropped before reads resume.
+     */
+    public <T> Request writeExclusive(Object owner, Callable<T> operation, Callback<T> callback) {
+        return write(owner, () -> {
+            readGate.writeLock().lock();
+            try {
+                return operation.call();
+            } finally {
+                monthCache.evictAll();
+                dbHelper.getInvalidationTracker().invalidateAll();
+                readGate.writeLock().unlock();
+            }
+        }, callback);
+    }
+
+    /**
+     * Cancel every outstanding request registered by the given owner.
+     */
+    public void cancelAll(Object owner) {
+        Set<Request> requests;
+        synchronized (requestsByOwner) {
+            requests = requestsByOwner.remove(owner);
+        }
+        if (requests == null)
+            return;
+        for (Request request : requests) {
+            request.cancel();
+        }
+        // Cancelled FutureTasks stay queued until purged
+        readExecutor.purge();
+    }
+
+    private <T> Request submit(ThreadPoolExecutor executor, Object owner, Callable<T> task, Callback<T> callback) {
+        Request request = new Request(owner, executor == readExecutor);
+        register(request);
+        RequestTask future = new RequestTask(request, callback, () -> {
+            if (request.isCancelled() && executor == readExecutor) {
+                unregister(request);
+                return;
+            }
+            T result;
+            boolean reading = executor == readExecutor;
+            if (reading) {
+                // Held while the query runs so that writeExclusive can wait it out
+                readGate.readLock().lock();
+            }
+            try {
+                result = task.call();
+                if (!reading) {
+                    dbHelper.optimizeIfDue();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail(request, callback);
+                return;
+            } finally {
+                if (reading) {
+                    readGate.readLock().unlock();
+                }
+            }
+            mainHandler.post(() -> {
+                unregister(request);
+                if (!request.isCancelled() && callback != null) {
+                    callback.onResult(result);
+                }
+            });
+        });
+        request.future = future;
+        executor.execute(future);
+        return request;
+    }
+
+    // Unregister a request that will never produce a result and tell its caller,
+    // so nothing waits on it (a list stuck "loading" a page that will not come)
+    private void fail(Request request, Callback<?> callback) {
+        mainHandler.post(() -> {
+            unregister(request);
+            if (!request.isCancelled() && callback != null) {
+                callback.onFailure();
+            }
+        });
+    }
+
+    // Keeps the request with its queued task so a dropped task can still be failed
+    private static final class RequestTask extends FutureTask<Void> {
+        final Request request;
+        final Callback<?> callback;
+
+        RequestTask(Request request, Callback<?> callback, Runnable body) {
+            super(body, null);
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    // DiscardOldestPolicy, except that the dropped request is failed rather than left
+    // registered with a callback that never comes
+    private final class FailOldestPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                drop(r);
+                return;
+            }
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+            executor.execute(r);
+        }
+
+        private void drop(Runnable r) {
+            if (r instanceof RequestTask) {
+                RequestTask task = (RequestTask) r;
+                task.cancel(false);
+                fail(task.request, task.callback);
+            }
+        }
+    }
+
+    private void register(Request request) {
+        if (request.owner == null)
+            return;
+        synchronized (requestsByOwner) {
+            Set<Request> set = requestsByOwner.get(request.owner);
+            if (set == null) {
+                set = new HashSet<>();
+                requestsByOwner.put(request.owner, set);
+            }
+            set.add(request);
+        }
+    }
+
+    private void unregister(Request request) {
+        if (request.owner == null)
+            return;
+        synchronized (requestsByOwner) {
+            Set<Request> set = requestsByOwner.get(request.owner);
+            if (set != null) {
+                set.remove(request);
+                if (set.isEmpty()) {
+                    requestsByOwner.remove(request.owner);
+                }
+            }
+        }
+    }
+
+    // ==================== Transactions ====================
+
+    public Request addTransaction(Object owner, Transaction transaction, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.addTransaction(transaction), callback);
+    }
+
+    public Request deleteTransaction(Object owner, int id, Callback<Void> callback) {
+        return write(owner, () -> {
+            dbHelper.deleteTransaction(id);
+            return null;
+        }, callback);
+    }
+
+    public Request getAllTransactions(Object owner, Callback<List<Transaction>> callback) {
+        return read(owner, dbHelper::getAllTransactions, callback);
+    }
+
+    public Request getTransactionsPage(Object owner, String beforeDate, int beforeId, int limit,
+            Callback<List<Transaction>> callback) {
+        return read(owner, () -> dbHelper.getTransactionsPage(beforeDate, beforeId, limit), callback);
+    }
+
+    public Request getTransactionsPageAfter(Object owner, String afterDate, int afterId, int limit,
+            Callback<List<Transaction>> callback) {
+        return read(owner, () -> dbHelper.getTransactionsPageAfter(afterDate, afterId, limit), callback);
+    }
+
+    public Request getTransactionsByDate(Object owner, String date, Callback<List<Transaction>> callback) {
+        return read(owner, () -> dbHelper.getTransactionsByDate(date), callback);
+    }
+
+    public Request getMonthlyIncome(Object owner, Callback<Double> callback) {
+        return read(owner, dbHelper::getMonthlyIncome, callback);
+    }
+
+    public Request getMonthlyExpense(Object owner, Callback<Double> callback) {
+        return read(owner, dbHelper::getMonthlyExpense, callback);
+    }
+
+    public Request getMonthlyDailySummaries(Object owner, String yearMonth,
+            Callback<Map<String, DailyTotal>> callback) {
+        return read(owner, () -> dbHelper.getMonthlyDailySummaries(yearMonth), callback);
+    }
+
+    public Request getDashboardSummary(Object owner, String yearMonth, Callback<DashboardSummary> callback) {
+        return read(owner, () -> dbHelper.getDashboardSummary(yearMonth), callback);
+    }
+
+    public Request getCategoryStats(Object owner, Callback<List<CategoryStat>> callback) {
+        return read(owner, dbHelper::getCategoryStats, callback);
+    }
+
+    // ==================== Calendar ====================
+
+    /**
+     * Per-day activity for a month ("yyyy-MM"). Results are kept in an LRU cache
+     * stamped with the table versions and the day they were read at, so any later
+     * write (or midnight, which moves the overdue counts) makes them stale without
+     * touching the cache.
+     */
+    public Request getMonthOverview(Object owner, String yearMonth, Callback<Map<String, DayOverview>> callback) {
+        // Read the version before querying: a write that lands mid-query leaves the entry stale
+        long version = overviewVersion();
+        int today = DateKeys.today();
+        return read(owner, () -> dbHelper.getMonthOverview(yearMonth), new Callback<Map<String, DayOverview>>() {
+            @Override
+            public void onResult(Map<String, DayOverview> overview) {
+                monthCache.put(yearMonth, new MonthOverview(version, today, overview));
+                if (callback != null) {
+                    callback.onResult(overview);
+                }
+            }
+
+            @Override
+            public void onFailure() {
+                if (callback != null) {
+                    callback.onFailure();
+                }
+            }
+        });
+    }
+
+    /**
+     * The cached overview of a month, or null if it was never loaded, was evicted,
+     * or is stale. The map is shared: do not modify it.
+     */
+    public Map<String, DayOverview> getCachedMonthOverview(String yearMonth) {
+        MonthOverview cached = monthCache.get(yearMonth);
+        if (cached == null)
+            return null;
+        if (cached.version != overviewVersion() || cached.today != DateKeys.today()) {
+            monthCache.remove(yearMonth);
+            return null;
+        }
+        return cached.days;
+    }
+
+    /**
+     * Load a month into the cache in the background unless it is already there.
+     *
+     * @return the request, or null if the month was cached
+     */
+    public Request prefetchMonthOverview(Object owner, String yearMonth) {
+        if (getCachedMonthOverview(yearMonth) != null)
+            return null;
+        return getMonthOverview(owner, yearMonth, null);
+    }
+
+    /**
+     * Expense cents per day of {@code year}, for the year heatmap.
+     */
+    public Request getYearDailyExpenses(Object owner, int year, Callback<long[]> callback) {
+        return read(owner, () -> dbHelper.getYearDailyExpenses(year), callback);
+    }
+
+    // Versions only ever grow, so their sum changes whenever any of them does
+    private long overviewVersion() {
+        InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+        return tracker.getVersion(InvalidationTracker.TRANSACTIONS) + tracker.getVersion(InvalidationTracker.DIARY)
+                + tracker.getVersion(InvalidationTracker.TODOS);
+    }
+
+    private static final class MonthOverview {
+        final long version;
+        final int today;
+        final Map<String, DayOverview> days;
+
+        MonthOverview(long version, int today, Map<String, DayOverview> days) {
+            this.version = version;
+            this.today = today;
+            this.days = days;
+        }
+    }
+
+    // ==================== Search ====================
+
+    public Request search(Object owner, String query, int offset, int limit,
+            Callback<List<SearchResult>> callback) {
+        return read(owner, () -> dbHelper.search(query, offset, limit), callback);
+    }
+
+    // ==================== Diary ====================
+
+    public Request addDiaryEntry(Object owner, DiaryEntry entry, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.addDiaryEntry(entry), callback);
+    }
+
+    public Request updateDiaryEntry(Object owner, DiaryEntry entry, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.updateDiaryEntry(entry), callback);
+    }
+
+    public Request deleteDiaryEntry(Object owner, int id, Callback<Void> callback) {
+        return write(owner, () -> {
+            dbHelper.deleteDiaryEntry(id);
+            return null;
+        }, callback);
+    }
+
+    public Request getAllDiaryEntries(Object owner, Callback<List<DiaryEntry>> callback) {
+        return read(owner, dbHelper::getAllDiaryEntries, callback);
+    }
+
+    public Request getDiaryEntriesByDate(Object owner, String date, Callback<List<DiaryEntry>> callback) {
+        return read(owner, () -> dbHelper.getDiaryEntriesByDate(date), callback);
+    }
+
+    public Request getDiaryCount(Object owner, Callback<Integer> callback) {
+        return read(owner, dbHelper::getDiaryCount, callback);
+    }
+
+    // ==================== Todos ====================
+
+    public Request addTodoItem(Object owner, TodoItem item, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.addTodoItem(item), callback);
+    }
+
+    public Request updateTodoItem(Object owner, TodoItem item, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.updateTodoItem(item), callback);
+    }
+
+    public Request updateTodoStatus(Object owner, int id, String status, Callback<Boolean> callback) {
+        return write(owner, () -> dbHelper.updateTodoStatus(id, status), callback);
+    }
+
+    public Request deleteTodoItem(Object owner, int id, Callback<Void> callback) {
+        return write(owner, () -> {
+            dbHelper.deleteTodoItem(id);
+            return null;
+        }, callback);
+    }
+
+    public Request getAllTodoItems(Object owner, Callback<List<TodoItem>> callback) {
+        return read(owner, dbHelper::getAllTodoItems, callback);
+    }
+
+    public Request getTodoItemsByStatus(Object owner, String status, Callback<List<TodoItem>> callback) {
+        return read(owner, () -> dbHelper.getTodoItemsByStatus(status), callback);
+    }
+
+    public Request getTodayTodoItems(Object owner, Callback<List<TodoItem>> callback) {
+        return read(owner, dbHelper::getTodayTodoItems, callback);
+    }
+
+    public Request getTodoItemsGroupedByStatus(Object owner, Callback<TodoSections> callback) {
+        return read(owner, dbHelper::getTodoItemsGroupedByStatus, callback);
+    }
+
+    public Request getTodoItemsByTag(Object owner, String tag, Callback<List<TodoItem>> callback) {
+        return read(owner, () -> dbHelper.getTodoItemsByTag(tag), callback);
+    }
+
+    public Request getTagCounts(Object owner, Callback<List<TagCount>> callback) {
+        return read(owner, dbHelper::getTagCounts, callback);
+    }
+
+    public Request getTodoItem(Object owner, int id, Callback<TodoItem> callback) {
+        return read(owner, () -> dbHelper.getTodoItem(id), callback);
+    }
+
+    public Request getTodoItemsByDate(Object owner, String date, Callback<List<TodoItem>> callback) {
+        return read(owner, () -> dbHelper.getTodoItemsByDate(date), callback);
+    }
+
+    public Request getTodoCount(Object owner, Callback<Integer> callback) {
+        return read(owner, dbHelper::getTodoCount, callback);
+    }
+
+    public Request getPendingTodoCount(Object owner, Callback<Integer> callback) {
+        return read(owner, dbHelper::getPendingTodoCount, callback);
+    }
+
+    public Request getTodoCountByStatus(Object owner, String status, Callback<Integer> callback) {
+        return read(owner, () -> dbHelper.getTodoCountByStatus(status), callback);
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(() -> {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
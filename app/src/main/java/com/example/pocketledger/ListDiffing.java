@@ -0,0 +1,38 @@
+package com.example.pocketledger;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Background diffing shared by the RecyclerView adapters. Replacing a list
+ * computes the DiffUtil result on one worker thread and dispatches only the
+ * resulting inserts, moves, removals and changes on the main thread, so a
+ * single deleted or toggled row no longer rebinds the whole screen.
+ */
+final class ListDiffing {
+
+    // Lists are at most a few hundred rows and replaced on user actions; one thread is plenty
+    static final Executor EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "list-diff");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private ListDiffing() {
+    }
+
+    static <T> AsyncDifferConfig<T> config(DiffUtil.ItemCallback<T> callback) {
+        return new AsyncDifferConfig.Builder<>(callback).setBackgroundThreadExecutor(EXECUTOR).build();
+    }
+}
@@ -30,6 +30,7 @@ public class MainActivity extends AppCompatActivity {
     private LinearProgressIndicator budgetProgress;
     private LinearLayout layoutStats;
     private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
     private TransactionAdapter adapter;
 
     private static final String PREFS_NAME = "PocketLedgerPrefs";
@@ -44,6 +45,7 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         dbHelper = DatabaseHelper.getInstance(this);
+        repository = LedgerRepository.getInstance(this);
 
         // Load saved budget
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
@@ -105,7 +107,33 @@ public class MainActivity extends AppCompatActivity {
     private void setupRecyclerView() {
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         adapter = new TransactionAdapter(new ArrayList<>(), this::showDeleteDialog);
+        adapter.setPageLoader(new TransactionAdapter.PageLoader() {
+            @Override
+            public void loadOlder(Transaction anchor, int limit,
+                    LedgerRepository.Callback<List<Transaction>> callback) {
+                if (anchor == null) {
+                    repository.getTransactionsPage(MainActivity.this, null, 0, limit, callback);
+                } else {
+                    repository.getTransactionsPage(MainActivity.this, anchor.getDate(), anchor.getId(), limit,
+                            callback);
+                }
+            }
+
+            @Override
+            public void loadNewer(Transaction anchor, int limit,
+                    LedgerRepository.Callback<List<Transaction>> callback) {
+                repository.getTransactionsPageAfter(MainActivity.this, anchor.getDate(), anchor.getId(), limit,
+                        callback);
+            }
+        });
         recyclerView.setAdapter(adapter);
+        new NestedScrollPager(findViewById(R.id.scrollView), recyclerView, adapter);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        repository.cancelAll(this);
     }
 
     @Override
@@ -139,8 +167,7 @@ public class MainActivity extends AppCompatActivity {
 
             updateCategoryStats();
 
-            List<Transaction> list = dbHelper.getAllTransactions();
-            adapter.updateData(list);
+            adapter.reload();
         } catch (Exception e) {
             e.printStackTrace();
         }
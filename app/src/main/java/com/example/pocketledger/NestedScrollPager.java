@@ -0,0 +1,89 @@
+package com.example.pocketledger;
+
+import android.view.View;
+
+import androidx.core.widget.NestedScrollView;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Drives {@link TransactionAdapter} paging for a RecyclerView that lives inside a
+ * NestedScrollView (the dashboard layouts). The RecyclerView does not scroll on its
+ * own there, so page loads are triggered from the outer scroll position, and the
+ * scroll offset is corrected whenever rows are added or evicted above the viewport.
+ */
+public class NestedScrollPager implements TransactionAdapter.WindowListener {
+
+    private final NestedScrollView scrollView;
+    private final RecyclerView recyclerView;
+    private final TransactionAdapter adapter;
+    private final int prefetchDistance;
+
+    public NestedScrollPager(NestedScrollView scrollView, RecyclerView recyclerView, TransactionAdapter adapter) {
+        this.scrollView = scrollView;
+        this.recyclerView = recyclerView;
+        this.adapter = adapter;
+        // Roughly one screen ahead
+        this.prefetchDistance = scrollView.getResources().getDisplayMetrics().heightPixels;
+
+        // Item animations would change the list height over several frames and
+        // make the offset correction below inaccurate
+        recyclerView.setItemAnimator(null);
+        adapter.setWindowListener(this);
+        scrollView.setOnScrollChangeListener(
+                (NestedScrollView.OnScrollChangeListener) (v, scrollX, scrollY, oldScrollX, oldScrollY) -> {
+                    onScrolled(scrollY);
+                });
+    }
+
+    private void onScrolled(int scrollY) {
+        View content = scrollView.getChildAt(0);
+        if (content == null)
+            return;
+        int distanceToBottom = content.getBottom() - (scrollView.getHeight() + scrollY);
+        if (distanceToBottom < prefetchDistance) {
+            adapter.loadOlder();
+        }
+        if (adapter.hasNewer() && scrollY < recyclerView.getTop() + prefetchDistance) {
+            adapter.loadNewer();
+        }
+    }
+
+    @Override
+    public void beforeHeadRemoved(int count) {
+        // The rows are still laid out at this point, so their height is known
+        int removedHeight = heightOfFirstRows(count);
+        if (removedHeight > 0) {
+            scrollView.post(() -> scrollView.scrollBy(0, -removedHeight));
+        }
+    }
+
+    @Override
+    public void afterHeadInserted(int count) {
+        recyclerView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                    int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                recyclerView.removeOnLayoutChangeListener(this);
+                int insertedHeight = heightOfFirstRows(count);
+                if (insertedHeight > 0) {
+                    scrollView.scrollBy(0, insertedHeight);
+                }
+            }
+        });
+    }
+
+    private int heightOfFirstRows(int count) {
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        if (lm == null)
+            return 0;
+        int height = 0;
+        for (int i = 0; i < count; i++) {
+            View row = lm.findViewByPosition(i);
+            if (row != null) {
+                RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) row.getLayoutParams();
+                height += row.getHeight() + lp.topMargin + lp.bottomMargin;
+            }
+        }
+        return height;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pocketledger;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lays out long row text off the main thread. Each item id keeps the
+ * {@link PrecomputedTextCompat} for the text it was last bound with; binding
+ * different text (the item was edited) or binding into a differently styled
+ * view measures again. A row bound before its measurement is done hands the
+ * pending result to the view, which only waits for it if it is measured first.
+ */
+final class PrecomputedTextCache {
+
+    // Measuring is independent of diffing; keep it off the list-diff thread
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "text-measure");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Entry {
+        final CharSequence text;
+        final PrecomputedTextCompat.Params params;
+        final Future<PrecomputedTextCompat> result;
+
+        Entry(CharSequence text, PrecomputedTextCompat.Params params, Future<PrecomputedTextCompat> result) {
+            this.text = text;
+            this.params = params;
+            this.result = result;
+        }
+    }
+
+    private final LruCache<Long, Entry> entries;
+
+    /**
+     * @param maxEntries a few screens' worth of rows; older entries are measured again if they come back
+     */
+    PrecomputedTextCache(int maxEntries) {
+        entries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Show {@code text} for item {@code id} in {@code view}. Main thread only.
+     */
+    void setText(TextView view, long id, CharSequence text) {
+        if (TextUtils.isEmpty(text)) {
+            setPlainText(view, text);
+            return;
+        }
+        PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(view);
+        Entry entry = entries.get(id);
+        if (entry == null || !TextUtils.equals(entry.text, text) || !entry.params.equals(params)) {
+            entry = new Entry(text, params, PrecomputedTextCompat.getTextFuture(text, params, EXECUTOR));
+            entries.put(id, entry);
+        }
+
+        if (entry.result.isDone()) {
+            try {
+                PrecomputedTextCompat precomputed = entry.result.get();
+                if (view instanceof AppCompatTextView) {
+                    ((AppCompatTextView) view).setTextFuture(null);
+                }
+                TextViewCompat.setPrecomputedText(view, precomputed);
+                return;
+            } catch (ExecutionException | InterruptedException e) {
+                e.printStackTrace();
+                entries.remove(id);
+            }
+        } else if (view instanceof AppCompatTextView) {
+            ((AppCompatTextView) view).setTextFuture(entry.result);
+            return;
+        }
+        setPlainText(view, text);
+    }
+
+    /**
+     * Drop the measured text of a removed item.
+     */
+    void invalidate(long id) {
+        entries.remove(id);
+    }
+
+    // A future still pending on the view would replace this text when it is next measured
+    private static void setPlainText(TextView view, CharSequence text) {
+        if (view instanceof AppCompatTextView) {
+            ((AppCompatTextView) view).setTextFuture(null);
+        }
+        view.setText(text);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.pocketledger;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+/**
+ * Ongoing progress notification for long data jobs (export, backup).
+ * Safe to call from a worker thread; updates are throttled because the
+ * system drops notifications posted faster than a few per second anyway.
+ * Does nothing if the user has turned notifications off.
+ */
+public class ProgressNotifier {
+
+    private static final String CHANNEL_ID = "data_transfer";
+    private static final long MIN_UPDATE_INTERVAL_MS = 500;
+
+    private final Context context;
+    private final NotificationManagerCompat manager;
+    private final int notificationId;
+    private final NotificationCompat.Builder builder;
+    private long lastUpdate;
+
+    public ProgressNotifier(Context context, int notificationId, String title, int icon) {
+        this.context = context.getApplicationContext();
+        this.manager = NotificationManagerCompat.from(this.context);
+        this.notificationId = notificationId;
+        createChannel();
+        builder = new NotificationCompat.Builder(this.context, CHANNEL_ID)
+                .setSmallIcon(icon)
+                .setContentTitle(title)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW);
+    }
+
+    public void update(int done, int total) {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastUpdate < MIN_UPDATE_INTERVAL_MS)
+            return;
+        lastUpdate = now;
+        builder.setProgress(total, done, total <= 0)
+                .setContentText(total > 0 ? done + " / " + total : String.valueOf(done));
+        post();
+    }
+
+    public void finish(String text) {
+        builder.setProgress(0, 0, false)
+                .setOngoing(false)
+                .setAutoCancel(true)
+                .setContentText(text);
+        post();
+    }
+
+    public void cancel() {
+        manager.cancel(notificationId);
+    }
+
+    private void post() {
+        if (!manager.areNotificationsEnabled())
+            return;
+        try {
+            manager.notify(notificationId, builder.build());
+        } catch (SecurityException e) {
+            // POST_NOTIFICATIONS not granted (Android 13+), progress stays in-app only
+            e.printStackTrace();
+        }
+    }
+
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "数据导入导出",
+                    NotificationManager.IMPORTANCE_LOW);
+            NotificationManager nm = context.getSystemService(NotificationManager.class);
+            if (nm != null) {
+                nm.createNotificationChannel(channel);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.pocketledger;
+
+import android.database.Cursor;
+
+/**
+ * Turns cursor rows into one model type. {@link #prepare} looks the column
+ * indices up by name once per cursor, so {@link #map} is nothing but typed
+ * getters and works with whatever projection the query selected: a column left
+ * out of the SELECT simply maps to null.
+ */
+interface RowMapper<T> {
+
+    /**
+     * Resolve column indices. Called once, before the first row.
+     */
+    void prepare(Cursor cursor);
+
+    T map(Cursor cursor);
+}
@@ -0,0 +1,65 @@
+package com.example.pocketledger;
+
+/**
+ * One hit of {@link DatabaseHelper#search}: a transaction, diary entry or todo,
+ * with a snippet of the best matching text. Matched terms in the snippet are
+ * wrapped in {@link #MATCH_START}/{@link #MATCH_END}.
+ */
+public class SearchResult {
+
+    public static final int KIND_TRANSACTION = 0;
+    public static final int KIND_DIARY = 1;
+    public static final int KIND_TODO = 2;
+
+    public static final String MATCH_START = "【";
+    public static final String MATCH_END = "】";
+
+    private final int kind;
+    private final int id;
+    private final String title;
+    private final String snippet;
+    private final String date;
+    private final double score;
+
+    public SearchResult(int kind, int id, String title, String snippet, String date, double score) {
+        this.kind = kind;
+        this.id = id;
+        this.title = title;
+        this.snippet = snippet;
+        this.date = date;
+        this.score = score;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Category for a transaction, title for a diary entry or todo.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * yyyy-MM-dd
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * BM25 relevance, higher is better. Only comparable within one search.
+     */
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.pocketledger;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled statements for one open {@link SQLiteDatabase}, kept for its whole
+ * lifetime so hot inserts, updates and point queries skip building ContentValues
+ * and SQL strings on every call. A statement holds its bindings between calls, so
+ * callers bind and execute inside {@code synchronized (statement)}.
+ *
+ * {@link DatabaseHelper} drops the cache whenever the database is closed or
+ * reopened; statements compiled against a closed database cannot be reused.
+ */
+final class StatementCache {
+
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    StatementCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    boolean isFor(SQLiteDatabase db) {
+        return this.db == db && db.isOpen();
+    }
+
+    /**
+     * The compiled statement for sql. Pass a constant so the lookup hashes a
+     * String whose hash is already cached.
+     */
+    synchronized SQLiteStatement get(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    synchronized void close() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.pocketledger;
+
+/**
+ * A todo tag and how many tasks carry it, for the tag facets.
+ */
+public class TagCount {
+    private final String name;
+    private final int count;
+
+    public TagCount(String name, int count) {
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -8,6 +8,8 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
 import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -19,10 +21,8 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -33,7 +33,11 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
 
     private RecyclerView rvTodos;
     private View layoutEmptyState;
-    private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
+    private LedgerRepository.Request pendingLoad;
+    private LedgerRepository.Request pendingFacets;
+    // Todo versions the list was last loaded at
+    private InvalidationTracker.Subscription todosSeen;
     private TodoAdapter adapter;
     private List<TodoItem> todoList = new ArrayList<>();
 
@@ -41,10 +45,15 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
     private TextView tabAll, tabByStatus, tabToday, tabList;
     private int currentTab = 0;
 
+    // Tag facets; a selected tag replaces the tab's list until a tab is picked again
+    private HorizontalScrollView scrollTagFacets;
+    private LinearLayout layoutTagFacets;
+    private String selectedTag;
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        dbHelper = DatabaseHelper.getInstance(requireContext());
+        repository = LedgerRepository.getInstance(requireContext());
     }
 
     @Nullable
@@ -69,6 +78,8 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
         tabByStatus = view.findViewById(R.id.tabByStatus);
         tabToday = view.findViewById(R.id.tabToday);
         tabList = view.findViewById(R.id.tabList);
+        scrollTagFacets = view.findViewById(R.id.scrollTagFacets);
+        layoutTagFacets = view.findViewById(R.id.layoutTagFacets);
 
         view.findViewById(R.id.layoutAddTask).setOnClickListener(v -> showAddTaskDialog(null));
         view.findViewById(R.id.btnNewTask).setOnClickListener(v -> showAddTaskDialog(null));
@@ -84,6 +95,7 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
 
     private void switchTab(int tab) {
         currentTab = tab;
+        selectedTag = null;
 
         TextView[] tabs = { tabAll, tabByStatus, tabToday, tabList };
         for (int i = 0; i < tabs.length; i++) {
@@ -101,6 +113,7 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
 
     private void setupRecyclerView() {
         rvTodos.setLayoutManager(new LinearLayoutManager(requireContext()));
+        todosSeen = repository.getDatabaseHelper().getInvalidationTracker().subscribe(InvalidationTracker.TODOS);
         adapter = new TodoAdapter(todoList, this);
         rvTodos.setAdapter(adapter);
         loadVisibilitySettings();
@@ -109,10 +122,19 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
     @Override
     public void onResume() {
         super.onResume();
-        loadTodoItems();
+        // Reload only if a todo was written since, or onPause cancelled the last load
+        if (todosSeen.hasChanged() || pendingLoad != null || pendingFacets != null) {
+            loadTodoItems();
+        }
         loadVisibilitySettings();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        repository.cancelAll(this);
+    }
+
     private void loadVisibilitySettings() {
         if (adapter == null)
             return;
@@ -158,25 +180,105 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
     }
 
     private void loadTodoItems() {
-        switch (currentTab) {
-            case 0:
-                todoList = dbHelper.getAllTodoItems();
-                break;
-            case 1:
-                todoList = dbHelper.getTodoItemsByStatus(TodoItem.STATUS_IN_PROGRESS);
-                todoList.addAll(dbHelper.getTodoItemsByStatus(TodoItem.STATUS_NOT_STARTED));
-                todoList.addAll(dbHelper.getTodoItemsByStatus(TodoItem.STATUS_COMPLETED));
-                break;
-            case 2:
-                todoList = dbHelper.getTodayTodoItems();
-                break;
-            case 3:
-                todoList = dbHelper.getAllTodoItems();
-                break;
+        // A newer tab selection always supersedes the previous load
+        if (pendingLoad != null) {
+            pendingLoad.cancel();
+        }
+        DatabaseHelper dbHelper = repository.getDatabaseHelper();
+        final int tab = currentTab;
+        final String tag = selectedTag;
+        todosSeen.markSeen();
+        loadTagFacets();
+        if (tag == null && tab == 1) {
+            // By status: one grouped query, shown under a header per status
+            pendingLoad = repository.getTodoItemsGroupedByStatus(this, sections -> {
+                pendingLoad = null;
+                if (getView() == null)
+                    return;
+                todoList = sections.getItems();
+                if (adapter != null)
+                    adapter.updateSections(sections);
+                updateEmptyState();
+            });
+            return;
+        }
+        pendingLoad = repository.read(this, () -> {
+            if (tag != null) {
+                return dbHelper.getTodoItemsByTag(tag);
+            }
+            List<TodoItem> items;
+            switch (tab) {
+                case 2:
+                    items = dbHelper.getTodayTodoItems();
+                    break;
+                case 0:
+                case 3:
+                default:
+                    items = dbHelper.getAllTodoItems();
+                    break;
+            }
+            return items;
+        }, items -> {
+            pendingLoad = null;
+            if (getView() == null)
+                return;
+            todoList = items;
+            if (adapter != null)
+                adapter.updateData(todoList);
+            updateEmptyState();
+        });
+    }
+
+    private void loadTagFacets() {
+        // Counts change with every add/edit/delete, which all end in loadTodoItems
+        if (pendingFacets != null) {
+            pendingFacets.cancel();
+        }
+        pendingFacets = repository.getTagCounts(this, counts -> {
+            pendingFacets = null;
+            if (getView() != null)
+                showTagFacets(counts);
+        });
+    }
+
+    private void showTagFacets(List<TagCount> counts) {
+        if (selectedTag != null && !containsTag(counts, selectedTag)) {
+            // The last task with the selected tag was edited or deleted
+            selectedTag = null;
+            loadTodoItems();
+            return;
+        }
+        layoutTagFacets.removeAllViews();
+        scrollTagFacets.setVisibility(counts.isEmpty() ? View.GONE : View.VISIBLE);
+        float density = getResources().getDisplayMetrics().density;
+        for (TagCount count : counts) {
+            boolean selected = count.getName().equalsIgnoreCase(selectedTag);
+            TextView chip = new TextView(requireContext());
+            chip.setText("#" + count.getName() + " " + count.getCount());
+            chip.setTextSize(13);
+            chip.setTextColor(ContextCompat.getColor(requireContext(),
+                    selected ? R.color.text_main : R.color.text_secondary));
+            chip.setBackgroundResource(selected ? R.drawable.bg_tab_selected : R.drawable.bg_tab_normal);
+            chip.setPadding((int) (14 * density), (int) (6 * density), (int) (14 * density), (int) (6 * density));
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT);
+            if (layoutTagFacets.getChildCount() > 0) {
+                params.setMarginStart((int) (8 * density));
+            }
+            chip.setOnClickListener(v -> {
+                selectedTag = selected ? null : count.getName();
+                loadTodoItems();
+            });
+            layoutTagFacets.addView(chip, params);
         }
-        if (adapter != null)
-            adapter.updateData(todoList);
-        updateEmptyState();
+    }
+
+    private static boolean containsTag(List<TagCount> counts, String tag) {
+        for (TagCount count : counts) {
+            if (count.getName().equalsIgnoreCase(tag))
+                return true;
+        }
+        return false;
     }
 
     private void updateEmptyState() {
@@ -312,7 +414,7 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
                     else if (priorityId == R.id.rbLow)
                         priority = TodoItem.PRIORITY_LOW;
 
-                    String today = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+                    String today = DateKeys.todayString();
 
                     if (isEdit) {
                         existingItem.setTitle(title);
@@ -323,16 +425,14 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
                         existingItem.setTags(tags);
                         existingItem.setAssignee(assignee);
                         existingItem.setAttachmentPath(selectedAttachment[0]);
-                        dbHelper.updateTodoItem(existingItem);
+                        repository.updateTodoItem(this, existingItem, result -> loadTodoItems());
                         Toast.makeText(requireContext(), "任务已更新", Toast.LENGTH_SHORT).show();
                     } else {
                         TodoItem newItem = new TodoItem(title, description, status, priority,
                                 selectedDueDate[0], tags, today, assignee, selectedAttachment[0]);
-                        dbHelper.addTodoItem(newItem);
+                        repository.addTodoItem(this, newItem, result -> loadTodoItems());
                         Toast.makeText(requireContext(), "任务已添加", Toast.LENGTH_SHORT).show();
                     }
-
-                    loadTodoItems();
                 })
                 .setNegativeButton("取消", null)
                 .show();
@@ -341,13 +441,16 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
     @Override
     public void onTodoToggle(TodoItem item, boolean completed) {
         String newStatus = completed ? TodoItem.STATUS_COMPLETED : TodoItem.STATUS_NOT_STARTED;
-        dbHelper.updateTodoStatus(item.getId(), newStatus);
-        loadTodoItems();
+        repository.updateTodoStatus(this, item.getId(), newStatus, result -> loadTodoItems());
     }
 
     @Override
     public void onTodoClick(TodoItem item) {
-        showAddTaskDialog(item);
+        // List rows carry no description; edit the full row
+        repository.getTodoItem(this, item.getId(), full -> {
+            if (full != null && getView() != null)
+                showAddTaskDialog(full);
+        });
     }
 
     @Override
@@ -356,8 +459,7 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
                 .setTitle("删除任务")
                 .setMessage("确定要删除\"" + item.getTitle() + "\"吗？")
                 .setPositiveButton("删除", (dialog, which) -> {
-                    dbHelper.deleteTodoItem(item.getId());
-                    loadTodoItems();
+                    repository.deleteTodoItem(this, item.getId(), result -> loadTodoItems());
                     Toast.makeText(requireContext(), "任务已删除", Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("取消", null)
@@ -375,7 +477,6 @@ public class TaskFragment extends Fragment implements TodoAdapter.OnTodoActionLi
         } else {
             newStatus = TodoItem.STATUS_NOT_STARTED;
         }
-        dbHelper.updateTodoStatus(item.getId(), newStatus);
-        loadTodoItems();
+        repository.updateTodoStatus(this, item.getId(), newStatus, result -> loadTodoItems());
     }
 }
@@ -1,22 +1,98 @@
 package com.example.pocketledger;
 
+import android.content.Context;
+import android.content.res.ColorStateList;
 import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
 
-public class TodoAdapter extends RecyclerView.Adapter<TodoAdapter.TodoViewHolder> {
+public class TodoAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-    private List<TodoItem> todoList;
+    private static final int VIEW_TYPE_TODO = 0;
+    private static final int VIEW_TYPE_SECTION = 1;
+
+    // Partial bind of the views that follow the status: checkbox, strikethrough, status tag
+    static final Object PAYLOAD_STATUS = new Object();
+
+    /**
+     * Header row before a non-empty status section (sectioned mode).
+     */
+    static final class SectionHeader {
+        final String status;
+        final int count;
+        final String title;
+        final String countText;
+
+        SectionHeader(String status, int count) {
+            this.status = status;
+            this.count = count;
+            this.title = TodoItem.statusText(status);
+            this.countText = String.valueOf(count);
+        }
+    }
+
+    // Rows are TodoRows and, in sectioned mode, SectionHeaders
+    static final DiffUtil.ItemCallback<Object> DIFF_CALLBACK = new DiffUtil.ItemCallback<Object>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Object oldRow, @NonNull Object newRow) {
+            if (oldRow instanceof TodoRow && newRow instanceof TodoRow)
+                return ((TodoRow) oldRow).item.getId() == ((TodoRow) newRow).item.getId();
+            if (oldRow instanceof SectionHeader && newRow instanceof SectionHeader)
+                return ((SectionHeader) oldRow).status.equals(((SectionHeader) newRow).status);
+            return false;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Object oldRow, @NonNull Object newRow) {
+            if (oldRow instanceof SectionHeader)
+                return ((SectionHeader) oldRow).count == ((SectionHeader) newRow).count;
+            TodoRow oldTodo = (TodoRow) oldRow;
+            TodoRow newTodo = (TodoRow) newRow;
+            return Objects.equals(oldTodo.item.getStatus(), newTodo.item.getStatus())
+                    && sameExceptStatus(oldTodo, newTodo);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Object oldRow, @NonNull Object newRow) {
+            if (oldRow instanceof TodoRow && sameExceptStatus((TodoRow) oldRow, (TodoRow) newRow))
+                return PAYLOAD_STATUS;
+            return null;
+        }
+    };
+
+    // Everything a row shows apart from the status-driven views
+    private static boolean sameExceptStatus(TodoRow oldTodo, TodoRow newTodo) {
+        TodoItem a = oldTodo.item;
+        TodoItem b = newTodo.item;
+        return oldTodo.overdue == newTodo.overdue
+                && Objects.equals(a.getTitle(), b.getTitle()) && Objects.equals(a.getPriority(), b.getPriority())
+                && Objects.equals(a.getDueDate(), b.getDueDate()) && Objects.equals(a.getAssignee(), b.getAssignee())
+                && Objects.equals(a.getAttachmentPath(), b.getAttachmentPath());
+    }
+
+    private final AsyncListDiffer<Object> differ = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+            ListDiffing.config(DIFF_CALLBACK));
     private OnTodoActionListener listener;
+    // Resolved once per color resource; text colors and tints reuse the same instances
+    private final SparseArray<ColorStateList> colors = new SparseArray<>();
 
     public interface OnTodoActionListener {
         void onTodoToggle(TodoItem item, boolean completed);
@@ -35,162 +111,247 @@ public class TodoAdapter extends RecyclerView.Adapter<TodoAdapter.TodoViewHolder
     private boolean showDueDate = true;
 
     public TodoAdapter(List<TodoItem> todoList, OnTodoActionListener listener) {
-        this.todoList = todoList;
         this.listener = listener;
+        setHasStableIds(true);
+        updateData(todoList);
     }
 
     public void setVisibilityConfig(boolean showAssignee, boolean showAttachment, boolean showStatus,
             boolean showPriority, boolean showDueDate) {
+        if (showAssignee == this.showAssignee && showAttachment == this.showAttachment
+                && showStatus == this.showStatus && showPriority == this.showPriority
+                && showDueDate == this.showDueDate)
+            return; // Re-applied on every resume; only rebind when a switch actually changed
         this.showAssignee = showAssignee;
         this.showAttachment = showAttachment;
         this.showStatus = showStatus;
         this.showPriority = showPriority;
         this.showDueDate = showDueDate;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, getItemCount());
     }
 
-    @NonNull
     @Override
-    public TodoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_todo, parent, false);
-        return new TodoViewHolder(view);
+    public int getItemViewType(int position) {
+        return differ.getCurrentList().get(position) instanceof SectionHeader ? VIEW_TYPE_SECTION : VIEW_TYPE_TODO;
     }
 
     @Override
-    public void onBindViewHolder(@NonNull TodoViewHolder holder, int position) {
-        TodoItem item = todoList.get(position);
+    public long getItemId(int position) {
+        Object row = differ.getCurrentList().get(position);
+        if (row instanceof SectionHeader)
+            // Todo ids are positive; the offset keeps every rank, 0 included, below NO_ID (-1)
+            return -(TodoItem.statusRank(((SectionHeader) row).status) + 2);
+        return ((TodoRow) row).item.getId();
+    }
 
-        // Title with strikethrough if completed
-        holder.tvTitle.setText(item.getTitle());
-        if (item.isCompleted()) {
-            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-            holder.tvTitle.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_hint));
-        } else {
-            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
-            holder.tvTitle.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_main));
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_TYPE_SECTION) {
+            return new SectionViewHolder(inflater.inflate(R.layout.item_todo_section, parent, false));
         }
-
-        // Checkbox
-        holder.cbCompleted.setOnCheckedChangeListener(null);
-        holder.cbCompleted.setChecked(item.isCompleted());
-        holder.cbCompleted.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            if (listener != null) {
+        TodoViewHolder holder = new TodoViewHolder(inflater.inflate(R.layout.item_todo, parent, false));
+        // The shape is shared with every other tag; mutate it once here rather than per bind
+        holder.priorityBackground = holder.tvPriority.getBackground().mutate();
+        // Listeners look the row up when they fire: a partial bind leaves them in place,
+        // and the item they would have captured at bind time may be stale by then
+        holder.checkedListener = (buttonView, isChecked) -> {
+            TodoItem item = itemAt(holder);
+            if (item != null && listener != null)
                 listener.onTodoToggle(item, isChecked);
-            }
+        };
+        holder.tvStatus.setOnClickListener(v -> {
+            TodoItem item = itemAt(holder);
+            if (item != null && listener != null)
+                listener.onStatusClick(item);
+        });
+        holder.itemView.setOnClickListener(v -> {
+            TodoItem item = itemAt(holder);
+            if (item != null && listener != null)
+                listener.onTodoClick(item);
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            TodoItem item = itemAt(holder);
+            if (item != null && listener != null)
+                listener.onTodoLongClick(item);
+            return true;
         });
+        return holder;
+    }
 
-        // Status tag
-        if (showStatus) {
-            holder.tvStatus.setVisibility(View.VISIBLE);
-            String statusText = item.getStatusText();
-            int statusColor = item.getStatusColorRes();
-            String status = item.getStatus();
-            String statusDot;
-            if (status == null || TodoItem.STATUS_NOT_STARTED.equals(status)) {
-                statusDot = "○ ";
-            } else if (TodoItem.STATUS_IN_PROGRESS.equals(status)) {
-                statusDot = "● ";
-            } else if (TodoItem.STATUS_COMPLETED.equals(status)) {
-                statusDot = "✓ ";
-            } else {
-                statusDot = "○ ";
-            }
-            holder.tvStatus.setText(statusDot + statusText);
-            holder.tvStatus.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), statusColor));
+    private TodoItem itemAt(RecyclerView.ViewHolder holder) {
+        int position = holder.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION)
+            return null;
+        Object row = differ.getCurrentList().get(position);
+        return row instanceof TodoRow ? ((TodoRow) row).item : null;
+    }
+
+    private ColorStateList color(Context context, int colorRes) {
+        ColorStateList color = colors.get(colorRes);
+        if (color == null) {
+            color = ColorStateList.valueOf(ContextCompat.getColor(context, colorRes));
+            colors.put(colorRes, color);
+        }
+        return color;
+    }
 
-            holder.tvStatus.setOnClickListener(v -> {
-                if (listener != null)
-                    listener.onStatusClick(item);
-            });
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+            @NonNull List<Object> payloads) {
+        if (holder instanceof TodoViewHolder && !payloads.isEmpty() && onlyStatusChanged(payloads)) {
+            bindStatus((TodoViewHolder) holder, (TodoRow) differ.getCurrentList().get(position));
         } else {
-            holder.tvStatus.setVisibility(View.GONE);
+            onBindViewHolder(holder, position);
         }
+    }
+
+    private static boolean onlyStatusChanged(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_STATUS)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Object row = differ.getCurrentList().get(position);
+        if (holder instanceof SectionViewHolder) {
+            SectionHeader header = (SectionHeader) row;
+            SectionViewHolder sectionHolder = (SectionViewHolder) holder;
+            sectionHolder.tvSectionTitle.setText(header.title);
+            sectionHolder.tvSectionCount.setText(header.countText);
+        } else {
+            bindTodo((TodoViewHolder) holder, (TodoRow) row);
+        }
+    }
+
+    // Everything shown is precomputed in the TodoRow; binding only copies it into the views
+    private void bindTodo(TodoViewHolder holder, TodoRow row) {
+        Context context = holder.itemView.getContext();
+        holder.tvTitle.setText(row.item.getTitle());
+        bindStatus(holder, row);
 
         // Priority tag
-        if (showPriority && item.getPriority() != null && !item.getPriority().isEmpty()) {
+        if (showPriority && row.priorityText != null) {
             holder.tvPriority.setVisibility(View.VISIBLE);
-            holder.tvPriority.setText(item.getPriorityText());
-            // Set background color
-            int colorRes;
-            switch (item.getPriority()) {
-                case TodoItem.PRIORITY_HIGH:
-                    colorRes = R.color.expense_red;
-                    break;
-                case TodoItem.PRIORITY_MEDIUM:
-                    colorRes = R.color.income_yellow;
-                    break;
-                case TodoItem.PRIORITY_LOW:
-                    colorRes = R.color.income_green;
-                    break;
-                default:
-                    colorRes = R.color.text_hint;
-                    break;
-            }
-            holder.tvPriority.getBackground().mutate().setTint(
-                    ContextCompat.getColor(holder.itemView.getContext(), colorRes));
+            holder.tvPriority.setText(row.priorityText);
+            holder.priorityBackground.setTintList(color(context, row.priorityColorRes));
         } else {
             holder.tvPriority.setVisibility(View.GONE); // Use GONE instead of INVISIBLE to collapse
         }
 
         // Assignee
-        if (showAssignee && item.getAssignee() != null && !item.getAssignee().isEmpty()) {
+        if (showAssignee && row.assigneeText != null) {
             holder.tvAssignee.setVisibility(View.VISIBLE);
-            String assignee = item.getAssignee();
-            // Show only first char or 2 chars for compactness if needed, or full name
-            holder.tvAssignee.setText(assignee.length() > 3 ? assignee.substring(0, 3) : assignee);
+            holder.tvAssignee.setText(row.assigneeText);
         } else {
             holder.tvAssignee.setVisibility(View.GONE);
         }
 
         // Attachment
-        if (showAttachment && item.getAttachmentPath() != null && !item.getAttachmentPath().isEmpty()) {
-            holder.tvAttachment.setVisibility(View.VISIBLE);
-        } else {
-            holder.tvAttachment.setVisibility(View.GONE);
-        }
+        holder.tvAttachment.setVisibility(showAttachment && row.hasAttachment ? View.VISIBLE : View.GONE);
 
         // Due date
-        if (showDueDate && item.hasDueDate()) {
+        if (showDueDate && row.dueDateText != null) {
             holder.tvDueDate.setVisibility(View.VISIBLE);
-            holder.tvDueDate.setText(item.getFormattedDueDate());
-            if (item.isOverdue()) {
-                holder.tvDueDate
-                        .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.expense_red));
-            } else {
-                holder.tvDueDate
-                        .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_secondary));
-            }
+            holder.tvDueDate.setText(row.dueDateText);
+            holder.tvDueDate.setTextColor(color(context, row.overdue ? R.color.expense_red : R.color.text_secondary));
         } else {
             holder.tvDueDate.setVisibility(View.GONE);
         }
+    }
 
-        // Click listeners
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null)
-                listener.onTodoClick(item);
-        });
+    private void bindStatus(TodoViewHolder holder, TodoRow row) {
+        Context context = holder.itemView.getContext();
+        // Title with strikethrough if completed
+        if (row.completed) {
+            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
+            holder.tvTitle.setTextColor(color(context, R.color.text_hint));
+        } else {
+            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+            holder.tvTitle.setTextColor(color(context, R.color.text_main));
+        }
 
-        holder.itemView.setOnLongClickListener(v -> {
-            if (listener != null)
-                listener.onTodoLongClick(item);
-            return true;
-        });
+        // Checkbox
+        holder.cbCompleted.setOnCheckedChangeListener(null);
+        holder.cbCompleted.setChecked(row.completed);
+        holder.cbCompleted.setOnCheckedChangeListener(holder.checkedListener);
+
+        // Status tag
+        if (showStatus) {
+            holder.tvStatus.setVisibility(View.VISIBLE);
+            holder.tvStatus.setText(row.statusLabel);
+            holder.tvStatus.setTextColor(color(context, row.statusColorRes));
+        } else {
+            holder.tvStatus.setVisibility(View.GONE);
+        }
     }
 
     @Override
     public int getItemCount() {
-        return todoList.size();
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Show a flat list. Rows are prepared and diffed against the current ones in
+     * the background, and only the rows that changed are rebound.
+     */
     public void updateData(List<TodoItem> newList) {
-        this.todoList = newList;
-        notifyDataSetChanged();
+        final List<TodoItem> items = new ArrayList<>(newList);
+        submitInBackground(() -> {
+            List<Object> rows = new ArrayList<>(items.size());
+            TodoRow.addAll(rows, items, DateKeys.today());
+            return rows;
+        });
+    }
+
+    /**
+     * Show the todos under a header per status. Header text and counts come from
+     * the sections themselves, so binding does no database work.
+     */
+    public void updateSections(TodoSections sections) {
+        submitInBackground(() -> {
+            int today = DateKeys.today();
+            List<Object> rows = new ArrayList<>(sections.getItems().size() + sections.getSectionCount());
+            int start = 0;
+            for (int i = 0; i < sections.getSectionCount(); i++) {
+                int count = sections.getCount(i);
+                if (count == 0)
+                    continue;
+                rows.add(new SectionHeader(sections.getStatus(i), count));
+                TodoRow.addAll(rows, sections.getItems().subList(start, start + count), today);
+                start += count;
+            }
+            return rows;
+        });
+    }
+
+    // The executor is a single thread, so lists are submitted in the order they were given
+    private void submitInBackground(Supplier<List<Object>> build) {
+        ListDiffing.EXECUTOR.execute(() -> {
+            List<Object> rows = build.get();
+            ListDiffing.MAIN.post(() -> differ.submitList(rows));
+        });
+    }
+
+    static class SectionViewHolder extends RecyclerView.ViewHolder {
+        TextView tvSectionTitle, tvSectionCount;
+
+        SectionViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvSectionTitle = itemView.findViewById(R.id.tvSectionTitle);
+            tvSectionCount = itemView.findViewById(R.id.tvSectionCount);
+        }
     }
 
     static class TodoViewHolder extends RecyclerView.ViewHolder {
         CheckBox cbCompleted;
         TextView tvTitle, tvStatus, tvPriority, tvDueDate, tvAssignee, tvAttachment;
+        CompoundButton.OnCheckedChangeListener checkedListener;
+        Drawable priorityBackground;
 
         public TodoViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -1,5 +1,8 @@
 package com.example.pocketledger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Model class representing a todo/task item (Notion-style)
  * With comprehensive properties: status, priority, due date, tags, description
@@ -25,6 +28,16 @@ public class TodoItem {
     public static final String PRIORITY_MEDIUM = "medium";
     public static final String PRIORITY_LOW = "low";
 
+    // Display ranks, what the database stores since v14: lists sort ascending on
+    // status rank, then priority rank
+    static final int STATUS_RANK_IN_PROGRESS = 1;
+    static final int STATUS_RANK_NOT_STARTED = 2;
+    static final int STATUS_RANK_COMPLETED = 3;
+    static final int PRIORITY_RANK_HIGH = 1;
+    static final int PRIORITY_RANK_MEDIUM = 2;
+    static final int PRIORITY_RANK_LOW = 3;
+    static final int PRIORITY_RANK_NONE = 4;
+
     // Constructor for creating new item
     public TodoItem(String title, String priority, String date) {
         this.title = title;
@@ -196,6 +209,10 @@ public class TodoItem {
 
     // Get status display text
     public String getStatusText() {
+        return statusText(status);
+    }
+
+    public static String statusText(String status) {
         if (status == null)
             return "未开始";
         switch (status) {
@@ -242,6 +259,75 @@ public class TodoItem {
         }
     }
 
+    static int statusRank(String status) {
+        if (STATUS_IN_PROGRESS.equals(status))
+            return STATUS_RANK_IN_PROGRESS;
+        if (STATUS_COMPLETED.equals(status))
+            return STATUS_RANK_COMPLETED;
+        return STATUS_RANK_NOT_STARTED;
+    }
+
+    static String statusForRank(int rank) {
+        switch (rank) {
+            case STATUS_RANK_IN_PROGRESS:
+                return STATUS_IN_PROGRESS;
+            case STATUS_RANK_COMPLETED:
+                return STATUS_COMPLETED;
+            default:
+                return STATUS_NOT_STARTED;
+        }
+    }
+
+    // Anything but high/medium/low, including null, is "no priority"
+    static int priorityRank(String priority) {
+        if (PRIORITY_HIGH.equals(priority))
+            return PRIORITY_RANK_HIGH;
+        if (PRIORITY_MEDIUM.equals(priority))
+            return PRIORITY_RANK_MEDIUM;
+        if (PRIORITY_LOW.equals(priority))
+            return PRIORITY_RANK_LOW;
+        return PRIORITY_RANK_NONE;
+    }
+
+    static String priorityForRank(int rank) {
+        switch (rank) {
+            case PRIORITY_RANK_HIGH:
+                return PRIORITY_HIGH;
+            case PRIORITY_RANK_MEDIUM:
+                return PRIORITY_MEDIUM;
+            case PRIORITY_RANK_LOW:
+                return PRIORITY_LOW;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The tags as a list: split on ASCII or full-width commas, trimmed, without
+     * empties or case-insensitive duplicates, in the order they were typed.
+     */
+    public static List<String> splitTags(String tags) {
+        List<String> list = new ArrayList<>();
+        if (tags == null)
+            return list;
+        for (String part : tags.split("[,，]")) {
+            String tag = part.trim();
+            if (tag.isEmpty())
+                continue;
+            boolean duplicate = false;
+            for (String seen : list) {
+                if (seen.equalsIgnoreCase(tag)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                list.add(tag);
+            }
+        }
+        return list;
+    }
+
     // Check if has due date
     public boolean hasDueDate() {
         return dueDate != null && !dueDate.isEmpty();
@@ -249,16 +335,15 @@ public class TodoItem {
 
     // Check if overdue
     public boolean isOverdue() {
+        return isOverdue(DateKeys.today());
+    }
+
+    // For lists: work out today's key once rather than per item
+    boolean isOverdue(int todayKey) {
         if (!hasDueDate() || isCompleted())
             return false;
-        try {
-            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.CHINA);
-            java.util.Date due = sdf.parse(dueDate);
-            java.util.Date today = sdf.parse(sdf.format(new java.util.Date()));
-            return due != null && due.before(today);
-        } catch (Exception e) {
-            return false;
-        }
+        int due = DateKeys.parse(dueDate);
+        return due != 0 && due < todayKey;
     }
 
     // Format due date for display
@@ -0,0 +1,77 @@
+package com.example.pocketledger;
+
+import java.util.List;
+
+/**
+ * A todo with the labels and colors its list row shows already worked out.
+ * Built on the {@link ListDiffing} worker before the rows are submitted, so
+ * binding a row only copies fields into views.
+ */
+final class TodoRow {
+
+    // Status tag text: marker + status
+    static final String LABEL_NOT_STARTED = "○ 未开始";
+    static final String LABEL_IN_PROGRESS = "● 进行中";
+    static final String LABEL_COMPLETED = "✓ 已完成";
+
+    final TodoItem item;
+    final boolean completed;
+    final String statusLabel;
+    final int statusColorRes;
+    final String priorityText; // null when the todo has no priority
+    final int priorityColorRes;
+    final String assigneeText; // null when unassigned
+    final boolean hasAttachment;
+    final String dueDateText; // null without a due date
+    final boolean overdue;
+
+    /**
+     * @param today {@link DateKeys#today()}, to tell whether the due date has passed
+     */
+    TodoRow(TodoItem item, int today) {
+        this.item = item;
+        completed = item.isCompleted();
+        switch (TodoItem.statusRank(item.getStatus())) {
+            case TodoItem.STATUS_RANK_IN_PROGRESS:
+                statusLabel = LABEL_IN_PROGRESS;
+                break;
+            case TodoItem.STATUS_RANK_COMPLETED:
+                statusLabel = LABEL_COMPLETED;
+                break;
+            default:
+                statusLabel = LABEL_NOT_STARTED;
+                break;
+        }
+        statusColorRes = item.getStatusColorRes();
+
+        String priority = item.getPriority();
+        priorityText = priority != null && !priority.isEmpty() ? item.getPriorityText() : null;
+        priorityColorRes = item.getPriorityColorRes();
+
+        // Only the first 3 chars fit the tag
+        String assignee = item.getAssignee();
+        if (assignee == null || assignee.isEmpty()) {
+            assigneeText = null;
+        } else {
+            assigneeText = assignee.length() > 3 ? assignee.substring(0, 3) : assignee;
+        }
+        hasAttachment = item.getAttachmentPath() != null && !item.getAttachmentPath().isEmpty();
+
+        if (item.hasDueDate()) {
+            dueDateText = item.getFormattedDueDate();
+            overdue = item.isOverdue(today);
+        } else {
+            dueDateText = null;
+            overdue = false;
+        }
+    }
+
+    /**
+     * Add a row for each todo to {@code rows}.
+     */
+    static void addAll(List<Object> rows, List<TodoItem> items, int today) {
+        for (TodoItem item : items) {
+            rows.add(new TodoRow(item, today));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.pocketledger;
+
+import java.util.List;
+
+/**
+ * Todos grouped by status for the "by status" tab, read in one query: the items
+ * in list order (in progress, not started, completed, each by priority) and how
+ * many fall in each section, so the headers need no further lookups.
+ */
+public class TodoSections {
+
+    // Section order, the same as the status ranks
+    public static final String[] STATUSES = { TodoItem.STATUS_IN_PROGRESS, TodoItem.STATUS_NOT_STARTED,
+            TodoItem.STATUS_COMPLETED };
+
+    private final List<TodoItem> items;
+    private final int[] counts;
+
+    TodoSections(List<TodoItem> items, int[] counts) {
+        this.items = items;
+        this.counts = counts;
+    }
+
+    /**
+     * Every todo, section after section.
+     */
+    public List<TodoItem> getItems() {
+        return items;
+    }
+
+    public int getSectionCount() {
+        return STATUSES.length;
+    }
+
+    public String getStatus(int section) {
+        return STATUSES[section];
+    }
+
+    public int getCount(int section) {
+        return counts[section];
+    }
+
+    public int getCount(String status) {
+        return counts[TodoItem.statusRank(status) - 1];
+    }
+}
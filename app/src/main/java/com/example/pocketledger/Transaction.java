@@ -9,12 +9,7 @@ public class Transaction {
     private String date;
 
     public Transaction(int id, String type, double amount, String category, String note, String date) {
-        this.id = id;
-        this.type = type;
-        this.amount = amount;
-        this.category = category;
-        this.note = note;
-        this.date = date;
+        set(id, type, amount, category, note, date);
     }
 
     public Transaction(String type, double amount, String category, String note, String date) {
@@ -48,4 +43,17 @@ public class Transaction {
     public String getDate() {
         return date;
     }
+
+    /**
+     * Refill this instance with another row. Only for streaming reads that hand
+     * one reused object to a consumer which does not keep it.
+     */
+    void set(int id, String type, double amount, String category, String note, String date) {
+        this.id = id;
+        this.type = type;
+        this.amount = amount;
+        this.category = category;
+        this.note = note;
+        this.date = date;
+    }
 }
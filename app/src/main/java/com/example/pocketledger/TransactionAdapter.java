@@ -1,78 +1,338 @@
 package com.example.pocketledger;
 
-import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
 
 public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.ViewHolder> {
 
-    private List<Transaction> transactionList;
+    // Paging window: never hold more than MAX_PAGES pages, whatever the ledger size
+    public static final int PAGE_SIZE = 30;
+    private static final int MAX_PAGES = 4;
+    private static final int MAX_ITEMS = PAGE_SIZE * MAX_PAGES;
+
+    // Formatted on the ListDiffing worker, so binding allocates nothing
+    private List<TransactionRow> rows;
     private OnTransactionLongClickListener longClickListener;
 
+    private PageLoader pageLoader;
+    private WindowListener windowListener;
+    private boolean hasOlder;
+    private boolean hasNewer;
+    private boolean loadingOlder;
+    private boolean loadingNewer;
+    private int generation;
+
+    // updateData diffs on the ListDiffing worker. A newer update supersedes an older
+    // one still computing, and no new window load starts meanwhile. Any local change
+    // that lands first (a removed row, a page already in flight) makes it diff again,
+    // since a result is only valid for the list it was computed from.
+    private int diffGeneration;
+    private boolean diffPending;
+    private int localChanges;
+
+    static final DiffUtil.ItemCallback<Transaction> DIFF_CALLBACK = new DiffUtil.ItemCallback<Transaction>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return Objects.equals(oldItem.getType(), newItem.getType())
+                    && oldItem.getAmount() == newItem.getAmount()
+                    && Objects.equals(oldItem.getCategory(), newItem.getCategory())
+                    && Objects.equals(oldItem.getNote(), newItem.getNote())
+                    && Objects.equals(oldItem.getDate(), newItem.getDate());
+        }
+    };
+
     public interface OnTransactionLongClickListener {
         void onLongClick(int id);
     }
 
+    /**
+     * Source of keyset pages. Implementations deliver results on the main thread, and
+     * must pass the callback through so {@link LedgerRepository.Callback#onFailure} reaches it.
+     */
+    public interface PageLoader {
+        /** Rows older than the anchor, or the newest page when anchor is null */
+        void loadOlder(Transaction anchor, int limit, LedgerRepository.Callback<List<Transaction>> callback);
+
+        /** Rows newer than the anchor, in display (date DESC, id DESC) order */
+        void loadNewer(Transaction anchor, int limit, LedgerRepository.Callback<List<Transaction>> callback);
+    }
+
+    /**
+     * Notified around window changes at the top of the list so a hosting scroll
+     * container can keep the visible rows in place.
+     */
+    public interface WindowListener {
+        void beforeHeadRemoved(int count);
+
+        void afterHeadInserted(int count);
+    }
+
     public TransactionAdapter(List<Transaction> transactionList, OnTransactionLongClickListener longClickListener) {
-        this.transactionList = transactionList != null ? transactionList : new ArrayList<>();
+        this.rows = transactionList != null ? TransactionRow.of(transactionList) : new ArrayList<>();
         this.longClickListener = longClickListener;
+        setHasStableIds(true);
     }
 
+    /**
+     * Replace the rows. They are formatted and diffed against the current rows off
+     * the main thread, and only rows that were inserted, removed or changed are
+     * dispatched.
+     */
     public void updateData(List<Transaction> newList) {
-        this.transactionList = newList != null ? newList : new ArrayList<>();
-        notifyDataSetChanged();
+        final List<Transaction> source = newList != null ? new ArrayList<>(newList) : new ArrayList<>();
+        final int gen = ++diffGeneration;
+        final List<TransactionRow> previous = new ArrayList<>(rows);
+        final int changes = localChanges;
+        diffPending = true;
+        ListDiffing.EXECUTOR.execute(() -> {
+            List<TransactionRow> next = TransactionRow.of(source);
+            // Nothing to match up when either side is empty
+            DiffUtil.DiffResult result = previous.isEmpty() || next.isEmpty() ? null
+                    : DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                        @Override
+                        public int getOldListSize() {
+                            return previous.size();
+                        }
+
+                        @Override
+                        public int getNewListSize() {
+                            return next.size();
+                        }
+
+                        @Override
+                        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                            return DIFF_CALLBACK.areItemsTheSame(previous.get(oldPosition).transaction,
+                                    next.get(newPosition).transaction);
+                        }
+
+                        @Override
+                        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                            return DIFF_CALLBACK.areContentsTheSame(previous.get(oldPosition).transaction,
+                                    next.get(newPosition).transaction);
+                        }
+                    });
+            ListDiffing.MAIN.post(() -> {
+                if (gen != diffGeneration)
+                    return;
+                if (changes != localChanges) {
+                    updateData(source);
+                    return;
+                }
+                diffPending = false;
+                int oldSize = rows.size();
+                rows = next;
+                if (result != null) {
+                    result.dispatchUpdatesTo(this);
+                } else {
+                    notifyItemRangeRemoved(0, oldSize);
+                    notifyItemRangeInserted(0, next.size());
+                }
+            });
+        });
     }
 
-    @NonNull
-    @Override
-    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_transaction, parent, false);
-        return new ViewHolder(view);
+    // Pages are delivered on the main thread; format them on the worker before they are shown
+    private static void formatRows(List<Transaction> page, LedgerRepository.Callback<List<TransactionRow>> callback) {
+        ListDiffing.EXECUTOR.execute(() -> {
+            List<TransactionRow> formatted = TransactionRow.of(page);
+            ListDiffing.MAIN.post(() -> callback.onResult(formatted));
+        });
     }
 
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Transaction transaction = transactionList.get(position);
+    // A page callback that also clears the loading flag when the page never arrives
+    private static LedgerRepository.Callback<List<Transaction>> pageCallback(
+            LedgerRepository.Callback<List<Transaction>> onPage, Runnable onFailure) {
+        return new LedgerRepository.Callback<List<Transaction>>() {
+            @Override
+            public void onResult(List<Transaction> page) {
+                onPage.onResult(page);
+            }
 
-        holder.tvCategory.setText(transaction.getCategory());
+            @Override
+            public void onFailure() {
+                onFailure.run();
+            }
+        };
+    }
 
-        String note = transaction.getNote();
-        if (note == null || note.trim().isEmpty()) {
-            holder.tvDesc.setText(transaction.getDate());
-        } else {
-            holder.tvDesc.setText(String.format("%s • %s", transaction.getDate(), note));
-        }
+    public void setPageLoader(PageLoader pageLoader) {
+        this.pageLoader = pageLoader;
+    }
 
-        if ("income".equals(transaction.getType())) {
-            holder.tvAmount.setText(String.format(Locale.CHINA, "+%.2f", transaction.getAmount()));
-            holder.tvAmount.setTextColor(Color.parseColor("#2E7D32")); // Green
-            holder.viewIndicator.setBackgroundColor(Color.parseColor("#2E7D32"));
-        } else {
-            holder.tvAmount.setText(String.format(Locale.CHINA, "-%.2f", transaction.getAmount()));
-            holder.tvAmount.setTextColor(Color.parseColor("#C62828")); // Red
-            holder.viewIndicator.setBackgroundColor(Color.parseColor("#C62828"));
+    public void setWindowListener(WindowListener windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    public boolean hasNewer() {
+        return hasNewer;
+    }
+
+    /**
+     * Drop the current window and load the newest page. In-flight page loads from
+     * before the reset are ignored when they land.
+     */
+    public void reload() {
+        if (pageLoader == null)
+            return;
+        final int gen = ++generation;
+        loadingOlder = true;
+        loadingNewer = false;
+        pageLoader.loadOlder(null, PAGE_SIZE, pageCallback(page -> {
+            if (gen != generation)
+                return;
+            loadingOlder = false;
+            hasOlder = page.size() == PAGE_SIZE;
+            hasNewer = false;
+            updateData(new ArrayList<>(page));
+        }, () -> {
+            if (gen == generation)
+                loadingOlder = false;
+        }));
+    }
+
+    /**
+     * Whether a page load is in flight. If the host cancels it (on pause) the window
+     * can no longer page, so the host has to {@link #reload} rather than keep it.
+     */
+    public boolean isLoading() {
+        return loadingOlder || loadingNewer;
+    }
+
+    /**
+     * Append the next older page, evicting pages from the top once the window is full.
+     */
+    public void loadOlder() {
+        if (pageLoader == null || loadingOlder || !hasOlder || diffPending || rows.isEmpty())
+            return;
+        final int gen = generation;
+        loadingOlder = true;
+        Transaction anchor = rows.get(rows.size() - 1).transaction;
+        pageLoader.loadOlder(anchor, PAGE_SIZE, pageCallback(loaded -> formatRows(loaded, page -> {
+            if (gen != generation)
+                return;
+            loadingOlder = false;
+            hasOlder = page.size() == PAGE_SIZE;
+            if (page.isEmpty())
+                return;
+            int start = rows.size();
+            rows.addAll(page);
+            localChanges++;
+            notifyItemRangeInserted(start, page.size());
+
+            int excess = rows.size() - MAX_ITEMS;
+            if (excess > 0) {
+                if (windowListener != null) {
+                    windowListener.beforeHeadRemoved(excess);
+                }
+                rows.subList(0, excess).clear();
+                notifyItemRangeRemoved(0, excess);
+                hasNewer = true;
+            }
+        }), () -> {
+            // Still hasOlder, so the next scroll to the bottom tries again
+            if (gen == generation)
+                loadingOlder = false;
+        }));
+    }
+
+    /**
+     * Re-load the page just above the window after it was evicted by {@link #loadOlder()}.
+     */
+    public void loadNewer() {
+        if (pageLoader == null || loadingNewer || !hasNewer || diffPending || rows.isEmpty())
+            return;
+        final int gen = generation;
+        loadingNewer = true;
+        Transaction anchor = rows.get(0).transaction;
+        pageLoader.loadNewer(anchor, PAGE_SIZE, pageCallback(loaded -> formatRows(loaded, page -> {
+            if (gen != generation)
+                return;
+            loadingNewer = false;
+            hasNewer = page.size() == PAGE_SIZE;
+            if (page.isEmpty())
+                return;
+
+            int excess = rows.size() + page.size() - MAX_ITEMS;
+            if (excess > 0) {
+                int end = rows.size();
+                rows.subList(end - excess, end).clear();
+                notifyItemRangeRemoved(end - excess, excess);
+                hasOlder = true;
+            }
+            rows.addAll(0, page);
+            localChanges++;
+            notifyItemRangeInserted(0, page.size());
+            if (windowListener != null) {
+                windowListener.afterHeadInserted(page.size());
+            }
+        }), () -> {
+            if (gen == generation)
+                loadingNewer = false;
+        }));
+    }
+
+    /**
+     * Remove a single row locally after it was deleted, without reloading the window.
+     */
+    public void removeTransaction(int id) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).transaction.getId() == id) {
+                rows.remove(i);
+                localChanges++;
+                notifyItemRemoved(i);
+                return;
+            }
         }
+    }
 
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_transaction, parent, false);
+        ViewHolder holder = new ViewHolder(view);
         holder.itemView.setOnLongClickListener(v -> {
-            if (longClickListener != null) {
-                longClickListener.onLongClick(transaction.getId());
+            int position = holder.getAdapterPosition();
+            if (longClickListener != null && position != RecyclerView.NO_POSITION) {
+                longClickListener.onLongClick(rows.get(position).transaction.getId());
             }
             return true;
         });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        TransactionRow row = rows.get(position);
+        holder.tvCategory.setText(row.transaction.getCategory());
+        holder.tvDesc.setText(row.description);
+        holder.tvAmount.setText(row.amountText);
+        holder.tvAmount.setTextColor(row.textColor);
+        holder.viewIndicator.setBackgroundColor(row.color);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return rows.get(position).transaction.getId();
     }
 
     @Override
     public int getItemCount() {
-        return transactionList.size();
+        return rows.size();
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,54 @@
+package com.example.pocketledger;
+
+import android.content.res.ColorStateList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A transaction with everything its list row shows already formatted. Built on
+ * the {@link ListDiffing} worker when a page or list arrives, so binding a row
+ * only copies fields into views.
+ */
+final class TransactionRow {
+
+    static final int COLOR_INCOME = 0xFF2E7D32; // Green
+    static final int COLOR_EXPENSE = 0xFFC62828; // Red
+    // setTextColor(int) wraps the color in a new ColorStateList on every call
+    private static final ColorStateList TEXT_INCOME = ColorStateList.valueOf(COLOR_INCOME);
+    private static final ColorStateList TEXT_EXPENSE = ColorStateList.valueOf(COLOR_EXPENSE);
+
+    final Transaction transaction;
+    final String description; // date, or "date • note"
+    final String amountText;
+    final int color;
+    final ColorStateList textColor;
+
+    TransactionRow(Transaction transaction) {
+        this.transaction = transaction;
+        String note = transaction.getNote();
+        if (note == null || note.trim().isEmpty()) {
+            description = transaction.getDate();
+        } else {
+            description = String.format(Locale.CHINA, "%s • %s", transaction.getDate(), note);
+        }
+        if ("income".equals(transaction.getType())) {
+            amountText = String.format(Locale.CHINA, "+%.2f", transaction.getAmount());
+            color = COLOR_INCOME;
+            textColor = TEXT_INCOME;
+        } else {
+            amountText = String.format(Locale.CHINA, "-%.2f", transaction.getAmount());
+            color = COLOR_EXPENSE;
+            textColor = TEXT_EXPENSE;
+        }
+    }
+
+    static List<TransactionRow> of(List<Transaction> transactions) {
+        List<TransactionRow> rows = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            rows.add(new TransactionRow(transaction));
+        }
+        return rows;
+    }
+}
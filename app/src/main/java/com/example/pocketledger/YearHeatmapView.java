@@ -0,0 +1,258 @@
+package com.example.pocketledger;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Arrays;
+
+/**
+ * A year of daily spending as a contribution-style heatmap: one column per week,
+ * Monday at the top, darker cells for heavier days. Everything is drawn straight
+ * onto the canvas from the primitive array given to {@link #setData}; the levels
+ * are worked out there once, so drawing allocates nothing.
+ */
+public class YearHeatmapView extends View {
+
+    public interface OnDayClickListener {
+        /**
+         * @param dateKey the tapped day as yyyymmdd
+         */
+        void onDayClick(int dateKey);
+    }
+
+    private static final String[] MONTH_LABELS = { "1月", "2月", "3月", "4月", "5月", "6月", "7月", "8月", "9月",
+            "10月", "11月", "12月" };
+    private static final int LEVELS = 5; // 0 for no spending, then quartiles of the days with some
+    private static final float GAP_RATIO = 0.18f;
+
+    private final Paint cellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint selectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int[] levelColors = new int[LEVELS];
+    private final RectF cell = new RectF();
+
+    private int year;
+    private long firstEpochDay;
+    private int firstRow; // weekday row of January 1st, 0 for Monday
+    private byte[] levels = new byte[0];
+    private final int[] monthColumns = new int[12]; // week column holding each month's 1st
+    private int selectedDay; // yyyymmdd, kept across years
+    private int selectedIndex = -1; // of selectedDay in levels, -1 if it is in another year
+    private OnDayClickListener listener;
+
+    // Tap tracking: a gesture only clicks if it ends near where it started
+    private final int touchSlop;
+    private float downX;
+    private float downY;
+    private boolean tapping;
+
+    // Layout, from onMeasure
+    private float cellSize;
+    private float labelHeight;
+    private float labelBaseline;
+
+    public YearHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public YearHeatmapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        int spend = ContextCompat.getColor(context, R.color.expense_red);
+        levelColors[0] = ContextCompat.getColor(context, R.color.divider);
+        for (int i = 1; i < LEVELS; i++) {
+            levelColors[i] = Color.argb(255 * i / (LEVELS - 1), Color.red(spend), Color.green(spend),
+                    Color.blue(spend));
+        }
+        selectedPaint.setStyle(Paint.Style.STROKE);
+        selectedPaint.setColor(ContextCompat.getColor(context, R.color.text_main));
+        selectedPaint.setStrokeWidth(getResources().getDisplayMetrics().density * 1.5f);
+        labelPaint.setColor(ContextCompat.getColor(context, R.color.text_secondary));
+        labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 9,
+                getResources().getDisplayMetrics()));
+
+        setYear(DateKeys.year(DateKeys.today()), new long[0]);
+    }
+
+    /**
+     * Show {@code year} with the expense of each day, indexed from January 1st (missing
+     * entries count as no spending).
+     */
+    public void setData(int year, long[] dailyExpenses) {
+        boolean sameShape = year == this.year;
+        setYear(year, dailyExpenses);
+        if (sameShape) {
+            invalidate();
+        } else {
+            requestLayout();
+        }
+    }
+
+    public void setOnDayClickListener(OnDayClickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Outline one day, or clear the outline with a day outside the shown year.
+     */
+    public void setSelectedDay(int dateKey) {
+        selectedDay = dateKey;
+        int selected = indexOf(dateKey);
+        if (selected != selectedIndex) {
+            selectedIndex = selected;
+            invalidate();
+        }
+    }
+
+    private int indexOf(int dateKey) {
+        return DateKeys.year(dateKey) == year ? (int) (DateKeys.toEpochDay(dateKey) - firstEpochDay) : -1;
+    }
+
+    private void setYear(int year, long[] dailyExpenses) {
+        this.year = year;
+        int first = DateKeys.of(year, 1, 1);
+        firstEpochDay = DateKeys.toEpochDay(first);
+        firstRow = DateKeys.dayOfWeek(first) - 1;
+        int days = (int) (DateKeys.toEpochDay(DateKeys.of(year + 1, 1, 1)) - firstEpochDay);
+        levels = new byte[days];
+        for (int m = 0; m < 12; m++) {
+            long dayOfYear = DateKeys.toEpochDay(DateKeys.of(year, m + 1, 1)) - firstEpochDay;
+            monthColumns[m] = (firstRow + (int) dayOfYear) / 7;
+        }
+
+        // Quartile bounds over the days with any spending, so one large purchase
+        // does not wash every other day out to the palest shade
+        int count = Math.min(days, dailyExpenses.length);
+        long[] spent = new long[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (dailyExpenses[i] > 0)
+                spent[n++] = dailyExpenses[i];
+        }
+        Arrays.sort(spent, 0, n);
+        long[] bounds = new long[LEVELS - 2];
+        for (int b = 0; b < bounds.length; b++) {
+            bounds[b] = n == 0 ? 0 : spent[n * (b + 1) / (LEVELS - 1)];
+        }
+        for (int i = 0; i < count; i++) {
+            long value = dailyExpenses[i];
+            if (value <= 0)
+                continue;
+            byte level = 1;
+            while (level < LEVELS - 1 && value >= bounds[level - 1]) {
+                level++;
+            }
+            levels[i] = level;
+        }
+        selectedIndex = indexOf(selectedDay);
+    }
+
+    private int columns() {
+        return (firstRow + levels.length + 6) / 7;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        cellSize = (float) (width - getPaddingLeft() - getPaddingRight()) / columns();
+        Paint.FontMetrics metrics = labelPaint.getFontMetrics();
+        labelHeight = metrics.descent - metrics.ascent + cellSize * GAP_RATIO;
+        labelBaseline = -metrics.ascent;
+        int height = (int) Math.ceil(getPaddingTop() + labelHeight + cellSize * 7 + getPaddingBottom());
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float baseline = top + labelBaseline;
+        for (int m = 0; m < 12; m++) {
+            canvas.drawText(MONTH_LABELS[m], left + monthColumns[m] * cellSize, baseline, labelPaint);
+        }
+
+        float gridTop = top + labelHeight;
+        float gap = cellSize * GAP_RATIO;
+        float radius = gap;
+        for (int i = 0; i < levels.length; i++) {
+            int slot = firstRow + i;
+            cell.left = left + slot / 7 * cellSize;
+            cell.top = gridTop + slot % 7 * cellSize;
+            cell.right = cell.left + cellSize - gap;
+            cell.bottom = cell.top + cellSize - gap;
+            cellPaint.setColor(levelColors[levels[i]]);
+            canvas.drawRoundRect(cell, radius, radius, cellPaint);
+            if (i == selectedIndex) {
+                canvas.drawRoundRect(cell, radius, radius, selectedPaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (listener == null)
+            return super.onTouchEvent(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                downX = event.getX();
+                downY = event.getY();
+                tapping = true;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                // Once the finger has travelled it is a drag or a scroll, even if it comes back
+                if (movedPastSlop(event)) {
+                    tapping = false;
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                tapping = false;
+                return true;
+            case MotionEvent.ACTION_UP:
+                boolean tap = tapping && !movedPastSlop(event);
+                tapping = false;
+                int index = tap ? dayAt(downX, downY) : -1;
+                if (index >= 0) {
+                    performClick();
+                    listener.onDayClick(DateKeys.fromEpochDay(firstEpochDay + index));
+                }
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    private boolean movedPastSlop(MotionEvent event) {
+        return Math.hypot(event.getX() - downX, event.getY() - downY) > touchSlop;
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    // Index of the day under a touch, -1 off the grid
+    private int dayAt(float x, float y) {
+        if (cellSize <= 0)
+            return -1;
+        float gridX = x - getPaddingLeft();
+        float gridY = y - getPaddingTop() - labelHeight;
+        if (gridX < 0 || gridY < 0)
+            return -1;
+        int column = (int) (gridX / cellSize);
+        int row = (int) (gridY / cellSize);
+        if (row >= 7 || column >= columns())
+            return -1;
+        int index = column * 7 + row - firstRow;
+        return index >= 0 && index < levels.length ? index : -1;
+    }
+}
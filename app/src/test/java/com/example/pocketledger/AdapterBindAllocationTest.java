@@ -0,0 +1,260 @@
+package com.example.pocketledger;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Paint;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 列表绑定分配测试
+ * 行的显示内容在后台预先算好，onBindViewHolder 只把字段写进视图。
+ * 对照组用同样的值直接调用同样的 View 方法，两者分配的字节数应当相同。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = { 28 })
+public class AdapterBindAllocationTest {
+
+    private static final int ROWS = 10_000;
+    // 允许的误差（每行），远小于格式化一个金额字符串的开销
+    private static final long SLACK_BYTES_PER_ROW = 8;
+
+    private com.sun.management.ThreadMXBean threads;
+    private FrameLayout parent;
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("JVM 不支持按线程统计分配", bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("JVM 不支持按线程统计分配", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                R.style.Theme_PocketLedger);
+        parent = new FrameLayout(context);
+    }
+
+    @Test
+    public void testTransactionBindDoesNotAllocate() throws InterruptedException {
+        List<Transaction> transactions = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            String type = i % 3 == 0 ? "income" : "expense";
+            String note = i % 2 == 0 ? "备注" + i : null;
+            transactions.add(new Transaction(i + 1, type, 10 + i * 0.25, "餐饮", note, "2024-01-15"));
+        }
+        TransactionAdapter adapter = new TransactionAdapter(new ArrayList<>(), null);
+        adapter.updateData(transactions);
+        awaitRows(adapter, ROWS);
+        TransactionAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+
+        List<TransactionRow> rows = TransactionRow.of(transactions);
+        Runnable direct = () -> {
+            for (int i = 0; i < ROWS; i++) {
+                TransactionRow row = rows.get(i);
+                holder.tvCategory.setText(row.transaction.getCategory());
+                holder.tvDesc.setText(row.description);
+                holder.tvAmount.setText(row.amountText);
+                holder.tvAmount.setTextColor(row.textColor);
+                holder.viewIndicator.setBackgroundColor(row.color);
+            }
+        };
+        Runnable bind = () -> {
+            for (int i = 0; i < ROWS; i++) {
+                adapter.onBindViewHolder(holder, i);
+            }
+        };
+
+        assertBindAllocatesLikeDirect(direct, bind);
+    }
+
+    @Test
+    public void testTodoBindDoesNotAllocate() throws InterruptedException {
+        String[] statuses = { TodoItem.STATUS_NOT_STARTED, TodoItem.STATUS_IN_PROGRESS, TodoItem.STATUS_COMPLETED };
+        String[] priorities = { TodoItem.PRIORITY_HIGH, TodoItem.PRIORITY_MEDIUM, TodoItem.PRIORITY_LOW, null };
+        List<TodoItem> todos = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            todos.add(new TodoItem(i + 1, "任务" + i, null, statuses[i % 3], priorities[i % 4],
+                    i % 5 == 0 ? null : "2024-01-" + (10 + i % 20), null, "2024-01-15", null,
+                    i % 2 == 0 ? "张三丰先生" : null, i % 7 == 0 ? "/tmp/a.jpg" : null));
+        }
+        TodoAdapter adapter = new TodoAdapter(todos, null);
+        awaitRows(adapter, ROWS);
+        TodoAdapter.TodoViewHolder holder = (TodoAdapter.TodoViewHolder) adapter.onCreateViewHolder(parent,
+                adapter.getItemViewType(0));
+
+        List<Object> rows = new ArrayList<>(ROWS);
+        TodoRow.addAll(rows, todos, DateKeys.today());
+        ColorStateList color = ColorStateList.valueOf(0xFF888888);
+        Runnable direct = () -> {
+            for (int i = 0; i < ROWS; i++) {
+                TodoRow row = (TodoRow) rows.get(i);
+                holder.tvTitle.setText(row.item.getTitle());
+                int flags = holder.tvTitle.getPaintFlags();
+                holder.tvTitle.setPaintFlags(row.completed
+                        ? flags | Paint.STRIKE_THRU_TEXT_FLAG
+                        : flags & ~Paint.STRIKE_THRU_TEXT_FLAG);
+                holder.tvTitle.setTextColor(color);
+                holder.cbCompleted.setOnCheckedChangeListener(null);
+                holder.cbCompleted.setChecked(row.completed);
+                holder.cbCompleted.setOnCheckedChangeListener(holder.checkedListener);
+                holder.tvStatus.setVisibility(View.VISIBLE);
+                holder.tvStatus.setText(row.statusLabel);
+                holder.tvStatus.setTextColor(color);
+                if (row.priorityText != null) {
+                    holder.tvPriority.setVisibility(View.VISIBLE);
+                    holder.tvPriority.setText(row.priorityText);
+                    holder.priorityBackground.setTintList(color);
+                } else {
+                    holder.tvPriority.setVisibility(View.GONE);
+                }
+                if (row.assigneeText != null) {
+                    holder.tvAssignee.setVisibility(View.VISIBLE);
+                    holder.tvAssignee.setText(row.assigneeText);
+                } else {
+                    holder.tvAssignee.setVisibility(View.GONE);
+                }
+                holder.tvAttachment.setVisibility(row.hasAttachment ? View.VISIBLE : View.GONE);
+                if (row.dueDateText != null) {
+                    holder.tvDueDate.setVisibility(View.VISIBLE);
+                    holder.tvDueDate.setText(row.dueDateText);
+                    holder.tvDueDate.setTextColor(color);
+                } else {
+                    holder.tvDueDate.setVisibility(View.GONE);
+                }
+            }
+        };
+        Runnable bind = () -> {
+            for (int i = 0; i < ROWS; i++) {
+                adapter.onBindViewHolder(holder, i);
+            }
+        };
+
+        assertBindAllocatesLikeDirect(direct, bind);
+    }
+
+    /**
+     * 放进真实的 RecyclerView 布局：稳定 id 下每次绑定都会调用 getItemId，
+     * 直接调 onBindViewHolder 的测试覆盖不到这条路径
+     */
+    @Test
+    public void testTodoAdapterLaysOutWithStableIds() throws InterruptedException {
+        List<TodoItem> todos = Arrays.asList(
+                new TodoItem(1, "进行中", null, TodoItem.STATUS_IN_PROGRESS, TodoItem.PRIORITY_HIGH, "2024-01-20",
+                        null, "2024-01-15", null, null, null),
+                new TodoItem(2, "未开始", null, TodoItem.STATUS_NOT_STARTED, null, null, null, "2024-01-15", null,
+                        "张三", null),
+                new TodoItem(3, "已完成", null, TodoItem.STATUS_COMPLETED, TodoItem.PRIORITY_LOW, null, null,
+                        "2024-01-15", null, null, null));
+        TodoAdapter adapter = new TodoAdapter(todos, null);
+        awaitRows(adapter, todos.size());
+        RecyclerView recyclerView = layOut(adapter);
+        assertEquals("三行都应布局出来", todos.size(), recyclerView.getChildCount());
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            assertEquals("稳定 id 应为待办 id", todos.get(holder.getAdapterPosition()).getId(), holder.getItemId());
+        }
+
+        // 分组视图：标题行与待办行混排
+        adapter.updateSections(new TodoSections(todos, new int[] { 1, 1, 1 }));
+        awaitRows(adapter, todos.size() + 3);
+        relayOut(recyclerView);
+        assertEquals("标题和待办都应布局出来", todos.size() + 3, recyclerView.getChildCount());
+        RecyclerView.ViewHolder header = recyclerView.getChildViewHolder(recyclerView.getChildAt(0));
+        assertTrue("标题行 id 应为负数", header.getItemId() < 0);
+        // 包括“进行中”（状态序号 1）在内，每个标题行都要有真正的稳定 id
+        int headers = 0;
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            long id = recyclerView.getChildViewHolder(recyclerView.getChildAt(i)).getItemId();
+            if (id < 0) {
+                headers++;
+                assertNotEquals("标题行 id 不能是 NO_ID", RecyclerView.NO_ID, id);
+            }
+        }
+        assertEquals(3, headers);
+    }
+
+    @Test
+    public void testTransactionAdapterLaysOutWithStableIds() throws InterruptedException {
+        List<Transaction> transactions = Arrays.asList(
+                new Transaction(7, "expense", 12.0, "餐饮", "午饭", "2024-01-15"),
+                new Transaction(8, "income", 500.0, "工资", null, "2024-01-14"));
+        TransactionAdapter adapter = new TransactionAdapter(new ArrayList<>(), null);
+        adapter.updateData(transactions);
+        awaitRows(adapter, transactions.size());
+        RecyclerView recyclerView = layOut(adapter);
+        assertEquals(transactions.size(), recyclerView.getChildCount());
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            assertEquals(transactions.get(holder.getAdapterPosition()).getId(), holder.getItemId());
+        }
+    }
+
+    private RecyclerView layOut(RecyclerView.Adapter<?> adapter) {
+        RecyclerView recyclerView = new RecyclerView(parent.getContext());
+        recyclerView.setLayoutManager(new LinearLayoutManager(parent.getContext()));
+        recyclerView.setItemAnimator(null); // 不保留动画中的旧行，子视图数即行数
+        recyclerView.setAdapter(adapter);
+        relayOut(recyclerView);
+        return recyclerView;
+    }
+
+    private static void relayOut(RecyclerView recyclerView) {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(4000, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 4000);
+    }
+
+    /**
+     * 先各跑两遍预热（类加载、JIT、首次创建的 Drawable），再分别统计一遍的分配量
+     */
+    private void assertBindAllocatesLikeDirect(Runnable direct, Runnable bind) {
+        for (int i = 0; i < 2; i++) {
+            direct.run();
+            bind.run();
+        }
+        long directBytes = allocatedBytes(direct);
+        long bindBytes = allocatedBytes(bind);
+        long extra = bindBytes - directBytes;
+        assertTrue("绑定 " + ROWS + " 行多分配了 " + extra + " 字节（对照组 " + directBytes + "）",
+                extra <= ROWS * SLACK_BYTES_PER_ROW);
+    }
+
+    private long allocatedBytes(Runnable runnable) {
+        long before = threads.getCurrentThreadAllocatedBytes();
+        runnable.run();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    // 行在后台线程构建，结果投递到主线程
+    private static void awaitRows(RecyclerView.Adapter<?> adapter, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (adapter.getItemCount() != count) {
+            assertTrue("等待后台构建列表超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+}
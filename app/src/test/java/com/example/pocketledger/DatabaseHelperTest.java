@@ -1,6 +1,10 @@
 package com.example.pocketledger;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 
 import androidx.test.core.app.ApplicationProvider;
 
@@ -11,8 +15,15 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -125,6 +136,44 @@ public class DatabaseHelperTest {
         assertTrue("查询不存在的日期应返回空列表", list.isEmpty());
     }
 
+    @Test
+    public void testGetTransactionsPage_KeysetWalksWholeLedger() {
+        for (int i = 1; i <= 25; i++) {
+            String date = String.format(java.util.Locale.CHINA, "2024-12-%02d", (i % 5) + 1);
+            dbHelper.addTransaction(new Transaction("expense", i, "A", "", date));
+        }
+
+        List<Transaction> all = dbHelper.getAllTransactions();
+        List<Transaction> paged = new ArrayList<>();
+        List<Transaction> page = dbHelper.getTransactionsPage(null, 0, 7);
+        while (!page.isEmpty()) {
+            paged.addAll(page);
+            Transaction last = page.get(page.size() - 1);
+            page = dbHelper.getTransactionsPage(last.getDate(), last.getId(), 7);
+        }
+
+        assertEquals("分页结果条数应与全量一致", all.size(), paged.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals("分页顺序应与全量一致", all.get(i).getId(), paged.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testGetTransactionsPageAfter_ReturnsRowsAboveAnchor() {
+        for (int i = 1; i <= 10; i++) {
+            dbHelper.addTransaction(new Transaction("expense", i, "A", "", "2024-12-0" + ((i % 3) + 1)));
+        }
+        List<Transaction> all = dbHelper.getAllTransactions();
+        Transaction anchor = all.get(6);
+
+        List<Transaction> newer = dbHelper.getTransactionsPageAfter(anchor.getDate(), anchor.getId(), 4);
+
+        assertEquals("应返回4条", 4, newer.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("应紧邻锚点之上且按倒序排列", all.get(2 + i).getId(), newer.get(i).getId());
+        }
+    }
+
     // ==================== 删除测试 ====================
 
     @Test
@@ -213,6 +262,856 @@ public class DatabaseHelperTest {
         assertEquals("餐饮占比应为75%", 75.0, stats.get(0).getPercentage(), 0.1);
     }
 
+    @Test
+    public void testGetDashboardSummary_SinglePassTotals() {
+        dbHelper.addTransaction(new Transaction("income", 5000.0, "职业收入-工资", "", "2024-11-10"));
+        dbHelper.addTransaction(new Transaction("expense", 300.0, "餐饮-午餐", "", "2024-11-11"));
+        dbHelper.addTransaction(new Transaction("expense", 100.0, "餐饮-晚餐", "", "2024-11-12"));
+        dbHelper.addTransaction(new Transaction("expense", 100.0, "交通", "", "2024-11-12"));
+        dbHelper.addTransaction(new Transaction("expense", 999.0, "交通", "", "2024-10-12"));
+
+        DashboardSummary summary = dbHelper.getDashboardSummary("2024-11");
+
+        assertEquals("收入应为5000", 5000.0, summary.getIncome(), 0.01);
+        assertEquals("支出应为500", 500.0, summary.getExpense(), 0.01);
+        assertEquals("结余应为4500", 4500.0, summary.getBalance(), 0.01);
+        assertEquals("应有2个主分类", 2, summary.getCategoryStats().size());
+        assertEquals("餐饮应排第一", "餐饮", summary.getTopCategories(1).get(0).getCategory());
+        assertEquals("餐饮占比应为80%", 80.0, summary.getCategoryStats().get(0).getPercentage(), 0.1);
+        assertEquals("预算进度应为50%", 50, summary.getBudgetProgress(1000.0));
+    }
+
+    @Test
+    public void testGetDashboardSummary_CacheInvalidatedByWrites() {
+        dbHelper.addTransaction(new Transaction("expense", 100.0, "餐饮", "", "2024-11-10"));
+        DashboardSummary first = dbHelper.getDashboardSummary("2024-11");
+        assertSame("重复读取应命中缓存", first, dbHelper.getDashboardSummary("2024-11"));
+
+        dbHelper.addTransaction(new Transaction("expense", 50.0, "餐饮", "", "2024-11-11"));
+        assertEquals("新增后应重新计算", 150.0, dbHelper.getDashboardSummary("2024-11").getExpense(), 0.01);
+
+        int id = dbHelper.getAllTransactions().get(0).getId();
+        dbHelper.deleteTransaction(id);
+        assertEquals("删除后应重新计算", 100.0, dbHelper.getDashboardSummary("2024-11").getExpense(), 0.01);
+    }
+
+    @Test
+    public void testRollups_FollowInsertAndDelete() {
+        dbHelper.addTransaction(new Transaction("expense", 30.0, "餐饮-午饭", "", "2024-10-05"));
+        dbHelper.addTransaction(new Transaction("expense", 20.0, "餐饮-晚饭", "", "2024-10-05"));
+        dbHelper.addTransaction(new Transaction("income", 500.0, "工资", "", "2024-10-06"));
+
+        Map<String, DailyTotal> days = dbHelper.getMonthlyDailySummaries("2024-10");
+        assertEquals("应有两天的汇总", 2, days.size());
+        assertEquals(50.0, days.get("2024-10-05").getExpense(), 0.01);
+        assertEquals(500.0, days.get("2024-10-06").getIncome(), 0.01);
+
+        DashboardSummary summary = dbHelper.getDashboardSummary("2024-10");
+        assertEquals("子分类应合并到主分类", 1, summary.getCategoryStats().size());
+        assertEquals("餐饮", summary.getCategoryStats().get(0).getCategory());
+
+        for (Transaction t : dbHelper.getTransactionsByDate("2024-10-05")) {
+            dbHelper.deleteTransaction(t.getId());
+        }
+        days = dbHelper.getMonthlyDailySummaries("2024-10");
+        assertFalse("删除最后一笔后应移除当日汇总", days.containsKey("2024-10-05"));
+        assertTrue("删除后分类汇总应为空", dbHelper.getDashboardSummary("2024-10").getCategoryStats().isEmpty());
+    }
+
+    @Test
+    public void testMonthlySums_ExactInCents() {
+        for (int i = 0; i < 10; i++) {
+            dbHelper.addTransaction(new Transaction("expense", 0.1, "餐饮", "", "2024-09-01"));
+        }
+        // REAL 下 0.1 累加十次不等于 1.0，整数分存储应完全精确
+        assertEquals(1.0, dbHelper.getDashboardSummary("2024-09").getExpense(), 0.0);
+        assertEquals(1.0, dbHelper.getMonthlyDailySummaries("2024-09").get("2024-09-01").getExpense(), 0.0);
+    }
+
+    @Test
+    public void testUpgradeFromVersion8_ConvertsAmountsAndDates() {
+        dbHelper.close();
+        context.deleteDatabase("PocketLedger.db");
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath("PocketLedger.db"), null);
+        legacy.execSQL("CREATE TABLE transactions (id INTEGER PRIMARY KEY AUTOINCREMENT, type TEXT, " +
+                "amount REAL, category TEXT, note TEXT, date TEXT)");
+        legacy.execSQL("INSERT INTO transactions (type, amount, category, note, date) " +
+                "VALUES ('expense', 12.34, '餐饮-午饭', '', '2024-08-15')");
+        legacy.execSQL("INSERT INTO transactions (type, amount, category, note, date) " +
+                "VALUES ('income', 100.1, '工资', '', '2024-08-20')");
+        legacy.execSQL("INSERT INTO transactions (type, amount, category, note, date) " +
+                "VALUES ('expense', 1.0, '交通', '', '2024-8-3')");
+        legacy.execSQL("INSERT INTO transactions (type, amount, category, note, date) " +
+                "VALUES ('expense', 2.0, '交通', '无法识别', '2024-02-30')");
+        legacy.setVersion(8);
+        legacy.close();
+
+        dbHelper = new DatabaseHelper(context);
+        List<Transaction> all = dbHelper.getAllTransactions();
+        assertEquals("无法识别日期的记录不应以0写入", 3, all.size());
+        assertEquals("2024-08-20", all.get(0).getDate());
+        assertEquals(100.1, all.get(0).getAmount(), 0.0);
+        assertEquals(12.34, all.get(1).getAmount(), 0.0);
+        assertEquals("不补零的日期应被规范化", "2024-08-03", all.get(2).getDate());
+        assertEquals("无法识别日期的记录应原样保留", "无法识别", DatabaseUtils.stringForQuery(
+                dbHelper.getReadableDatabase(), "SELECT note FROM transactions_undated", null));
+
+        DashboardSummary summary = dbHelper.getDashboardSummary("2024-08");
+        assertEquals("迁移后应回填月汇总", 13.34, summary.getExpense(), 0.0);
+        assertEquals(100.1, summary.getIncome(), 0.0);
+        assertEquals("迁移后应回填日汇总", 3, dbHelper.getMonthlyDailySummaries("2024-08").size());
+    }
+
+    @Test
+    public void testAddTransaction_RejectsInvalidDate() {
+        assertFalse(dbHelper.addTransaction(new Transaction("expense", 1.0, "餐饮", "", "2024/01/05")));
+        assertFalse(dbHelper.addTransaction(new Transaction("expense", 1.0, "餐饮", "", "2024-02-30")));
+        assertTrue("无效日期不应写入", dbHelper.getAllTransactions().isEmpty());
+
+        assertTrue(dbHelper.addTransaction(new Transaction("expense", 1.0, "餐饮", "", "2024-1-5")));
+        assertEquals("2024-01-05", dbHelper.getTransactionsByDate("2024-01-05").get(0).getDate());
+    }
+
+    @Test
+    public void testAddTransaction_UnpaddedDateRefreshesSummary() {
+        assertEquals(0.0, dbHelper.getDashboardSummary("2024-01").getExpense(), 0.0);
+        dbHelper.addTransaction(new Transaction("expense", 10.0, "餐饮", "", "2024-1-5"));
+        assertEquals("不补零的日期也应使月汇总缓存失效", 10.0,
+                dbHelper.getDashboardSummary("2024-01").getExpense(), 0.0);
+    }
+
+    // ==================== 行映射测试 ====================
+
+    @Test
+    public void testTodoList_ProjectsWithoutDescription() {
+        dbHelper.addTodoItem(new TodoItem("写周报", "很长的描述", TodoItem.STATUS_IN_PROGRESS,
+                TodoItem.PRIORITY_HIGH, null, "工作", "2024-12-28"));
+
+        TodoItem row = dbHelper.getTodoItemsByDate("2024-12-28").get(0);
+        assertEquals("写周报", row.getTitle());
+        assertEquals(TodoItem.PRIORITY_HIGH, row.getPriority());
+        assertNull("列表行不应加载描述", row.getDescription());
+
+        TodoItem full = dbHelper.getTodoItem(row.getId());
+        assertEquals("很长的描述", full.getDescription());
+        assertEquals("工作", full.getTags());
+        dbHelper.deleteTodoItem(row.getId());
+    }
+
+    @Test
+    public void testForEachTransaction_ReusesRow() throws IOException {
+        dbHelper.addTransaction(new Transaction("expense", 1.0, "餐饮", "一", "2024-12-01"));
+        dbHelper.addTransaction(new Transaction("income", 2.0, "工资", "二", "2024-12-02"));
+
+        List<Transaction> seen = new ArrayList<>();
+        StringBuilder notes = new StringBuilder();
+        dbHelper.forEachTransaction(t -> {
+            seen.add(t);
+            notes.append(t.getNote());
+            return true;
+        });
+        assertEquals("按日期倒序逐行读取", "二一", notes.toString());
+        assertSame("流式读取应复用同一个对象", seen.get(0), seen.get(1));
+    }
+
+    // ==================== 全文搜索测试 ====================
+
+    @Test
+    public void testToMatchQuery() {
+        assertEquals("午饭* coffee*", DatabaseHelper.toMatchQuery(" 午饭, Coffee "));
+        assertEquals("餐饮* 午饭*", DatabaseHelper.toMatchQuery("餐饮-午饭"));
+        assertEquals("运算符应转为小写", "a* or* b*", DatabaseHelper.toMatchQuery("a OR \"b\""));
+        assertNull(DatabaseHelper.toMatchQuery(" *-\" "));
+    }
+
+    @Test
+    public void testSearch_AllKindsRankedAndPrefix() {
+        dbHelper.addTransaction(new Transaction("expense", 30.0, "餐饮", "coffee with team", "2024-12-01"));
+        dbHelper.addDiaryEntry(new DiaryEntry("Coffee", "first coffee of the year", "happy", "2024-12-02"));
+        dbHelper.addTodoItem(new TodoItem("buy coffee beans", null, TodoItem.STATUS_NOT_STARTED,
+                TodoItem.PRIORITY_LOW, null, "shopping", "2024-12-03"));
+        dbHelper.addTransaction(new Transaction("expense", 5.0, "交通", "bus", "2024-12-04"));
+
+        List<SearchResult> results = dbHelper.search("cof", 0, 10);
+        assertEquals("前缀应匹配三种记录", 3, results.size());
+        assertEquals("标题与正文同时命中的日记应排第一", SearchResult.KIND_DIARY, results.get(0).getKind());
+        assertEquals("2024-12-02", results.get(0).getDate());
+        assertTrue(results.get(0).getSnippet().contains(SearchResult.MATCH_START));
+        assertTrue(results.get(0).getScore() >= results.get(1).getScore());
+
+        List<SearchResult> page2 = dbHelper.search("cof", 2, 2);
+        assertEquals(1, page2.size());
+        assertEquals(results.get(2).getId(), page2.get(0).getId());
+
+        assertEquals("所有词都需命中", 1, dbHelper.search("coffee team", 0, 10).size());
+        assertTrue(dbHelper.search("", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testSearch_ChineseSubstring() {
+        dbHelper.addTransaction(new Transaction("expense", 25.0, "餐饮", "今天午饭吃了牛肉面", "2024-12-01"));
+        dbHelper.addDiaryEntry(new DiaryEntry("周末", "和朋友一起吃火锅", "happy", "2024-12-02"));
+        dbHelper.addTodoItem(new TodoItem("准备季度报告", null, TodoItem.STATUS_NOT_STARTED,
+                TodoItem.PRIORITY_HIGH, null, "工作", "2024-12-03"));
+
+        List<SearchResult> lunch = dbHelper.search("午饭", 0, 10);
+        assertEquals("词在一串中文中间也应命中", 1, lunch.size());
+        assertEquals(SearchResult.KIND_TRANSACTION, lunch.get(0).getKind());
+        assertTrue("摘要应标出命中词: " + lunch.get(0).getSnippet(),
+                lunch.get(0).getSnippet().contains(SearchResult.MATCH_START + "午饭" + SearchResult.MATCH_END));
+
+        assertEquals("单字也应命中", 1, dbHelper.search("饭", 0, 10).size());
+        assertEquals(SearchResult.KIND_DIARY, dbHelper.search("火锅", 0, 10).get(0).getKind());
+        assertEquals("多个中文词都需命中", 1, dbHelper.search("报告 季度", 0, 10).size());
+        assertTrue(dbHelper.search("季度 火锅", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testSubstringSnippet() {
+        List<String> terms = Collections.singletonList("午饭");
+        assertEquals("今天【午饭】很好", DatabaseHelper.substringSnippet("今天午饭很好", terms));
+        assertNull(DatabaseHelper.substringSnippet("晚饭", terms));
+        String longText = "一二三四五六七八九十一二三四五六七八九十午饭一二三四五六七八九十一二三四五六七八九十";
+        String snippet = DatabaseHelper.substringSnippet(longText, terms);
+        assertTrue("长文本应截断: " + snippet, snippet.startsWith("…") && snippet.endsWith("…"));
+        assertTrue(snippet.contains("【午饭】"));
+    }
+
+    @Test
+    public void testSearch_IndexFollowsEditsAndDeletes() {
+        dbHelper.addTodoItem(new TodoItem("draft report", "quarterly numbers", TodoItem.STATUS_NOT_STARTED,
+                TodoItem.PRIORITY_HIGH, null, "", "2024-12-05"));
+        TodoItem item = dbHelper.getTodoItem(dbHelper.search("quarterly", 0, 1).get(0).getId());
+
+        item.setDescription("yearly numbers");
+        dbHelper.updateTodoItem(item);
+        assertTrue("修改后旧内容不应再命中", dbHelper.search("quarterly", 0, 10).isEmpty());
+        assertEquals(1, dbHelper.search("yearly", 0, 10).size());
+
+        dbHelper.updateTodoStatus(item.getId(), TodoItem.STATUS_COMPLETED);
+        assertEquals("改状态不影响索引", 1, dbHelper.search("yearly", 0, 10).size());
+
+        dbHelper.deleteTodoItem(item.getId());
+        assertTrue(dbHelper.search("yearly", 0, 10).isEmpty());
+    }
+
+    /**
+     * Prefix search over 100k transactions. Prints the time of a selective and of a
+     * broad query; only the result sizes are asserted.
+     */
+    @Test
+    public void benchmarkSearch100k() {
+        int rows = 100_000;
+        String[] words = { "lunch", "dinner", "taxi", "coffee", "rent", "books", "gift", "movie" };
+        DatabaseHelper.ImportSession session = dbHelper.beginImport();
+        for (int i = 0; i < rows; i++) {
+            session.add(new Transaction("expense", i % 100, "餐饮", words[i % words.length] + " note" + i,
+                    "2024-01-" + (10 + i % 18)));
+        }
+        session.commit();
+
+        dbHelper.search("note1", 0, 20); // warm up
+        long start = System.nanoTime();
+        List<SearchResult> selective = dbHelper.search("note9999", 0, 20);
+        long selectiveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<SearchResult> broad = dbHelper.search("coff", 0, 20);
+        long broadNanos = System.nanoTime() - start;
+
+        assertEquals("note9999 与 note99990..99999", 11, selective.size());
+        assertEquals(20, broad.size());
+        System.out.println(String.format(Locale.US, "search over %d rows: selective %.1f ms, broad %.1f ms",
+                rows, selectiveNanos / 1e6, broadNanos / 1e6));
+    }
+
+    // ==================== 批量导入测试 ====================
+
+    @Test
+    public void testImportSession_CommitSpansBatches() {
+        DatabaseHelper.ImportSession session = dbHelper.beginImport();
+        for (int i = 0; i < 1200; i++) {
+            session.add(new Transaction("expense", 1.0, "餐饮", "", "2024-07-01"));
+        }
+        assertEquals(1200, session.commit());
+        assertEquals(1200, dbHelper.getAllTransactions().size());
+        assertEquals("导入后汇总应同步", 1200.0, dbHelper.getDashboardSummary("2024-07").getExpense(), 0.0);
+    }
+
+    @Test
+    public void testImportSession_AbortLeavesOtherRows() {
+        dbHelper.addTransaction(new Transaction("income", 10.0, "工资", "", "2024-07-01"));
+        DatabaseHelper.ImportSession session = dbHelper.beginImport();
+        for (int i = 0; i < 700; i++) {
+            session.add(new Transaction("expense", 1.0, "餐饮", "", "2024-07-02"));
+        }
+        session.abort();
+
+        List<Transaction> all = dbHelper.getAllTransactions();
+        assertEquals("取消后只应保留导入前的数据", 1, all.size());
+        assertEquals("income", all.get(0).getType());
+        assertEquals(0.0, dbHelper.getDashboardSummary("2024-07").getExpense(), 0.0);
+    }
+
+    // ==================== 整库备份测试 ====================
+
+    @Test
+    public void testSnapshotAndRestore_RoundTrip() throws IOException {
+        dbHelper.addTransaction(new Transaction("expense", 42.0, "餐饮", "备份前", "2024-06-01"));
+        File snapshot = new File(context.getCacheDir(), "test_snapshot.db");
+        dbHelper.snapshotTo(snapshot);
+
+        clearAllData();
+        dbHelper.addTransaction(new Transaction("income", 1.0, "其他", "备份后", "2024-06-02"));
+        dbHelper.restoreFrom(snapshot);
+        snapshot.delete();
+
+        List<Transaction> all = dbHelper.getAllTransactions();
+        assertEquals("恢复后应回到备份时的数据", 1, all.size());
+        assertEquals("备份前", all.get(0).getNote());
+        assertEquals("恢复后汇总应重新读取", 42.0, dbHelper.getDashboardSummary("2024-06").getExpense(), 0.0);
+    }
+
+    @Test
+    public void testRestore_RejectsNewerVersion() {
+        File snapshot = new File(context.getCacheDir(), "test_newer.db");
+        snapshot.delete();
+        SQLiteDatabase newer = SQLiteDatabase.openOrCreateDatabase(snapshot, null);
+        newer.execSQL("CREATE TABLE transactions (id INTEGER PRIMARY KEY)");
+        newer.setVersion(999);
+        newer.close();
+
+        dbHelper.addTransaction(new Transaction("expense", 5.0, "餐饮", "", "2024-06-01"));
+        try {
+            dbHelper.restoreFrom(snapshot);
+            fail("更新版本的备份应被拒绝");
+        } catch (IOException expected) {
+            // 当前数据不应受影响
+            assertEquals(1, dbHelper.getAllTransactions().size());
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Test
+    public void testIncrementalBackup_SnapshotThenChangeSet() throws IOException {
+        dbHelper.addTransaction(new Transaction("expense", 10.0, "餐饮", "旧记录", "2024-05-01"));
+        File snapshot = new File(context.getCacheDir(), "test_full.db");
+        long seq = dbHelper.getChangeSeq();
+        dbHelper.snapshotTo(snapshot);
+        dbHelper.completeBackup(seq);
+
+        int oldId = dbHelper.getAllTransactions().get(0).getId();
+        dbHelper.addTransaction(new Transaction("income", 20.0, "工资", "新记录", "2024-05-02"));
+        dbHelper.deleteTransaction(oldId);
+        File changes = new File(context.getCacheDir(), "test_changes.db");
+        dbHelper.completeBackup(dbHelper.exportChanges(changes));
+        assertTrue(DatabaseHelper.isChangeSet(changes));
+        assertFalse(DatabaseHelper.isChangeSet(snapshot));
+
+        dbHelper.restoreFrom(snapshot);
+        assertEquals("旧记录", dbHelper.getAllTransactions().get(0).getNote());
+        dbHelper.applyChanges(changes);
+
+        List<Transaction> all = dbHelper.getAllTransactions();
+        assertEquals("回放增量后应与备份时一致", 1, all.size());
+        assertEquals("新记录", all.get(0).getNote());
+        assertEquals("回放后汇总应同步", 0.0, dbHelper.getDashboardSummary("2024-05").getExpense(), 0.0);
+        try {
+            dbHelper.applyChanges(changes);
+            fail("同一增量不应重复回放");
+        } catch (IOException expected) {
+            // 已恢复过
+        } finally {
+            snapshot.delete();
+            changes.delete();
+        }
+    }
+
+    @Test
+    public void testCheckRestore_RejectsBrokenChainBeforeTouchingData() throws IOException {
+        dbHelper.addTransaction(new Transaction("expense", 10.0, "餐饮", "快照", "2024-05-01"));
+        File snapshot = new File(context.getCacheDir(), "test_chain_full.db");
+        long seq = dbHelper.getChangeSeq();
+        dbHelper.snapshotTo(snapshot);
+        dbHelper.completeBackup(seq);
+
+        dbHelper.addTransaction(new Transaction("expense", 20.0, "餐饮", "增量一", "2024-05-02"));
+        File first = new File(context.getCacheDir(), "test_chain_1.db");
+        dbHelper.completeBackup(dbHelper.exportChanges(first));
+        dbHelper.addTransaction(new Transaction("expense", 30.0, "餐饮", "增量二", "2024-05-03"));
+        File second = new File(context.getCacheDir(), "test_chain_2.db");
+        dbHelper.completeBackup(dbHelper.exportChanges(second));
+        try {
+            dbHelper.checkRestore(snapshot, Arrays.asList(first, second));
+            try {
+                dbHelper.checkRestore(snapshot, Collections.singletonList(second));
+                fail("缺少中间的增量应在恢复前被拒绝");
+            } catch (IOException expected) {
+                assertEquals("检查不应改动现有数据", 3, dbHelper.getAllTransactions().size());
+            }
+
+            // 旧版本（v14 起表结构未变）的增量仍可回放
+            try (SQLiteDatabase changes = SQLiteDatabase.openDatabase(first.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE)) {
+                changes.execSQL("UPDATE changeset_meta SET value = 14 WHERE key = 'version'");
+            }
+            dbHelper.checkRestore(snapshot, Arrays.asList(first, second));
+        } finally {
+            snapshot.delete();
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void testIncrementalBackup_KeepsLiveConnectionInWal() throws IOException {
+        dbHelper.addTransaction(new Transaction("expense", 10.0, "餐饮", "旧记录", "2024-05-01"));
+        dbHelper.completeBackup(dbHelper.getChangeSeq());
+        dbHelper.addTransaction(new Transaction("income", 20.0, "工资", "新记录", "2024-05-02"));
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        File changes = new File(context.getCacheDir(), "test_wal_changes.db");
+        try {
+            dbHelper.exportChanges(changes);
+            assertTrue("导出增量不应关闭正在使用的连接", db.isOpen());
+            assertSame(db, dbHelper.getWritableDatabase());
+            assertTrue("导出增量后应仍为 WAL", db.isWriteAheadLoggingEnabled());
+            assertEquals(2, dbHelper.getAllTransactions().size());
+        } finally {
+            changes.delete();
+        }
+    }
+
+    // ==================== 连接配置测试 ====================
+
+    @Test
+    public void testTuning_PragmasApplied() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        // Inside a transaction the queries run on the primary connection that onConfigure set up
+        db.beginTransaction();
+        try {
+            assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+            assertEquals("synchronous 应为 NORMAL", 1, DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null));
+            assertEquals("temp_store 应为 MEMORY", 2, DatabaseUtils.longForQuery(db, "PRAGMA temp_store", null));
+            assertEquals(-8 * 1024, DatabaseUtils.longForQuery(db, "PRAGMA cache_size", null));
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.optimizeIfDue();
+    }
+
+    /**
+     * Opens the database with the old settings and with the tuned ones, then
+     * reads on one thread while another commits batches of inserts. Prints the
+     * open time, how many reads got through during the writes and the slowest
+     * read; only correctness is asserted, timings on CI are too noisy to gate on.
+     */
+    @Test
+    public void benchmarkStartupAndReadsDuringWrites() throws Exception {
+        dbHelper.close();
+        long[] legacy = runConcurrencyBenchmark(DatabaseTuning.LEGACY);
+        long[] tuned = runConcurrencyBenchmark(DatabaseTuning.DEFAULT);
+
+        System.out.println(String.format(Locale.US,
+                "rollback journal: open %.1f ms, %d reads during writes, slowest %.1f ms", legacy[0] / 1e6,
+                legacy[1], legacy[2] / 1e6));
+        System.out.println(String.format(Locale.US,
+                "WAL + tuning:     open %.1f ms, %d reads during writes, slowest %.1f ms", tuned[0] / 1e6,
+                tuned[1], tuned[2] / 1e6));
+        assertTrue(legacy[1] > 0 && tuned[1] > 0);
+        dbHelper = new DatabaseHelper(context);
+    }
+
+    private long[] runConcurrencyBenchmark(DatabaseTuning tuning) throws Exception {
+        context.deleteDatabase("PocketLedger.db");
+        long start = System.nanoTime();
+        DatabaseHelper helper = new DatabaseHelper(context, tuning);
+        helper.getWritableDatabase();
+        long openNanos = System.nanoTime() - start;
+
+        int batches = 20;
+        int perBatch = 200;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            try {
+                for (int b = 0; b < batches; b++) {
+                    DatabaseHelper.ImportSession session = helper.beginImport();
+                    for (int i = 0; i < perBatch; i++) {
+                        session.add(new Transaction("expense", i, "餐饮", "批量", "2024-06-" + (10 + i % 20)));
+                    }
+                    session.commit();
+                }
+            } finally {
+                writing.set(false);
+            }
+        });
+
+        long reads = 0;
+        long slowest = 0;
+        writer.start();
+        while (writing.get()) {
+            long t = System.nanoTime();
+            helper.getTransactionCount();
+            slowest = Math.max(slowest, System.nanoTime() - t);
+            reads++;
+        }
+        writer.join();
+
+        assertEquals(batches * perBatch, helper.getTransactionCount());
+        helper.close();
+        context.deleteDatabase("PocketLedger.db");
+        return new long[] { openNanos, reads, slowest };
+    }
+
+    // ==================== 预编译语句测试 ====================
+
+    @Test
+    public void testCachedStatements_SurviveReopen() {
+        dbHelper.addTransaction(new Transaction("expense", 12.34, "餐饮", "午饭", "2024-07-01"));
+        dbHelper.close();
+        // The cache must not hand out statements of the closed database
+        dbHelper.addTransaction(new Transaction("income", 1.0, "工资", "", "2024-07-02"));
+
+        assertEquals(2, dbHelper.getTransactionCount());
+        int id = dbHelper.getTransactionsByDate("2024-07-01").get(0).getId();
+        dbHelper.deleteTransaction(id);
+        dbHelper.deleteTransaction(id); // no such row any more
+        assertEquals(1, dbHelper.getTransactionCount());
+    }
+
+    /**
+     * Inserts and point queries through the cached statements next to the old
+     * ContentValues + insert / rawQuery path. Prints rows/s and queries/s.
+     */
+    @Test
+    public void benchmarkCachedStatements() {
+        int rows = 5000;
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                ContentValues cv = new ContentValues();
+                cv.put("type", "expense");
+                cv.put("amount_cents", i);
+                cv.put("category", "餐饮");
+                cv.put("note", "旧路径");
+                cv.put("date_key", 20240801 + i % 28);
+                db.insert("transactions", null, cv);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long contentValuesNanos = System.nanoTime() - start;
+
+        Transaction t = new Transaction("expense", 1.5, "餐饮", "新路径", "2024-09-15");
+        start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                dbHelper.addTransaction(t);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        int queries = 2000;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM transactions", null)) {
+                cursor.moveToFirst();
+            }
+        }
+        long rawQueryNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < queries; i++) {
+            count = dbHelper.getTransactionCount();
+        }
+        long statementNanos = System.nanoTime() - start;
+
+        assertEquals(rows * 2, count);
+        System.out.println(String.format(Locale.US, "insert: ContentValues %.0f rows/s, cached %.0f rows/s",
+                rows * 1e9 / contentValuesNanos, rows * 1e9 / cachedNanos));
+        System.out.println(String.format(Locale.US, "count: rawQuery %.0f queries/s, cached %.0f queries/s",
+                queries * 1e9 / rawQueryNanos, queries * 1e9 / statementNanos));
+    }
+
+    // ==================== 标签测试 ====================
+
+    @Test
+    public void testTags_CountsFilterAndPrune() {
+        dbHelper.addTodoItem(new TodoItem("周报", "", null, "high", null, "工作, 紧急", "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("买菜", "", null, "low", null, "工作，家庭, 工作", "2024-09-02"));
+        dbHelper.addTodoItem(new TodoItem("散步", "", null, "low", null, null, "2024-09-03"));
+
+        assertEquals("[工作, 紧急]", TodoItem.splitTags(" 工作,,紧急 ，工作").toString());
+        assertTagCounts("工作=2, 家庭=1, 紧急=1");
+        assertEquals("按标签筛选应只返回带该标签的任务", 2, dbHelper.getTodoItemsByTag("工作").size());
+        assertEquals(1, dbHelper.getTodoItemsByTag("紧急").size());
+        assertTrue(dbHelper.getTodoItemsByTag("不存在").isEmpty());
+
+        TodoItem report = findTodo("周报");
+        report.setTags("工作");
+        dbHelper.updateTodoItem(report);
+        assertTagCounts("工作=2, 家庭=1");
+
+        dbHelper.deleteTodoItem(findTodo("买菜").getId());
+        assertTagCounts("工作=1");
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals("不再使用的标签应被删除", 1, DatabaseUtils.queryNumEntries(db, "tags"));
+    }
+
+    @Test
+    public void testTags_UpgradeBackfillsFromTagString() {
+        dbHelper.addTodoItem(new TodoItem("周报", "", null, "high", null, "工作, 紧急", "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("买菜", "", null, "low", null, "家庭", "2024-09-02"));
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("DROP TABLE todo_tags");
+        db.execSQL("DROP TABLE tags");
+
+        dbHelper.onUpgrade(db, 12, 13);
+
+        assertTagCounts("家庭=1, 工作=1, 紧急=1");
+        assertEquals(1, dbHelper.getTodoItemsByTag("紧急").size());
+    }
+
+    private void assertTagCounts(String expected) {
+        List<String> actual = new ArrayList<>();
+        for (TagCount count : dbHelper.getTagCounts()) {
+            actual.add(count.getName() + "=" + count.getCount());
+        }
+        assertEquals(expected, String.join(", ", actual));
+    }
+
+    private TodoItem findTodo(String title) {
+        for (TodoItem item : dbHelper.getAllTodoItems()) {
+            if (title.equals(item.getTitle())) {
+                return dbHelper.getTodoItem(item.getId());
+            }
+        }
+        fail("找不到任务 " + title);
+        return null;
+    }
+
+    // ==================== 任务排序测试 ====================
+
+    @Test
+    public void testTodoRanks_ListOrderAndStringApi() {
+        dbHelper.addTodoItem(new TodoItem("已完成", "", TodoItem.STATUS_COMPLETED, TodoItem.PRIORITY_HIGH, null,
+                null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("未开始-低", "", TodoItem.STATUS_NOT_STARTED, TodoItem.PRIORITY_LOW, null,
+                null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("未开始-无", "", null, null, null, null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("进行中", "", TodoItem.STATUS_IN_PROGRESS, TodoItem.PRIORITY_MEDIUM, null,
+                null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("未开始-高", "", TodoItem.STATUS_NOT_STARTED, TodoItem.PRIORITY_HIGH, null,
+                null, "2024-09-01"));
+
+        List<TodoItem> all = dbHelper.getAllTodoItems();
+        assertEquals("[进行中, 未开始-高, 未开始-低, 未开始-无, 已完成]", titles(all).toString());
+        assertEquals(titles(all), titles(dbHelper.getTodoItemsByDate("2024-09-01")));
+        assertEquals(TodoItem.STATUS_IN_PROGRESS, all.get(0).getStatus());
+        assertEquals(TodoItem.PRIORITY_MEDIUM, all.get(0).getPriority());
+        assertNull("无优先级应读回 null", all.get(3).getPriority());
+        assertEquals(TodoItem.STATUS_NOT_STARTED, all.get(3).getStatus());
+
+        assertEquals("[未开始-高, 未开始-低, 未开始-无]",
+                titles(dbHelper.getTodoItemsByStatus(TodoItem.STATUS_NOT_STARTED)).toString());
+        assertEquals(3, dbHelper.getTodoCountByStatus(TodoItem.STATUS_NOT_STARTED));
+        assertEquals(4, dbHelper.getPendingTodoCount());
+
+        dbHelper.updateTodoStatus(all.get(0).getId(), TodoItem.STATUS_COMPLETED);
+        assertEquals(TodoItem.STATUS_COMPLETED, dbHelper.getTodoItem(all.get(0).getId()).getStatus());
+        assertEquals(3, dbHelper.getPendingTodoCount());
+    }
+
+    @Test
+    public void testTodoRanks_ListQueriesWalkIndex() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String order = " ORDER BY status_rank, priority_rank, created_at DESC";
+        assertNoSort(db, "SELECT * FROM todos_v2" + order);
+        assertNoSort(db, "SELECT * FROM todos_v2 WHERE date = '2024-09-01'" + order);
+        assertNoSort(db, "SELECT * FROM todos_v2 WHERE status_rank = 2 ORDER BY priority_rank, created_at DESC");
+    }
+
+    private static void assertNoSort(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+            }
+        }
+        assertFalse("不应有临时排序: " + plan, plan.toString().contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void testTodoRanks_UpgradeFromTextColumns() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("DROP TABLE todos_v2");
+        db.execSQL("CREATE TABLE todos_v2 (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, description TEXT, "
+                + "status TEXT DEFAULT 'not_started', priority TEXT, due_date TEXT, tags TEXT, date TEXT, "
+                + "created_at TEXT DEFAULT CURRENT_TIMESTAMP, assignee TEXT, attachment TEXT)");
+        db.execSQL("INSERT INTO todos_v2 (id, title, status, priority, tags) VALUES "
+                + "(1, '旧-完成', 'completed', 'low', '工作'), (2, '旧-进行', 'in_progress', NULL, NULL), "
+                + "(3, '旧-未开始', 'not_started', 'high', NULL), (9, '旧-已删', 'not_started', NULL, NULL)");
+        db.execSQL("DELETE FROM todos_v2 WHERE id = 9");
+
+        dbHelper.onUpgrade(db, 13, 14);
+
+        List<TodoItem> all = dbHelper.getAllTodoItems();
+        assertEquals("[旧-进行, 旧-未开始, 旧-完成]", titles(all).toString());
+        assertEquals(TodoItem.PRIORITY_LOW, all.get(2).getPriority());
+        assertNull(all.get(0).getPriority());
+
+        // Triggers dropped with the old table must be back: ids, change log, search index and tags
+        long before = dbHelper.getChangeSeq();
+        dbHelper.addTodoItem(new TodoItem("迁移后新增", "", null, null, null, "家庭", "2024-09-01"));
+        TodoItem added = findTodo("迁移后新增");
+        assertTrue("删除过的 id 不应被重用", added.getId() > 9);
+        assertTrue("应写入变更日志", dbHelper.getChangeSeq() > before);
+        assertEquals(1, dbHelper.search("迁移后新增", 0, 10).size());
+        dbHelper.deleteTodoItem(added.getId());
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "todo_tags", "todo_id = ?",
+                new String[] { String.valueOf(added.getId()) }));
+    }
+
+    @Test
+    public void testTodoSections_OneQueryWithCounts() {
+        dbHelper.addTodoItem(new TodoItem("完成1", "", TodoItem.STATUS_COMPLETED, TodoItem.PRIORITY_HIGH, null, null,
+                "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("未开始1", "", null, TodoItem.PRIORITY_LOW, null, null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("未开始2", "", null, TodoItem.PRIORITY_HIGH, null, null, "2024-09-01"));
+        dbHelper.addTodoItem(new TodoItem("完成2", "", TodoItem.STATUS_COMPLETED, null, null, null, "2024-09-01"));
+
+        TodoSections sections = dbHelper.getTodoItemsGroupedByStatus();
+
+        List<TodoItem> expected = new ArrayList<>();
+        for (String status : TodoSections.STATUSES) {
+            expected.addAll(dbHelper.getTodoItemsByStatus(status));
+        }
+        assertEquals("应与逐个状态查询的拼接结果一致", titles(expected), titles(sections.getItems()));
+        assertEquals("[未开始2, 未开始1, 完成1, 完成2]", titles(sections.getItems()).toString());
+        assertEquals(0, sections.getCount(TodoItem.STATUS_IN_PROGRESS));
+        assertEquals(2, sections.getCount(TodoItem.STATUS_NOT_STARTED));
+        assertEquals(2, sections.getCount(2));
+        assertEquals(TodoItem.STATUS_COMPLETED, sections.getStatus(2));
+    }
+
+    private static List<String> titles(List<TodoItem> items) {
+        List<String> titles = new ArrayList<>();
+        for (TodoItem item : items) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    public void testInvalidationTracker_OnlyWrittenTablesChange() {
+        InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+        InvalidationTracker.Subscription ledger = tracker.subscribe(InvalidationTracker.TRANSACTIONS);
+        InvalidationTracker.Subscription tasks = tracker.subscribe(InvalidationTracker.TODOS);
+        assertTrue("首次加载前应视为已变化", ledger.hasChanged());
+        ledger.markSeen();
+        tasks.markSeen();
+        assertFalse(ledger.hasChanged());
+
+        dbHelper.addDiaryEntry(new DiaryEntry("标题", "内容", "happy", "2024-09-01"));
+        assertFalse("写日记不应影响账单和待办", ledger.hasChanged() || tasks.hasChanged());
+
+        dbHelper.addTodoItem(new TodoItem("任务", TodoItem.PRIORITY_HIGH, "2024-09-01"));
+        assertTrue("新增待办后待办应变化", tasks.hasChanged());
+        assertFalse(ledger.hasChanged());
+        tasks.markSeen();
+        TodoItem todo = dbHelper.getAllTodoItems().get(0);
+        dbHelper.updateTodoStatus(todo.getId(), TodoItem.STATUS_COMPLETED);
+        assertTrue("修改状态后待办应变化", tasks.hasChanged());
+
+        dbHelper.addTransaction(new Transaction("expense", 12.0, "餐饮", "", "2024-09-01"));
+        assertTrue("记账后账单应变化", ledger.hasChanged());
+        ledger.markSeen();
+        dbHelper.deleteTransaction(dbHelper.getAllTransactions().get(0).getId());
+        assertTrue("删除账单后账单应变化", ledger.hasChanged());
+    }
+
+    @Test
+    public void testDiaryDateIndex_OnFreshAndUpgradedDatabases() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String count = "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = 'idx_diary_date'";
+        assertEquals("新建的数据库应有日记日期索引", 1, DatabaseUtils.longForQuery(db, count, null));
+
+        db.execSQL("DROP INDEX idx_diary_date");
+        dbHelper.onUpgrade(db, 15, 16);
+        assertEquals("升级到 v16 应补建日记日期索引", 1, DatabaseUtils.longForQuery(db, count, null));
+    }
+
+    @Test
+    public void testMonthOverview_FoldsAllTablesPerDay() {
+        dbHelper.addTransaction(new Transaction("expense", 50.0, "餐饮", "", "2024-10-05"));
+        dbHelper.addTransaction(new Transaction("income", 500.0, "工资", "", "2024-10-06"));
+        dbHelper.addTransaction(new Transaction("income", 1.0, "其他", "", "2024-11-01"));
+        dbHelper.addDiaryEntry(new DiaryEntry("早", "", "happy", "2024-10-05"));
+        dbHelper.addDiaryEntry(new DiaryEntry("晚", "", "sad", "2024-10-05"));
+        dbHelper.addDiaryEntry(new DiaryEntry("上月", "", "love", "2024-09-30"));
+        dbHelper.addTodoItem(new TodoItem("未完成", "", TodoItem.STATUS_NOT_STARTED, null, "2024-10-06", null,
+                "2024-10-01"));
+        dbHelper.addTodoItem(new TodoItem("已完成", "", TodoItem.STATUS_COMPLETED, null, "2024-10-06", null,
+                "2024-10-01"));
+        dbHelper.addTodoItem(new TodoItem("月底", "", TodoItem.STATUS_IN_PROGRESS, null, "2024-10-31", null,
+                "2024-10-01"));
+        dbHelper.addTodoItem(new TodoItem("无截止日", "", null, null, null, null, "2024-10-06"));
+
+        Map<String, DayOverview> days = dbHelper.getMonthOverview("2024-10");
+        assertEquals("只应有10月的三天", 3, days.size());
+
+        DayOverview day5 = days.get("2024-10-05");
+        assertEquals(50.0, day5.getExpense(), 0.01);
+        assertEquals("5日应有两篇日记", 2, day5.getDiaryCount());
+        assertEquals("心情应取最后写的一篇", "sad", day5.getMood());
+        assertEquals(0, day5.getDueCount());
+
+        DayOverview day6 = days.get("2024-10-06");
+        assertEquals(500.0, day6.getIncome(), 0.01);
+        assertEquals(0, day6.getDiaryCount());
+        assertNull(day6.getMood());
+        assertEquals("6日应有两个到期任务", 2, day6.getDueCount());
+        assertEquals("已完成的不算逾期", 1, day6.getOverdueCount());
+
+        DayOverview day31 = days.get("2024-10-31");
+        assertEquals("月末一天应包含在内", 1, day31.getDueCount());
+        assertEquals(0.0, day31.getIncome() + day31.getExpense(), 0.001);
+    }
+
+    @Test
+    public void testYearDailyExpenses_IndexedByDayOfYear() {
+        dbHelper.addTransaction(new Transaction("expense", 12.5, "餐饮", "", "2024-01-01"));
+        dbHelper.addTransaction(new Transaction("expense", 30.0, "交通", "", "2024-03-01"));
+        dbHelper.addTransaction(new Transaction("expense", 20.0, "餐饮", "", "2024-03-01"));
+        dbHelper.addTransaction(new Transaction("income", 500.0, "工资", "", "2024-06-01"));
+        dbHelper.addTransaction(new Transaction("expense", 8.0, "餐饮", "", "2024-12-31"));
+        dbHelper.addTransaction(new Transaction("expense", 99.0, "餐饮", "", "2025-01-01"));
+
+        long[] days = dbHelper.getYearDailyExpenses(2024);
+        assertEquals("闰年应有366天", 366, days.length);
+        assertEquals(1250, days[0]);
+        assertEquals("3月1日是第61天（含2月29日）", 5000, days[60]);
+        assertEquals("收入不计入支出", 0, days[152]);
+        assertEquals(800, days[365]);
+
+        long total = 0;
+        for (long cents : days) {
+            total += cents;
+        }
+        assertEquals("不应包含其他年份", 7050, total);
+        assertEquals("平年应有365天", 365, dbHelper.getYearDailyExpenses(2025).length);
+    }
+
     // ==================== 边界条件测试 ====================
 
     @Test
@@ -0,0 +1,202 @@
+package com.example.pocketledger;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * DateKeys 日期键单元测试
+ * 与 java.time 逐日对照，并比较日历格子绑定、逾期判断两条路径的耗时。
+ */
+public class DateKeysTest {
+
+    private static int key(LocalDate date) {
+        return DateKeys.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    @Test
+    public void testEpochDayMatchesJavaTime() {
+        LocalDate date = LocalDate.of(1, 1, 1);
+        LocalDate end = LocalDate.of(2400, 12, 31);
+        for (; !date.isAfter(end); date = date.plusDays(1)) {
+            int key = key(date);
+            assertEquals("纪元日不一致: " + date, date.toEpochDay(), DateKeys.toEpochDay(key));
+            assertEquals("纪元日还原不一致: " + date, key, DateKeys.fromEpochDay(date.toEpochDay()));
+            assertEquals("星期不一致: " + date, date.getDayOfWeek().getValue(), DateKeys.dayOfWeek(key));
+        }
+    }
+
+    @Test
+    public void testParseAndFormat() {
+        assertEquals("应解析为20240229", 20240229, DateKeys.parse("2024-02-29"));
+        assertEquals("应格式化为2024-02-29", "2024-02-29", DateKeys.format(20240229));
+        assertEquals("应解析为202401", 202401, DateKeys.parseMonth("2024-01"));
+        assertEquals("应格式化为2024-01", "2024-01", DateKeys.formatMonth(202401));
+        assertEquals("非日期应返回0", 0, DateKeys.parse("2024-01-1x"));
+        assertEquals("不补零也应解析", 20240105, DateKeys.parse("2024-1-5"));
+        assertEquals("带时间应只取日期", 20240105, DateKeys.parse("2024-01-05 08:30"));
+        assertEquals("分隔符不是-应返回0", 0, DateKeys.parse("2024/01/05"));
+        assertEquals("月份越界应返回0", 0, DateKeys.parse("2024-13-01"));
+        assertEquals("日期越界应返回0", 0, DateKeys.parse("2024-04-31"));
+        assertEquals("平年没有2月29日", 0, DateKeys.parse("2023-02-29"));
+        assertEquals("多余的位数应返回0", 0, DateKeys.parse("2024-001-05"));
+        assertEquals("null应返回0", 0, DateKeys.parse(null));
+        assertEquals("不补零的月份也应解析", 202401, DateKeys.parseMonth("2024-1"));
+        assertEquals("月份分隔符不是-应返回0", 0, DateKeys.parseMonth("2024/01"));
+        assertEquals("月份越界应返回0", 0, DateKeys.parseMonth("2024-00"));
+        assertEquals("0应格式化为空字符串", "", DateKeys.format(0));
+
+        LocalDate date = LocalDate.of(1999, 12, 25);
+        for (int i = 0; i < 3000; i++, date = date.plusDays(1)) {
+            assertEquals("格式化不一致: " + date, date.toString(), DateKeys.format(key(date)));
+            assertEquals("解析不一致: " + date, key(date), DateKeys.parse(date.toString()));
+        }
+        for (YearMonth month = YearMonth.of(1896, 1); month.getYear() < 2105; month = month.plusMonths(1)) {
+            String pastEnd = month + "-" + (month.lengthOfMonth() + 1);
+            assertEquals("月末之后应返回0: " + pastEnd, 0, DateKeys.parse(pastEnd));
+        }
+    }
+
+    @Test
+    public void testPlusDaysAndMonths() {
+        assertEquals("跨年加一天", 20250101, DateKeys.plusDays(20241231, 1));
+        assertEquals("闰年减一天", 20240229, DateKeys.plusDays(20240301, -1));
+        assertEquals("一月减一月", 202312, DateKeys.plusMonths(202401, -1));
+        assertEquals("十二月加一月", 202501, DateKeys.plusMonths(202412, 1));
+
+        YearMonth month = YearMonth.of(1990, 1);
+        for (int i = 0; i < 600; i++, month = month.plusMonths(1)) {
+            int monthKey = month.getYear() * 100 + month.getMonthValue();
+            YearMonth next = month.plusMonths(7);
+            assertEquals("加月不一致: " + month, next.getYear() * 100 + next.getMonthValue(),
+                    DateKeys.plusMonths(monthKey, 7));
+        }
+    }
+
+    @Test
+    public void testMonthGridStartsOnMonday() {
+        YearMonth month = YearMonth.of(2000, 1);
+        for (int i = 0; i < 400; i++, month = month.plusMonths(1)) {
+            int[] grid = DateKeys.monthGrid(month.getYear() * 100 + month.getMonthValue());
+            LocalDate day = month.atDay(1).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            assertEquals("格子数应为42", 42, grid.length);
+            for (int cell : grid) {
+                assertEquals("格子日期不一致: " + month, key(day), cell);
+                day = day.plusDays(1);
+            }
+        }
+    }
+
+    @Test
+    public void testOverdue() {
+        TodoItem item = new TodoItem("任务", null, TodoItem.STATUS_NOT_STARTED, null, "2024-01-15", null,
+                "2024-01-01", null, null);
+        assertTrue("截止日之后应逾期", item.isOverdue(20240116));
+        assertFalse("截止当天不应逾期", item.isOverdue(20240115));
+
+        TodoItem done = new TodoItem("任务", null, TodoItem.STATUS_COMPLETED, null, "2024-01-15", null,
+                "2024-01-01", null, null);
+        assertFalse("已完成不应逾期", done.isOverdue(20240116));
+    }
+
+    /**
+     * 一个月的 42 个格子：旧写法每格一个 Calendar 和 SimpleDateFormat，
+     * 新写法每月算一次整型日期键，绑定时只比较整数
+     */
+    @Test
+    public void testGridBindFasterThanCalendar() {
+        int rounds = 2000;
+        Calendar month = Calendar.getInstance();
+        month.set(2024, Calendar.MARCH, 15);
+        Calendar selected = (Calendar) month.clone();
+        int monthKey = 202403;
+        int selectedKey = 20240315;
+
+        long[] sink = new long[1];
+        Runnable calendarPath = () -> {
+            Calendar iter = (Calendar) month.clone();
+            iter.set(Calendar.DAY_OF_MONTH, 1);
+            int shift = (iter.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY + 7) % 7;
+            iter.add(Calendar.DAY_OF_MONTH, -shift);
+            Date[] days = new Date[42];
+            for (int i = 0; i < 42; i++) {
+                days[i] = iter.getTime();
+                iter.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            for (Date date : days) {
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(date);
+                boolean inMonth = cal.get(Calendar.MONTH) == month.get(Calendar.MONTH);
+                boolean isSelected = cal.get(Calendar.YEAR) == selected.get(Calendar.YEAR)
+                        && cal.get(Calendar.DAY_OF_YEAR) == selected.get(Calendar.DAY_OF_YEAR);
+                String dateKey = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(date);
+                sink[0] += cal.get(Calendar.DAY_OF_MONTH) + (inMonth ? 1 : 0) + (isSelected ? 1 : 0)
+                        + dateKey.length();
+            }
+        };
+        Runnable keyPath = () -> {
+            int[] days = DateKeys.monthGrid(monthKey);
+            String[] dates = new String[days.length];
+            for (int i = 0; i < days.length; i++) {
+                dates[i] = DateKeys.format(days[i]);
+            }
+            for (int i = 0; i < days.length; i++) {
+                int day = days[i];
+                boolean inMonth = DateKeys.monthOf(day) == monthKey;
+                boolean isSelected = day == selectedKey;
+                sink[0] += DateKeys.day(day) + (inMonth ? 1 : 0) + (isSelected ? 1 : 0) + dates[i].length();
+            }
+        };
+
+        long calendarNanos = time(calendarPath, rounds) / (rounds * 42L);
+        long keyNanos = time(keyPath, rounds) / (rounds * 42L);
+        System.out.println("日历格子绑定: Calendar " + calendarNanos + " ns/格, DateKeys " + keyNanos + " ns/格");
+        assertTrue("整型日期键应快于 Calendar（" + keyNanos + " vs " + calendarNanos + " ns）", keyNanos < calendarNanos);
+        assertNotEquals(0, sink[0]);
+    }
+
+    /**
+     * 逾期判断：旧写法每次新建 SimpleDateFormat 取今天的日期再比较字符串
+     */
+    @Test
+    public void testOverdueFasterThanSimpleDateFormat() {
+        int rounds = 50_000;
+        String dueDate = "2024-01-15";
+        int today = DateKeys.today();
+
+        long[] sink = new long[1];
+        Runnable formatPath = () -> {
+            String now = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA).format(new Date());
+            sink[0] += dueDate.compareTo(now) < 0 ? 1 : 0;
+        };
+        Runnable keyPath = () -> sink[0] += DateKeys.parse(dueDate) < today ? 1 : 0;
+
+        long formatNanos = time(formatPath, rounds) / rounds;
+        long keyNanos = time(keyPath, rounds) / rounds;
+        System.out.println("逾期判断: SimpleDateFormat " + formatNanos + " ns/次, DateKeys " + keyNanos + " ns/次");
+        assertTrue("整型日期键应快于 SimpleDateFormat（" + keyNanos + " vs " + formatNanos + " ns）",
+                keyNanos < formatNanos);
+        assertNotEquals(0, sink[0]);
+    }
+
+    // 预热一轮再计时，取总纳秒数
+    private static long time(Runnable runnable, int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            runnable.run();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.pocketledger;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * LedgerRepository 异步提交测试
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = { 28 }, manifest = Config.NONE)
+public class LedgerRepositoryTest {
+
+    private DatabaseHelper dbHelper;
+    private LedgerRepository repository;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("PocketLedger.db");
+        dbHelper = new DatabaseHelper(context);
+        repository = new LedgerRepository(dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void testCancelAll_QueuedWriteStillLands() throws Exception {
+        // 先占住写线程，让后面的写入排队
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        repository.write(null, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Object owner = new Object();
+        AtomicBoolean called = new AtomicBoolean();
+        repository.addTransaction(owner, new Transaction("expense", 8.0, "餐饮", "排队中", "2024-06-01"),
+                result -> called.set(true));
+        repository.cancelAll(owner);
+        release.countDown();
+
+        CountDownLatch drained = new CountDownLatch(1);
+        repository.write(null, () -> {
+            drained.countDown();
+            return null;
+        }, null);
+        assertTrue("写队列应执行完", drained.await(5, TimeUnit.SECONDS));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals("取消后排队的写入仍应落库", 1, dbHelper.getAllTransactions().size());
+        assertFalse("取消后不应再回调", called.get());
+    }
+}